@@ -0,0 +1,44 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.MachineEventsApplication;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// Boots the application against a private in-memory H2 database, without the web
+// layer unless a benchmark needs real HTTP requests
+public final class BenchmarkApplication {
+
+    private BenchmarkApplication() {}
+
+    public static ConfigurableApplicationContext start(String... extraProperties) {
+        return start(WebApplicationType.NONE, extraProperties);
+    }
+
+    // Embedded Tomcat on a random port, read back with local.server.port
+    public static ConfigurableApplicationContext startWeb(String... extraProperties) {
+        List<String> properties = new ArrayList<>(List.of("server.port=0"));
+        properties.addAll(Arrays.asList(extraProperties));
+        return start(WebApplicationType.SERVLET, properties.toArray(String[]::new));
+    }
+
+    private static ConfigurableApplicationContext start(WebApplicationType webType, String... extraProperties) {
+        List<String> properties = new ArrayList<>(List.of(
+                "spring.datasource.url=jdbc:h2:mem:bench-" + System.nanoTime(),
+                "spring.jpa.show-sql=false",
+                "spring.h2.console.enabled=false",
+                "spring.main.banner-mode=off",
+                "logging.level.root=WARN"
+        ));
+        properties.addAll(Arrays.asList(extraProperties));
+
+        return new SpringApplicationBuilder(MachineEventsApplication.class)
+                .web(webType)
+                .properties(properties.toArray(String[]::new))
+                .run();
+    }
+}
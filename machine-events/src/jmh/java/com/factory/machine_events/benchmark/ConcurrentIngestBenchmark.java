@@ -0,0 +1,89 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.service.EventService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.*;
+
+// Throughput of N concurrent processBatch callers against H2. One operation is
+// one round in which every caller commits one batch of new events. lockStrategy
+// runs the same rounds with the old lock per eventId ("map") and the striped table.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConcurrentIngestBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    private int callers;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    @Param({"map", "striped"})
+    private String lockStrategy;
+
+    @Param({"1024"})
+    private int lockStripes;
+
+    // Separate in-memory H2 databases, routed by machineId hash
+    @Param({"1", "4"})
+    private int shards;
+
+    private ConfigurableApplicationContext context;
+    private EventService eventService;
+    private ExecutorService executor;
+    private SplittableRandom random;
+    private long round;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Every caller holds a connection for its whole transaction
+        List<String> properties = new ArrayList<>(List.of(
+                "events.lock.strategy=" + lockStrategy,
+                "events.lock.stripes=" + lockStripes,
+                "spring.datasource.hikari.maximum-pool-size=" + Math.max(10, callers)));
+        if (shards > 1) {
+            List<String> urls = new ArrayList<>(shards);
+            for (int i = 0; i < shards; i++) {
+                urls.add("jdbc:h2:mem:bench-shard-" + i + "-" + System.nanoTime());
+            }
+            properties.add("events.shards.urls=" + String.join(",", urls));
+        }
+        context = BenchmarkApplication.start(properties.toArray(String[]::new));
+        eventService = context.getBean(EventService.class);
+        executor = Executors.newFixedThreadPool(callers);
+        random = new SplittableRandom(42);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public int processBatchRound() throws Exception {
+        List<Callable<Integer>> tasks = new ArrayList<>(callers);
+        for (int c = 0; c < callers; c++) {
+            List<EventRequest> batch = EventFixtures.newEvents("R" + ++round + "-", batchSize, 100, random);
+            tasks.add(() -> eventService.processBatch(batch).getAccepted());
+        }
+        return sum(executor.invokeAll(tasks));
+    }
+
+    static int sum(List<Future<Integer>> results) throws Exception {
+        int total = 0;
+        for (Future<Integer> result : results) {
+            total += result.get();
+        }
+        return total;
+    }
+}
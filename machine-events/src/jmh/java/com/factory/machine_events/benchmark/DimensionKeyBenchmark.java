@@ -0,0 +1,171 @@
+package com.factory.machine_events.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// The machine_events layout and indexes with machine, line and factory ids stored as
+// strings (the previous schema) or as int dictionary keys, in a file database of its
+// own. No Spring context. The compacted file size is printed once per trial, and the
+// two stats range scans are timed against it; the int variant includes resolving the
+// id to its key and the line keys back to ids, as DimensionDictionary does.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DimensionKeyBenchmark {
+
+    private static final OffsetDateTime DAY = OffsetDateTime.of(2026, 1, 15, 0, 0, 0, 0, ZoneOffset.UTC);
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"1000"})
+    private int machines;
+
+    @Param({"1", "24"})
+    private int windowHours;
+
+    @Param({"string", "int"})
+    private String keys;
+
+    private Path directory;
+    private Connection connection;
+    private PreparedStatement machineQuery;
+    private PreparedStatement lineQuery;
+    private final Map<String, Integer> keyOf = new HashMap<>();
+    private final List<String> nameOf = new ArrayList<>();
+    private SplittableRandom random;
+    private Instant end;
+
+    @Setup(Level.Trial)
+    public void createTable() throws SQLException, IOException {
+        boolean intKeys = keys.equals("int");
+        String type = intKeys ? "INTEGER" : "VARCHAR(50)";
+        directory = Files.createTempDirectory("dimension-bench");
+        String url = "jdbc:h2:file:" + directory.resolve("events");
+
+        try (Connection seed = DriverManager.getConnection(url, "sa", "");
+             Statement statement = seed.createStatement()) {
+            statement.execute("CREATE TABLE machine_events (id BIGINT PRIMARY KEY, " +
+                    "event_id VARCHAR(100) NOT NULL, event_time TIMESTAMP WITH TIME ZONE NOT NULL, " +
+                    "received_time TIMESTAMP WITH TIME ZONE NOT NULL, machine_id " + type + " NOT NULL, " +
+                    "duration_ms BIGINT NOT NULL, defect_count INTEGER NOT NULL, line_id " + type + ", " +
+                    "factory_id " + type + ", payload_hash BIGINT, version BIGINT)");
+            statement.execute("CREATE UNIQUE INDEX idx_event_id ON machine_events (event_id)");
+            statement.execute("CREATE INDEX idx_machine_time ON machine_events (machine_id, event_time)");
+            statement.execute("CREATE INDEX idx_line_time ON machine_events (line_id, event_time)");
+            statement.execute("CREATE INDEX idx_factory_time_line_defects " +
+                    "ON machine_events (factory_id, event_time, line_id, defect_count)");
+
+            // Same spread as StatsBenchmark; keys are numbered the way the dictionary
+            // hands them out, machines first
+            String machine = intKeys ? "MOD(X, " + machines + ") + 1"
+                    : "'M-' || LPAD(CAST(MOD(X, " + machines + ") AS VARCHAR), 4, '0')";
+            String line = intKeys ? "MOD(X, " + EventFixtures.LINES + ") + " + (machines + 1)
+                    : "'LINE-' || MOD(X, " + EventFixtures.LINES + ")";
+            String factory = intKeys ? String.valueOf(machines + EventFixtures.LINES + 1)
+                    : "'" + EventFixtures.FACTORY_ID + "'";
+            statement.execute("INSERT INTO machine_events SELECT X, 'S-' || X, " +
+                    "DATEADD(SECOND, MOD(X * 7919, 86400), TIMESTAMP WITH TIME ZONE '2026-01-15 00:00:00+00'), " +
+                    "TIMESTAMP WITH TIME ZONE '2026-01-15 00:00:00+00', " + machine + ", " +
+                    "500 + MOD(X, 4500), MOD(X, 12) - 1, " + line + ", " + factory + ", X * 31, 0 " +
+                    "FROM SYSTEM_RANGE(1, " + rows + ")");
+            statement.execute("ANALYZE");
+            statement.execute("SHUTDOWN COMPACT");
+        }
+        long bytes = Files.size(directory.resolve("events.mv.db"));
+        System.out.printf("%nkeys=%s: %d rows, %.1f MB with indexes (%.1f bytes per row)%n",
+                keys, rows, bytes / 1048576.0, (double) bytes / rows);
+
+        nameOf.add(null);
+        for (int m = 0; m < machines; m++) {
+            register(EventFixtures.machineId(m));
+        }
+        for (int l = 0; l < EventFixtures.LINES; l++) {
+            register(EventFixtures.lineId(l));
+        }
+        register(EventFixtures.FACTORY_ID);
+
+        connection = DriverManager.getConnection(url, "sa", "");
+        machineQuery = connection.prepareStatement(
+                "SELECT COUNT(*), COALESCE(SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END), 0) " +
+                "FROM machine_events WHERE machine_id = ? AND event_time >= ? AND event_time < ?");
+        lineQuery = connection.prepareStatement(
+                "SELECT line_id, SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END) AS defects, " +
+                "COUNT(*) FROM machine_events WHERE factory_id = ? AND event_time >= ? AND event_time < ? " +
+                "AND line_id IS NOT NULL GROUP BY line_id ORDER BY defects DESC LIMIT 3");
+
+        random = new SplittableRandom(42);
+        end = DAY.plusHours(24).toInstant();
+    }
+
+    @TearDown(Level.Trial)
+    public void dropTable() throws SQLException, IOException {
+        connection.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long machineRange() throws SQLException {
+        bind(machineQuery, EventFixtures.machineId(random.nextInt(machines)));
+        try (ResultSet rs = machineQuery.executeQuery()) {
+            rs.next();
+            return rs.getLong(1) + rs.getLong(2);
+        }
+    }
+
+    @Benchmark
+    public List<String> topDefectLines() throws SQLException {
+        bind(lineQuery, EventFixtures.FACTORY_ID);
+        List<String> lines = new ArrayList<>(3);
+        try (ResultSet rs = lineQuery.executeQuery()) {
+            while (rs.next()) {
+                lines.add(keys.equals("int") ? nameOf.get(rs.getInt(1)) : rs.getString(1));
+            }
+        }
+        return lines;
+    }
+
+    // Jitter the window start so H2 cannot hand back a previous identical result
+    private void bind(PreparedStatement query, String id) throws SQLException {
+        if (keys.equals("int")) {
+            query.setInt(1, keyOf.get(id));
+        } else {
+            query.setString(1, id);
+        }
+        Instant start = end.minusSeconds(windowHours * 3600L).plusSeconds(random.nextInt(60));
+        query.setObject(2, start.atOffset(ZoneOffset.UTC));
+        query.setObject(3, end.atOffset(ZoneOffset.UTC));
+    }
+
+    private void register(String name) {
+        keyOf.put(name, nameOf.size());
+        nameOf.add(name);
+    }
+}
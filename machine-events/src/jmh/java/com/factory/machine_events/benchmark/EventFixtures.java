@@ -0,0 +1,67 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.dto.EventRequest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+
+// Deterministic event generators shared by the benchmarks
+public final class EventFixtures {
+
+    public static final Instant BASE = Instant.parse("2026-01-15T00:00:00Z");
+    public static final String FACTORY_ID = "F01";
+    public static final int LINES = 8;
+
+    private EventFixtures() {}
+
+    public static EventRequest event(String eventId, Instant eventTime, String machineId,
+                                     long durationMs, int defectCount, String lineId,
+                                     Instant receivedTime) {
+        EventRequest event = new EventRequest();
+        event.setEventId(eventId);
+        event.setEventTime(eventTime);
+        event.setReceivedTime(receivedTime);
+        event.setMachineId(machineId);
+        event.setDurationMs(durationMs);
+        event.setDefectCount(defectCount);
+        event.setLineId(lineId);
+        event.setFactoryId(FACTORY_ID);
+        return event;
+    }
+
+    // Unique, valid events spread over a 24 hour window starting at BASE
+    public static List<EventRequest> newEvents(String prefix, int count, int machines,
+                                               SplittableRandom random) {
+        List<EventRequest> events = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            events.add(randomEvent(prefix + i, machines, random));
+        }
+        return events;
+    }
+
+    public static EventRequest randomEvent(String eventId, int machines, SplittableRandom random) {
+        return event(eventId,
+                BASE.plusSeconds(random.nextInt(24 * 60 * 60)),
+                machineId(random.nextInt(machines)),
+                500 + random.nextInt(4500),
+                random.nextInt(-1, 11),
+                lineId(random.nextInt(LINES)),
+                BASE);
+    }
+
+    public static EventRequest copy(EventRequest source) {
+        return event(source.getEventId(), source.getEventTime(), source.getMachineId(),
+                source.getDurationMs(), source.getDefectCount(), source.getLineId(),
+                source.getReceivedTime());
+    }
+
+    public static String machineId(int index) {
+        return String.format("M-%04d", index);
+    }
+
+    public static String lineId(int index) {
+        return "LINE-" + index;
+    }
+}
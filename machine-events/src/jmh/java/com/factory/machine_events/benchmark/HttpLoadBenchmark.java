@@ -0,0 +1,92 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.service.EventService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// GET /stats through embedded Tomcat with N clients in flight at once, on platform
+// request threads (Tomcat's default pool of 200) or on virtual threads. One operation
+// is one round in which every client gets one response. virtualThreads=true needs a
+// Java 21+ runtime.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class HttpLoadBenchmark {
+
+    @Param({"false", "true"})
+    private boolean virtualThreads;
+
+    @Param({"100", "1000", "5000"})
+    private int clients;
+
+    @Param({"100000"})
+    private int rows;
+
+    @Param({"100"})
+    private int machines;
+
+    private ConfigurableApplicationContext context;
+    private HttpClient client;
+    private List<HttpRequest> requests;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = BenchmarkApplication.startWeb(
+                "spring.threads.virtual.enabled=" + virtualThreads,
+                "server.tomcat.max-connections=" + Math.max(8192, clients * 2),
+                "server.tomcat.accept-count=" + clients,
+                "spring.datasource.hikari.maximum-pool-size=50");
+
+        SplittableRandom random = new SplittableRandom(42);
+        EventService eventService = context.getBean(EventService.class);
+        for (int offset = 0; offset < rows; offset += 1000) {
+            int count = Math.min(1000, rows - offset);
+            eventService.processBatch(EventFixtures.newEvents("H" + offset + "-", count, machines, random));
+        }
+
+        int port = context.getEnvironment().getRequiredProperty("local.server.port", Integer.class);
+        String end = EventFixtures.BASE.plus(Duration.ofHours(24)).toString();
+        requests = new ArrayList<>(machines);
+        for (int m = 0; m < machines; m++) {
+            requests.add(HttpRequest.newBuilder(URI.create("http://localhost:" + port + "/stats?machineId="
+                            + EventFixtures.machineId(m) + "&start=" + EventFixtures.BASE + "&end=" + end))
+                    .timeout(Duration.ofSeconds(60))
+                    .build());
+        }
+        client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_1_1).build();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public int statsRound() {
+        List<CompletableFuture<HttpResponse<Void>>> responses = new ArrayList<>(clients);
+        for (int c = 0; c < clients; c++) {
+            responses.add(client.sendAsync(requests.get(c % requests.size()), HttpResponse.BodyHandlers.discarding()));
+        }
+        int ok = 0;
+        for (CompletableFuture<HttpResponse<Void>> response : responses) {
+            if (response.join().statusCode() == 200) {
+                ok++;
+            }
+        }
+        return ok;
+    }
+}
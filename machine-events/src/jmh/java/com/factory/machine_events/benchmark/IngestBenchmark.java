@@ -0,0 +1,115 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.service.EventService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// End-to-end EventService.processBatch against H2, one batch per invocation.
+// Each batch mixes exact duplicates and newer-payload updates of previously
+// ingested events with brand new eventIds, according to the ratio params.
+// Every param defaults to one value, so a plain run is a single configuration;
+// pass the values under comparison with -p, one feature at a time.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestBenchmark {
+
+    @Param({"1000"})
+    private int batchSize;
+
+    @Param({"0.25"})
+    private double duplicateRatio;
+
+    @Param({"0.1"})
+    private double updateRatio;
+
+    @Param({"1000"})
+    private int machines;
+
+    // 1 sends every INSERT on its own round trip, as IDENTITY id generation used to
+    @Param({"50"})
+    private int jdbcBatchSize;
+
+    @Param({"jpa"})
+    private String persistenceMode;
+
+    // 0 keeps every batch on the calling thread
+    @Param({"0"})
+    private int parallelThreshold;
+
+    @Param({"false"})
+    private boolean idFilter;
+
+    @Param({"false"})
+    private boolean recentCache;
+
+    // Stage, outcome and lock wait meters; false measures the code without them
+    @Param({"true"})
+    private boolean metrics;
+
+    private ConfigurableApplicationContext context;
+    private EventService eventService;
+    private SplittableRandom random;
+    private List<EventRequest> ingested;
+    private List<EventRequest> batch;
+    private long sequence;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start(
+                "spring.jpa.properties.hibernate.jdbc.batch_size=" + jdbcBatchSize,
+                "events.persistence.mode=" + persistenceMode,
+                "events.parallel.threshold=" + parallelThreshold,
+                "events.id-filter.enabled=" + idFilter,
+                "events.recent-cache.enabled=" + recentCache,
+                "events.metrics.enabled=" + metrics);
+        eventService = context.getBean(EventService.class);
+        random = new SplittableRandom(42);
+
+        // Seed the table so duplicates and updates have something to hit
+        ingested = EventFixtures.newEvents("SEED-", batchSize, machines, random);
+        eventService.processBatch(ingested);
+    }
+
+    @Setup(Level.Invocation)
+    public void nextBatch() {
+        batch = new ArrayList<>(batchSize);
+        for (int i = 0; i < batchSize; i++) {
+            double roll = random.nextDouble();
+            if (roll < duplicateRatio) {
+                batch.add(EventFixtures.copy(ingested.get(random.nextInt(ingested.size()))));
+            } else if (roll < duplicateRatio + updateRatio) {
+                // Newer receivedTime plus a changed payload always wins
+                int index = random.nextInt(ingested.size());
+                EventRequest update = EventFixtures.copy(ingested.get(index));
+                update.setDurationMs(update.getDurationMs() + 1);
+                update.setReceivedTime(Instant.ofEpochMilli(EventFixtures.BASE.toEpochMilli() + ++sequence));
+                ingested.set(index, update);
+                batch.add(update);
+            } else {
+                batch.add(EventFixtures.randomEvent("N-" + ++sequence, machines, random));
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public BatchResponse processBatch() {
+        return eventService.processBatch(batch);
+    }
+}
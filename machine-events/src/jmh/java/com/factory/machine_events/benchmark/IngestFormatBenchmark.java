@@ -0,0 +1,79 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.codec.EventFrameCodec;
+import com.factory.machine_events.dto.EventRequest;
+import org.openjdk.jmh.annotations.*;
+import tools.jackson.databind.ObjectReader;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+// Decoding one /events/batch body, JSON (with the @JsonFormat Instant parsing) against
+// the fixed-layout event frame, each optionally gzip-compressed. No Spring context;
+// the body size of each combination is printed once per trial.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class IngestFormatBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    private int batchSize;
+
+    @Param({"json", "frame"})
+    private String format;
+
+    @Param({"false", "true"})
+    private boolean gzip;
+
+    private ObjectReader jsonReader;
+    private byte[] body;
+
+    @Setup(Level.Trial)
+    public void encode() throws IOException {
+        JsonMapper mapper = JsonMapper.builder().build();
+        jsonReader = mapper.readerForListOf(EventRequest.class);
+
+        List<EventRequest> events = EventFixtures.newEvents("F-", batchSize, 100, new SplittableRandom(42));
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        if (format.equals("json")) {
+            plain.write(mapper.writeValueAsBytes(events));
+        } else {
+            EventFrameCodec.write(events, plain);
+        }
+
+        if (gzip) {
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            try (GZIPOutputStream out = new GZIPOutputStream(compressed)) {
+                plain.writeTo(out);
+            }
+            body = compressed.toByteArray();
+        } else {
+            body = plain.toByteArray();
+        }
+        System.out.printf("%n%s gzip=%s: %d bytes for %d events (%.1f per event)%n",
+                format, gzip, body.length, batchSize, (double) body.length / batchSize);
+    }
+
+    @Benchmark
+    public List<EventRequest> decode() throws IOException {
+        InputStream in = new ByteArrayInputStream(body);
+        if (gzip) {
+            in = new GZIPInputStream(in, 8192);
+        }
+        if (format.equals("json")) {
+            return jsonReader.readValue(in);
+        }
+        return EventFrameCodec.read(in);
+    }
+}
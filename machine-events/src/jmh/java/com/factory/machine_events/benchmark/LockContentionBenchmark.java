@@ -0,0 +1,76 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.service.LockMap;
+import com.factory.machine_events.service.LockTable;
+import com.factory.machine_events.service.StripedLocks;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.locks.Lock;
+
+// Per-event locking pattern of processBatch under N concurrent callers. One
+// operation is one round in which every caller locks each eventId of a batch of
+// fresh ids. Compares the old unbounded per-eventId lock map ("map") with the
+// striped lock table ("striped"); see ConcurrentIngestBenchmark for the same
+// caller counts against the real service.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LockContentionBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    private int callers;
+
+    @Param({"map", "striped"})
+    private String lockTable;
+
+    @Param({"1000"})
+    private int batchSize;
+
+    private ExecutorService executor;
+    private LockTable locks;
+    private long round;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(callers);
+        locks = "map".equals(lockTable) ? new LockMap() : new StripedLocks(1024);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int lockRound() throws Exception {
+        long current = ++round;
+        List<Callable<Integer>> tasks = new ArrayList<>(callers);
+        for (int c = 0; c < callers; c++) {
+            String prefix = "R" + current + "-C" + c + "-";
+            tasks.add(() -> {
+                // Stands in for the existingEvents map processBatch updates under the lock
+                Map<String, Object> decided = new HashMap<>();
+                for (int i = 0; i < batchSize; i++) {
+                    String eventId = prefix + i;
+                    Lock lock = locks.lockFor(eventId);
+                    lock.lock();
+                    try {
+                        decided.put(eventId, lock);
+                    } finally {
+                        lock.unlock();
+                    }
+                }
+                return decided.size();
+            });
+        }
+        return ConcurrentIngestBenchmark.sum(executor.invokeAll(tasks));
+    }
+}
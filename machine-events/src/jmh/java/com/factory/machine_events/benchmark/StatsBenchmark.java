@@ -0,0 +1,145 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.repository.DimensionDictionary;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.LineTotals;
+import com.factory.machine_events.service.ColumnarEventStore;
+import com.factory.machine_events.service.StatsService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+// StatsService queries over a pre-populated 24 hour window. The *EntityScan and
+// *JavaLimit benchmarks reproduce the previous query strategy (hydrate every
+// event, rank all lines and limit in Java) as a baseline; coveringIndex=false
+// drops idx_factory_time_line_defects, columnar=true answers StatsService from the
+// off-heap columns, loaded from the seeded table.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsBenchmark {
+
+    // Rows are generated inside H2, spread evenly over machines, lines and the day.
+    // Ids are registered with the dictionary first and stored as their keys.
+    private static final String SEED_SQL =
+            "INSERT INTO machine_events (id, event_id, event_time, received_time, machine_id, " +
+            "duration_ms, defect_count, line_id, factory_id, version) " +
+            "SELECT X, 'S-' || X, " +
+            "DATEADD(SECOND, MOD(X * 7919, 86400), TIMESTAMP WITH TIME ZONE '2026-01-15 00:00:00+00'), " +
+            "TIMESTAMP WITH TIME ZONE '2026-01-15 00:00:00+00', m.id, " +
+            "500 + MOD(X, 4500), MOD(X, 12) - 1, l.id, f.id, 0 " +
+            "FROM SYSTEM_RANGE(1, ?) " +
+            "JOIN dimensions m ON m.name = 'M-' || LPAD(CAST(MOD(X, ?) AS VARCHAR), 4, '0') " +
+            "JOIN dimensions l ON l.name = 'LINE-' || MOD(X, " + EventFixtures.LINES + ") " +
+            "JOIN dimensions f ON f.name = '" + EventFixtures.FACTORY_ID + "'";
+
+    @Param({"1000000"})
+    private int rows;
+
+    @Param({"10", "1000"})
+    private int machines;
+
+    @Param({"1", "24"})
+    private int windowHours;
+
+    @Param({"true", "false"})
+    private boolean coveringIndex;
+
+    @Param({"false", "true"})
+    private boolean columnar;
+
+    private ConfigurableApplicationContext context;
+    private StatsService statsService;
+    private EventRepository eventRepository;
+    private SplittableRandom random;
+    private Instant start;
+    private Instant end;
+
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = BenchmarkApplication.start("events.columnar.enabled=" + columnar);
+        statsService = context.getBean(StatsService.class);
+        eventRepository = context.getBean(EventRepository.class);
+        random = new SplittableRandom(42);
+
+        DimensionDictionary dimensions = context.getBean(DimensionDictionary.class);
+        for (int m = 0; m < machines; m++) {
+            dimensions.key(EventFixtures.machineId(m));
+        }
+        for (int l = 0; l < EventFixtures.LINES; l++) {
+            dimensions.key(EventFixtures.lineId(l));
+        }
+        dimensions.key(EventFixtures.FACTORY_ID);
+
+        JdbcTemplate jdbcTemplate = context.getBean(JdbcTemplate.class);
+        jdbcTemplate.update(SEED_SQL, rows, machines);
+        if (!coveringIndex) {
+            jdbcTemplate.execute("DROP INDEX idx_factory_time_line_defects");
+        }
+        jdbcTemplate.execute("ANALYZE");
+        if (columnar) {
+            // The rows went in behind the application's back, so load them as at startup
+            ColumnarEventStore columnarStore = context.getBean(ColumnarEventStore.class);
+            columnarStore.afterSingletonsInstantiated();
+            System.out.printf("%ncolumnar: %d rows in %.1f MB off heap%n", rows, columnarStore.bytes() / 1048576.0);
+        }
+
+        end = EventFixtures.BASE.plus(Duration.ofHours(24));
+        start = end.minus(Duration.ofHours(windowHours));
+    }
+
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+
+    @Benchmark
+    public StatsResponse getStats() {
+        return statsService.getStats(nextMachine(), nextStart(), end);
+    }
+
+    @Benchmark
+    public long getStatsEntityScan() {
+        List<MachineEvent> events = eventRepository.findByMachineIdAndTimeRange(nextMachine(), nextStart(), end);
+        return events.size() + events.stream()
+                .filter(e -> e.getDefectCount() != null && e.getDefectCount() >= 0)
+                .mapToLong(MachineEvent::getDefectCount)
+                .sum();
+    }
+
+    @Benchmark
+    public List<TopDefectLineResponse> getTopDefectLines() {
+        return statsService.getTopDefectLines(EventFixtures.FACTORY_ID, nextStart(), end, 3);
+    }
+
+    @Benchmark
+    public List<LineTotals> getTopDefectLinesJavaLimit() {
+        return eventRepository.findTopDefectLines(EventFixtures.FACTORY_ID, nextStart(), end, Limit.unlimited())
+                .stream()
+                .limit(3)
+                .collect(Collectors.toList());
+    }
+
+    // Jitter the window start so H2 cannot hand back a previous identical result
+    private Instant nextStart() {
+        return start.plusSeconds(random.nextInt(60));
+    }
+
+    private String nextMachine() {
+        return EventFixtures.machineId(random.nextInt(machines));
+    }
+}
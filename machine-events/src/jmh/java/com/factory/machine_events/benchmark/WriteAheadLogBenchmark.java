@@ -0,0 +1,69 @@
+package com.factory.machine_events.benchmark;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.service.WriteAheadLog;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+// What a logged /events/batch waits for before its 202: encoding the batch and
+// forcing it to disk, in a temp directory on the benchmark machine's disk. Records
+// are marked applied at once, so segments are recycled as in steady state. No Spring
+// context. appendShared runs 8 threads against one log, where forces are shared.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WriteAheadLogBenchmark {
+
+    @Param({"100", "1000"})
+    private int batchSize;
+
+    @Param({"64"})
+    private int segmentMb;
+
+    private Path directory;
+    private WriteAheadLog writeAheadLog;
+    private List<EventRequest> batch;
+
+    @Setup(Level.Trial)
+    public void openLog() throws IOException {
+        directory = Files.createTempDirectory("wal-bench");
+        writeAheadLog = new WriteAheadLog(true, directory.toString(), DataSize.ofMegabytes(segmentMb));
+        writeAheadLog.open();
+        batch = EventFixtures.newEvents("W-", batchSize, 100, new SplittableRandom(42));
+    }
+
+    @TearDown(Level.Trial)
+    public void deleteLog() throws IOException {
+        writeAheadLog.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public long append() {
+        long position = writeAheadLog.append(batch);
+        writeAheadLog.markApplied(position);
+        return position;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public long appendShared() {
+        return append();
+    }
+}
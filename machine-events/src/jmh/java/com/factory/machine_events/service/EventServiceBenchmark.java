@@ -0,0 +1,113 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.benchmark.BenchmarkApplication;
+import com.factory.machine_events.benchmark.EventFixtures;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.model.MachineEvent;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+// CPU-only parts of the ingest path, measured per batch without touching the database.
+// Run with -prof gc to see bytes allocated per batch (gc.alloc.rate.norm).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EventServiceBenchmark {
+
+    @Param({"100", "1000", "5000"})
+    private int batchSize;
+
+    @Param({"10", "1000"})
+    private int machines;
+
+    private ConfigurableApplicationContext context;
+    private EventService eventService;
+    private List<EventRequest> batch;
+    private List<EventRequest> changed;
+    private MachineEvent[] stored;
+    private MachineEvent[] incoming;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // The application's own service, so new constructor arguments never reach this
+        // class; validation and conversion never touch the database it starts
+        context = BenchmarkApplication.start();
+        eventService = context.getBean(EventService.class);
+        batch = EventFixtures.newEvents("E-", batchSize, machines, new SplittableRandom(42));
+
+        // Every other event differs from the stored one in defectCount
+        Instant now = Instant.now();
+        changed = new ArrayList<>(batchSize);
+        stored = new MachineEvent[batchSize];
+        incoming = new MachineEvent[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+            EventRequest request = EventFixtures.copy(batch.get(i));
+            if (i % 2 == 0) {
+                request.setDefectCount(request.getDefectCount() + 1);
+            }
+            changed.add(request);
+            stored[i] = eventService.convertToEntity(batch.get(i), now);
+            incoming[i] = eventService.convertToEntity(request, now);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    // The clock is read once per batch, as processBatch does
+    @Benchmark
+    public void validateEvent(Blackhole blackhole) {
+        Instant latestEventTime = EventService.latestEventTime(Instant.now());
+        for (EventRequest request : batch) {
+            blackhole.consume(eventService.validateEvent(request, latestEventTime));
+        }
+    }
+
+    @Benchmark
+    public void convertToEntity(Blackhole blackhole) {
+        Instant now = Instant.now();
+        for (EventRequest request : batch) {
+            blackhole.consume(eventService.convertToEntity(request, now));
+        }
+    }
+
+    @Benchmark
+    public void hasSamePayload(Blackhole blackhole) {
+        for (int i = 0; i < stored.length; i++) {
+            blackhole.consume(stored[i].hasSamePayload(incoming[i]));
+        }
+    }
+
+    // What the diff of an existing event used to cost: an entity per request just to
+    // compare it. Compare gc.alloc.rate.norm with compareRequest.
+    @Benchmark
+    public void compareViaEntity(Blackhole blackhole) {
+        Instant now = Instant.now();
+        for (int i = 0; i < stored.length; i++) {
+            blackhole.consume(stored[i].hasSamePayload(eventService.convertToEntity(changed.get(i), now)));
+        }
+    }
+
+    // The request compared against the stored state directly, as processBatch does now
+    @Benchmark
+    public void compareRequest(Blackhole blackhole) {
+        for (int i = 0; i < stored.length; i++) {
+            EventRequest request = changed.get(i);
+            blackhole.consume(stored[i].hasSamePayload(EventService.payloadHash(request), request.getEventTime(),
+                    request.getMachineId(), request.getDurationMs(), request.getDefectCount(),
+                    request.getLineId(), request.getFactoryId()));
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package com.factory.machine_events.loadgen;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Load generator options, given as --name=value arguments. Every option has a
+// default, so a bare run drives a local app with a mixed ingest and stats load.
+public record LoadConfig(
+        String baseUrl,
+        int concurrency,
+        int warmupSeconds,
+        int durationSeconds,
+        // Total requests per second across all workers; 0 sends the next request as
+        // soon as the previous one returns
+        int rate,
+        int batchSize,
+        double duplicateRatio,
+        double updateRatio,
+        double invalidRatio,
+        int machines,
+        int lines,
+        int factories,
+        // Share of requests that are stats queries, split evenly between /stats and
+        // /stats/top-defect-lines
+        double statsRatio,
+        long seed) {
+
+    public static LoadConfig parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("expected --name=value, got " + arg);
+            }
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+
+        LoadConfig config = new LoadConfig(
+                stringOption(options, "url", "http://localhost:8080"),
+                intOption(options, "concurrency", 8),
+                intOption(options, "warmup-seconds", 10),
+                intOption(options, "duration-seconds", 60),
+                intOption(options, "rate", 0),
+                intOption(options, "batch-size", 1000),
+                ratioOption(options, "duplicate-ratio", 0.1),
+                ratioOption(options, "update-ratio", 0.05),
+                ratioOption(options, "invalid-ratio", 0.01),
+                intOption(options, "machines", 100),
+                intOption(options, "lines", 8),
+                intOption(options, "factories", 1),
+                ratioOption(options, "stats-ratio", 0.2),
+                Long.parseLong(stringOption(options, "seed", "42")));
+        if (!options.isEmpty()) {
+            throw new IllegalArgumentException("unknown options: " + options.keySet());
+        }
+        if (config.duplicateRatio + config.updateRatio + config.invalidRatio > 1) {
+            throw new IllegalArgumentException("duplicate, update and invalid ratios add up to more than 1");
+        }
+        return config;
+    }
+
+    private static String stringOption(Map<String, String> options, String name, String defaultValue) {
+        String value = options.remove(name);
+        return value != null ? value : defaultValue;
+    }
+
+    private static int intOption(Map<String, String> options, String name, int defaultValue) {
+        String value = options.remove(name);
+        int parsed = value != null ? Integer.parseInt(value) : defaultValue;
+        if (parsed < 0 || parsed == 0 && !name.equals("rate") && !name.equals("warmup-seconds")) {
+            throw new IllegalArgumentException(name + " must be positive: " + parsed);
+        }
+        return parsed;
+    }
+
+    private static double ratioOption(Map<String, String> options, String name, double defaultValue) {
+        String value = options.remove(name);
+        double parsed = value != null ? Double.parseDouble(value) : defaultValue;
+        if (parsed < 0 || parsed > 1) {
+            throw new IllegalArgumentException(name + " must be between 0 and 1: " + parsed);
+        }
+        return parsed;
+    }
+}
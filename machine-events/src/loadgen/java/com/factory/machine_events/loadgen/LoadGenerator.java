@@ -0,0 +1,200 @@
+package com.factory.machine_events.loadgen;
+
+import org.HdrHistogram.Histogram;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+// HTTP load against a running app: concurrency workers send POST /events/batch and
+// GET /stats requests until duration-seconds have passed after the warmup, recording
+// latency in HdrHistograms per endpoint. Run with:
+//
+//   ./mvnw -Ploadgen test-compile exec:exec -Dloadgen.args="--concurrency=16 --batch-size=1000"
+//
+// With --rate the schedule is fixed in advance and latency is measured from when a
+// request was due, so a stalled server shows up in the tail instead of slowing the
+// load down (coordinated omission).
+public final class LoadGenerator {
+
+    private static final long MAX_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+
+    private LoadGenerator() {}
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config = LoadConfig.parse(args);
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        checkReachable(client, config);
+
+        Instant runStart = Instant.now();
+        long measureStart = System.nanoTime() + TimeUnit.SECONDS.toNanos(config.warmupSeconds());
+        long measureEnd = measureStart + TimeUnit.SECONDS.toNanos(config.durationSeconds());
+
+        List<Worker> workers = new ArrayList<>(config.concurrency());
+        List<Thread> threads = new ArrayList<>(config.concurrency());
+        for (int w = 0; w < config.concurrency(); w++) {
+            Worker worker = new Worker(client, config, new RequestGenerator(config, w, runStart),
+                    measureStart, measureEnd);
+            workers.add(worker);
+            Thread thread = new Thread(worker, "loadgen-" + w);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        Result batches = new Result();
+        Result stats = new Result();
+        for (Worker worker : workers) {
+            batches.add(worker.batches);
+            stats.add(worker.stats);
+        }
+        report(config, batches, stats);
+    }
+
+    private static void checkReachable(HttpClient client, LoadConfig config) throws InterruptedException {
+        try {
+            HttpRequest health = HttpRequest.newBuilder(URI.create(config.baseUrl() + "/actuator/health"))
+                    .GET().build();
+            HttpResponse<Void> response = client.send(health, HttpResponse.BodyHandlers.discarding());
+            if (response.statusCode() != 200) {
+                throw new IllegalStateException("health check returned " + response.statusCode());
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("app not reachable at " + config.baseUrl(), e);
+        }
+    }
+
+    private static void report(LoadConfig config, Result batches, Result stats) {
+        double seconds = config.durationSeconds();
+        System.out.printf("%nconcurrency=%d rate=%s batch-size=%d duplicate=%.2f update=%.2f invalid=%.2f "
+                        + "machines=%d lines=%d factories=%d stats-ratio=%.2f seed=%d, measured %ds%n%n",
+                config.concurrency(), config.rate() > 0 ? config.rate() + "/s" : "closed-loop",
+                config.batchSize(), config.duplicateRatio(), config.updateRatio(), config.invalidRatio(),
+                config.machines(), config.lines(), config.factories(), config.statsRatio(), config.seed(),
+                config.durationSeconds());
+        System.out.printf("%-20s %9s %7s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        printRow("POST /events/batch", batches, seconds);
+        printRow("GET /stats*", stats, seconds);
+        System.out.printf("%nevents/s: %.0f%n", batches.histogram.getTotalCount() * config.batchSize() / seconds);
+    }
+
+    private static void printRow(String endpoint, Result result, double seconds) {
+        Histogram h = result.histogram;
+        System.out.printf("%-20s %9d %7d %9.1f %9.2f %9.2f %9.2f %9.2f%n",
+                endpoint, h.getTotalCount(), result.errors, h.getTotalCount() / seconds,
+                millis(h.getValueAtPercentile(50)), millis(h.getValueAtPercentile(99)),
+                millis(h.getValueAtPercentile(99.9)), millis(h.getMaxValue()));
+    }
+
+    private static double millis(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    // Latencies of successful requests in nanoseconds, plus the failures
+    private static final class Result {
+        final Histogram histogram = new Histogram(MAX_LATENCY_NANOS, 3);
+        long errors;
+
+        void add(Result other) {
+            histogram.add(other.histogram);
+            errors += other.errors;
+        }
+    }
+
+    // One closed-loop client, or one share of the --rate schedule. Only touched by its
+    // own thread until main joins it.
+    private static final class Worker implements Runnable {
+
+        private final HttpClient client;
+        private final LoadConfig config;
+        private final RequestGenerator generator;
+        private final long measureStart;
+        private final long measureEnd;
+        private final long intervalNanos;
+
+        final Result batches = new Result();
+        final Result stats = new Result();
+
+        Worker(HttpClient client, LoadConfig config, RequestGenerator generator, long measureStart, long measureEnd) {
+            this.client = client;
+            this.config = config;
+            this.generator = generator;
+            this.measureStart = measureStart;
+            this.measureEnd = measureEnd;
+            this.intervalNanos = config.rate() > 0 ?
+                    TimeUnit.SECONDS.toNanos(config.concurrency()) / config.rate() : 0;
+        }
+
+        @Override
+        public void run() {
+            long due = System.nanoTime();
+            while (true) {
+                // Built before waiting for its slot, so body generation is not counted
+                // unless the worker has fallen behind the schedule
+                boolean isStats = generator.nextIsStats();
+                HttpRequest request = isStats ? statsRequest() : batchRequest();
+
+                if (intervalNanos > 0) {
+                    long wait;
+                    while ((wait = due - System.nanoTime()) > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                } else {
+                    due = System.nanoTime();
+                }
+                if (due >= measureEnd) {
+                    return;
+                }
+
+                boolean ok = send(request);
+                long end = System.nanoTime();
+                if (due >= measureStart) {
+                    Result result = isStats ? stats : batches;
+                    if (ok) {
+                        result.histogram.recordValue(Math.min(end - due, MAX_LATENCY_NANOS));
+                    } else {
+                        result.errors++;
+                    }
+                }
+                due += intervalNanos;
+            }
+        }
+
+        private HttpRequest batchRequest() {
+            return HttpRequest.newBuilder(URI.create(config.baseUrl() + "/events/batch"))
+                    .header("Content-Type", "application/json")
+                    .POST(HttpRequest.BodyPublishers.ofString(generator.batch()))
+                    .build();
+        }
+
+        private HttpRequest statsRequest() {
+            return HttpRequest.newBuilder(URI.create(config.baseUrl() + generator.statsQuery())).GET().build();
+        }
+
+        private boolean send(HttpRequest request) {
+            try {
+                HttpResponse<Void> response = client.send(request, HttpResponse.BodyHandlers.discarding());
+                return response.statusCode() / 100 == 2;
+            } catch (IOException e) {
+                return false;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+}
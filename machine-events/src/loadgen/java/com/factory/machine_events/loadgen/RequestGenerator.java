@@ -0,0 +1,140 @@
+package com.factory.machine_events.loadgen;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.SplittableRandom;
+
+// Request bodies and query strings for one worker. Deterministic for a given seed;
+// duplicates and updates re-send events this worker sent before, so workers never
+// share state. receivedTime is left to the server, which makes a re-sent payload a
+// duplicate and a changed one an update.
+final class RequestGenerator {
+
+    private static final DateTimeFormatter EVENT_TIME =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'").withZone(ZoneOffset.UTC);
+
+    // Sent events kept for duplicates and updates, oldest overwritten first
+    private static final int HISTORY = 100_000;
+
+    private final LoadConfig config;
+    private final SplittableRandom random;
+    private final String idPrefix;
+
+    // The 24 whole hours before the run started, so no event is in the future and the
+    // stats windows always cover data
+    private final long windowStartMillis;
+    private final long windowMillis = ChronoUnit.DAYS.getDuration().toMillis();
+
+    private final String[] sentIds = new String[HISTORY];
+    private final long[] sentTimes = new long[HISTORY];
+    private final int[] sentMachines = new int[HISTORY];
+    private final long[] sentDurations = new long[HISTORY];
+    private final int[] sentDefects = new int[HISTORY];
+    private final int[] sentLines = new int[HISTORY];
+    private long sent;
+
+    RequestGenerator(LoadConfig config, int worker, Instant runStart) {
+        this.config = config;
+        this.random = new SplittableRandom(config.seed() * 31 + worker);
+        // Unique per run as well as per worker, so reruns against one app start fresh
+        this.idPrefix = "LG-" + runStart.toEpochMilli() + "-" + worker + "-";
+        this.windowStartMillis = runStart.truncatedTo(ChronoUnit.HOURS).toEpochMilli() - windowMillis;
+    }
+
+    boolean nextIsStats() {
+        return random.nextDouble() < config.statsRatio();
+    }
+
+    // JSON array for POST /events/batch
+    String batch() {
+        StringBuilder body = new StringBuilder(config.batchSize() * 200);
+        // Only events of earlier batches are re-sent, since the server gives a whole
+        // batch one receivedTime and an update within it would count as a duplicate
+        long batchStart = sent;
+        int history = (int) Math.max(0, Math.min(batchStart, HISTORY - config.batchSize()));
+        body.append('[');
+        for (int i = 0; i < config.batchSize(); i++) {
+            if (i > 0) {
+                body.append(',');
+            }
+            double kind = random.nextDouble();
+            if (kind < config.invalidRatio()) {
+                appendEvent(body, idPrefix + "X" + sent + "-" + i, randomTime(), random.nextInt(config.machines()),
+                        -1, random.nextInt(11), random.nextInt(config.lines()));
+            } else if (history > 0 && kind < config.invalidRatio() + config.duplicateRatio()) {
+                int k = earlier(batchStart, history);
+                appendEvent(body, sentIds[k], sentTimes[k], sentMachines[k], sentDurations[k],
+                        sentDefects[k], sentLines[k]);
+            } else if (history > 0 && kind < config.invalidRatio() + config.duplicateRatio() + config.updateRatio()) {
+                int k = earlier(batchStart, history);
+                sentDefects[k] = (sentDefects[k] + 1) % 11;
+                appendEvent(body, sentIds[k], sentTimes[k], sentMachines[k], sentDurations[k],
+                        sentDefects[k], sentLines[k]);
+            } else {
+                int k = (int) (sent % HISTORY);
+                sentIds[k] = idPrefix + sent;
+                sentTimes[k] = randomTime();
+                sentMachines[k] = random.nextInt(config.machines());
+                sentDurations[k] = 500 + random.nextInt(4500);
+                sentDefects[k] = random.nextInt(11);
+                sentLines[k] = random.nextInt(config.lines());
+                sent++;
+                appendEvent(body, sentIds[k], sentTimes[k], sentMachines[k], sentDurations[k],
+                        sentDefects[k], sentLines[k]);
+            }
+        }
+        return body.append(']').toString();
+    }
+
+    // Path and query of GET /stats or /stats/top-defect-lines over a random window of
+    // one to 24 whole hours inside the generated day
+    String statsQuery() {
+        int hours = 1 + random.nextInt(24);
+        long from = windowStartMillis + random.nextInt(24 - hours + 1) * 3_600_000L;
+        String start = encode(EVENT_TIME.format(Instant.ofEpochMilli(from)));
+        String end = encode(EVENT_TIME.format(Instant.ofEpochMilli(from + hours * 3_600_000L)));
+        if (random.nextBoolean()) {
+            return "/stats?machineId=" + machineId(random.nextInt(config.machines()))
+                    + "&start=" + start + "&end=" + end;
+        }
+        return "/stats/top-defect-lines?factoryId=" + factoryId(random.nextInt(config.factories()))
+                + "&from=" + start + "&to=" + end + "&limit=10";
+    }
+
+    private void appendEvent(StringBuilder body, String eventId, long eventTime, int machine,
+                             long durationMs, int defectCount, int line) {
+        body.append("{\"eventId\":\"").append(eventId)
+                .append("\",\"eventTime\":\"").append(EVENT_TIME.format(Instant.ofEpochMilli(eventTime)))
+                .append("\",\"machineId\":\"").append(machineId(machine))
+                .append("\",\"durationMs\":").append(durationMs)
+                .append(",\"defectCount\":").append(defectCount)
+                .append(",\"lineId\":\"").append("LINE-").append(line)
+                // Lines belong to one factory, so top-defect-lines sees every line's events
+                .append("\",\"factoryId\":\"").append(factoryId(line % config.factories()))
+                .append("\"}");
+    }
+
+    private int earlier(long batchStart, int history) {
+        return (int) Math.floorMod(batchStart - 1 - random.nextInt(history), (long) HISTORY);
+    }
+
+    private long randomTime() {
+        return windowStartMillis + random.nextLong(windowMillis);
+    }
+
+    private static String machineId(int index) {
+        return String.format("M-%04d", index);
+    }
+
+    private static String factoryId(int index) {
+        return String.format("F%02d", index + 1);
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -2,8 +2,10 @@ package com.factory.machine_events;
 
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
+import org.springframework.scheduling.annotation.EnableScheduling;
 
 @SpringBootApplication
+@EnableScheduling
 public class MachineEventsApplication {
 
 	public static void main(String[] args) {
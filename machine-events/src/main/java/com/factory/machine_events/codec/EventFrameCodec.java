@@ -0,0 +1,128 @@
+package com.factory.machine_events.codec;
+
+import com.factory.machine_events.dto.EventRequest;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+// Fixed-layout binary batch, the compact alternative to a JSON array of events.
+// All numbers are big-endian:
+//
+//   int    magic, "MEV" followed by the format version 1
+//   int    number of events
+//   per event:
+//     str    eventId
+//     long   eventTime, epoch millis
+//     long   receivedTime, epoch millis
+//     str    machineId
+//     long   durationMs
+//     int    defectCount
+//     str    lineId
+//     str    factoryId
+//
+// str is an unsigned short byte length followed by that many UTF-8 bytes, with
+// length 0xFFFF for null. An absent long is Long.MIN_VALUE, an absent int
+// Integer.MIN_VALUE.
+public final class EventFrameCodec {
+
+    public static final int MAGIC = 0x4D455601;
+
+    private static final int NULL_STRING = 0xFFFF;
+
+    // Upper bound on the list allocated up front, whatever count a frame claims
+    private static final int MAX_PRESIZE = 10_000;
+
+    private EventFrameCodec() {}
+
+    public static List<EventRequest> read(InputStream body) throws IOException {
+        DataInputStream in = new DataInputStream(body);
+        int magic = in.readInt();
+        if (magic != MAGIC) {
+            throw new MalformedFrameException(String.format("Unknown frame magic 0x%08X", magic));
+        }
+        int count = in.readInt();
+        if (count < 0) {
+            throw new MalformedFrameException("Negative event count " + count);
+        }
+
+        List<EventRequest> events = new ArrayList<>(Math.min(count, MAX_PRESIZE));
+        for (int i = 0; i < count; i++) {
+            EventRequest event = new EventRequest();
+            event.setEventId(readString(in));
+            event.setEventTime(readInstant(in));
+            event.setReceivedTime(readInstant(in));
+            event.setMachineId(readString(in));
+            long durationMs = in.readLong();
+            event.setDurationMs(durationMs == Long.MIN_VALUE ? null : durationMs);
+            int defectCount = in.readInt();
+            event.setDefectCount(defectCount == Integer.MIN_VALUE ? null : defectCount);
+            event.setLineId(readString(in));
+            event.setFactoryId(readString(in));
+            events.add(event);
+        }
+        return events;
+    }
+
+    public static void write(List<EventRequest> events, OutputStream body) throws IOException {
+        DataOutputStream out = new DataOutputStream(body);
+        out.writeInt(MAGIC);
+        out.writeInt(events.size());
+        for (EventRequest event : events) {
+            writeString(out, event.getEventId());
+            writeInstant(out, event.getEventTime());
+            writeInstant(out, event.getReceivedTime());
+            writeString(out, event.getMachineId());
+            out.writeLong(event.getDurationMs() != null ? event.getDurationMs() : Long.MIN_VALUE);
+            out.writeInt(event.getDefectCount() != null ? event.getDefectCount() : Integer.MIN_VALUE);
+            writeString(out, event.getLineId());
+            writeString(out, event.getFactoryId());
+        }
+        out.flush();
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        if (length == NULL_STRING) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeShort(NULL_STRING);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length >= NULL_STRING) {
+            throw new IllegalArgumentException("String too long for an event frame: " + bytes.length + " bytes");
+        }
+        out.writeShort(bytes.length);
+        out.write(bytes);
+    }
+
+    private static Instant readInstant(DataInputStream in) throws IOException {
+        long millis = in.readLong();
+        return millis == Long.MIN_VALUE ? null : Instant.ofEpochMilli(millis);
+    }
+
+    private static void writeInstant(DataOutputStream out, Instant value) throws IOException {
+        out.writeLong(value != null ? value.toEpochMilli() : Long.MIN_VALUE);
+    }
+
+    public static class MalformedFrameException extends IOException {
+
+        public MalformedFrameException(String message) {
+            super(message);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package com.factory.machine_events.codec;
+
+import com.factory.machine_events.dto.EventRequest;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+import org.springframework.http.converter.HttpMessageNotWritableException;
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.List;
+
+// Reads request bodies sent as application/x-machine-events (see EventFrameCodec).
+// Picked up by Spring MVC as a converter bean; it only matches that content type,
+// so JSON stays the default. Read-only: canWrite is always false, so Spring MVC
+// never picks it for a response and write is never reached.
+@Component
+public class EventFrameHttpMessageConverter implements HttpMessageConverter<List<EventRequest>> {
+
+    public static final String MEDIA_TYPE_VALUE = "application/x-machine-events";
+    public static final MediaType MEDIA_TYPE = MediaType.parseMediaType(MEDIA_TYPE_VALUE);
+
+    @Override
+    public boolean canRead(Class<?> clazz, MediaType mediaType) {
+        // A body without a Content-Type is left to JSON
+        return List.class.isAssignableFrom(clazz) && mediaType != null && MEDIA_TYPE.includes(mediaType);
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    public List<MediaType> getSupportedMediaTypes() {
+        return List.of(MEDIA_TYPE);
+    }
+
+    @Override
+    public List<EventRequest> read(Class<? extends List<EventRequest>> clazz, HttpInputMessage inputMessage)
+            throws IOException {
+        try {
+            return EventFrameCodec.read(inputMessage.getBody());
+        } catch (EventFrameCodec.MalformedFrameException | EOFException e) {
+            throw new HttpMessageNotReadableException("Malformed event frame: " + e.getMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    public void write(List<EventRequest> events, MediaType contentType, HttpOutputMessage outputMessage) {
+        throw new HttpMessageNotWritableException("Event frames are only read");
+    }
+}
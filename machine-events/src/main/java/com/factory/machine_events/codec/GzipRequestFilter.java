@@ -0,0 +1,165 @@
+package com.factory.machine_events.codec;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.server.PayloadTooLargeException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.zip.GZIPInputStream;
+
+// Inflates request bodies sent with Content-Encoding: gzip, whatever their
+// Content-Type, so the converters and /events/stream only ever see plain bytes.
+// Inflating past maxInflatedSize fails the read with 413, so a small compressed
+// body cannot expand without bound.
+@Component
+public class GzipRequestFilter extends OncePerRequestFilter {
+
+    private final long maxInflatedBytes;
+
+    public GzipRequestFilter(@Value("${events.gzip.max-inflated-size:32MB}") DataSize maxInflatedSize) {
+        if (maxInflatedSize.toBytes() < 1) {
+            throw new IllegalArgumentException("max-inflated-size must be positive: " + maxInflatedSize);
+        }
+        this.maxInflatedBytes = maxInflatedSize.toBytes();
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"gzip".equalsIgnoreCase(request.getHeader(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        chain.doFilter(new GzipRequest(request, maxInflatedBytes), response);
+    }
+
+    private static final class GzipRequest extends HttpServletRequestWrapper {
+
+        private final long maxInflatedBytes;
+        private ServletInputStream body;
+
+        GzipRequest(HttpServletRequest request, long maxInflatedBytes) {
+            super(request);
+            this.maxInflatedBytes = maxInflatedBytes;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() throws IOException {
+            if (body == null) {
+                body = new InflatingInputStream(new GZIPInputStream(super.getInputStream(), 8192), maxInflatedBytes);
+            }
+            return body;
+        }
+
+        // The inflated length is unknown up front
+        @Override
+        public int getContentLength() {
+            return -1;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return -1;
+        }
+
+        @Override
+        public String getHeader(String name) {
+            return isHidden(name) ? null : super.getHeader(name);
+        }
+
+        @Override
+        public Enumeration<String> getHeaders(String name) {
+            return isHidden(name) ? Collections.emptyEnumeration() : super.getHeaders(name);
+        }
+
+        private static boolean isHidden(String name) {
+            return HttpHeaders.CONTENT_ENCODING.equalsIgnoreCase(name)
+                    || HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name);
+        }
+    }
+
+    // PayloadTooLargeException is unchecked, so it passes the converters and the
+    // stream reader untouched and reaches Spring MVC, which answers 413
+    private static final class InflatingInputStream extends ServletInputStream {
+
+        private final InputStream inflater;
+        private final long maxInflatedBytes;
+        private long inflated;
+        private boolean finished;
+
+        InflatingInputStream(InputStream inflater, long maxInflatedBytes) {
+            this.inflater = inflater;
+            this.maxInflatedBytes = maxInflatedBytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = inflater.read();
+            finished = b < 0;
+            if (!finished) {
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = inflater.read(buffer, offset, length);
+            finished = n < 0;
+            if (!finished) {
+                count(n);
+            }
+            return n;
+        }
+
+        private void count(int bytes) {
+            inflated += bytes;
+            if (inflated > maxInflatedBytes) {
+                throw new PayloadTooLargeException(null);
+            }
+        }
+
+        @Override
+        public boolean isFinished() {
+            return finished;
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        // Inflating blocks on the wrapped stream, so there is no waiting for data to
+        // offer: the listener is told it is available at once and reads it blocking
+        @Override
+        public void setReadListener(ReadListener readListener) {
+            try {
+                readListener.onDataAvailable();
+                if (finished) {
+                    readListener.onAllDataRead();
+                }
+            } catch (IOException | RuntimeException e) {
+                readListener.onError(e);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            inflater.close();
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.factory.machine_events.controller;
+
+import com.factory.machine_events.service.EventMetrics;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.converter.HttpMessageConverter;
+import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.servlet.mvc.method.annotation.RequestBodyAdviceAdapter;
+
+import java.lang.reflect.Type;
+
+// Times the bind stage: reading and converting the /events/batch body, gzip
+// inflation included, from just before the converter starts until it returns
+@ControllerAdvice(assignableTypes = EventController.class)
+public class BindTimingAdvice extends RequestBodyAdviceAdapter {
+
+    private static final String START_ATTRIBUTE = BindTimingAdvice.class.getName() + ".start";
+
+    private final EventMetrics metrics;
+
+    public BindTimingAdvice(EventMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    @Override
+    public boolean supports(MethodParameter methodParameter, Type targetType,
+                            Class<? extends HttpMessageConverter<?>> converterType) {
+        return metrics.isEnabled();
+    }
+
+    @Override
+    public HttpInputMessage beforeBodyRead(HttpInputMessage inputMessage, MethodParameter parameter,
+                                           Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        RequestContextHolder.currentRequestAttributes()
+                .setAttribute(START_ATTRIBUTE, metrics.start(), RequestAttributes.SCOPE_REQUEST);
+        return inputMessage;
+    }
+
+    @Override
+    public Object afterBodyRead(Object body, HttpInputMessage inputMessage, MethodParameter parameter,
+                                Type targetType, Class<? extends HttpMessageConverter<?>> converterType) {
+        Object start = RequestContextHolder.currentRequestAttributes()
+                .getAttribute(START_ATTRIBUTE, RequestAttributes.SCOPE_REQUEST);
+        if (start instanceof Long startNanos) {
+            metrics.record(EventMetrics.Stage.BIND, startNanos);
+        }
+        return body;
+    }
+}
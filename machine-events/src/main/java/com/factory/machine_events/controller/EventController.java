@@ -1,11 +1,21 @@
 package com.factory.machine_events.controller;
 
 import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.BatchTicketResponse;
+import com.factory.machine_events.dto.EventIdFilterResponse;
 import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.service.AsyncIngestService;
+import com.factory.machine_events.service.EventIdFilter;
 import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.EventStreamService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.InputStream;
+import java.net.URI;
 import java.time.Instant;
 import java.util.List;
 
@@ -14,13 +24,24 @@ import java.util.List;
 public class EventController {
 
     private final EventService eventService;
+    private final EventStreamService eventStreamService;
+    private final AsyncIngestService asyncIngestService;
+    private final EventIdFilter eventIdFilter;
 
-    public EventController(EventService eventService) {
+    public EventController(EventService eventService,
+                           EventStreamService eventStreamService,
+                           AsyncIngestService asyncIngestService,
+                           EventIdFilter eventIdFilter) {
         this.eventService = eventService;
+        this.eventStreamService = eventStreamService;
+        this.asyncIngestService = asyncIngestService;
+        this.eventIdFilter = eventIdFilter;
     }
 
+    // JSON by default; application/x-machine-events frames are read by
+    // EventFrameHttpMessageConverter, and gzip bodies are inflated by GzipRequestFilter
     @PostMapping("/batch")
-    public ResponseEntity<BatchResponse> ingestBatch(@RequestBody List<EventRequest> events) {
+    public ResponseEntity<?> ingestBatch(@RequestBody List<EventRequest> events) {
         // Set receivedTime on server (as per assignment requirement)
         Instant now = Instant.now();
         events.forEach(event -> {
@@ -29,7 +50,57 @@ public class EventController {
             }
         });
 
+        if (asyncIngestService.isEnabled()) {
+            return enqueueBatch(events);
+        }
+
         BatchResponse response = eventService.processBatch(events);
         return ResponseEntity.ok(response);
     }
+
+    @GetMapping("/batch/{ticketId}")
+    public ResponseEntity<BatchTicketResponse> getBatchStatus(@PathVariable String ticketId) {
+        AsyncIngestService.Ticket ticket = asyncIngestService.ticket(ticketId);
+        if (ticket == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(new BatchTicketResponse(
+                ticket.id(), ticket.status().name(), ticket.response(), ticket.error()));
+    }
+
+    @PostMapping(value = "/stream", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<BatchResponse> ingestStream(InputStream body) {
+        // Body is parsed incrementally, never bound to a List
+        BatchResponse response = eventStreamService.processStream(body);
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/id-filter")
+    public ResponseEntity<EventIdFilterResponse> getIdFilterStats() {
+        EventIdFilterResponse response = new EventIdFilterResponse();
+        response.setEnabled(eventIdFilter.isEnabled());
+        response.setChecked(eventIdFilter.checked());
+        response.setLookupsSaved(eventIdFilter.skipped());
+        response.setFalsePositives(eventIdFilter.falsePositives());
+        response.setFalsePositiveRate(eventIdFilter.falsePositiveRate());
+        response.setLayers(eventIdFilter.layers());
+        response.setCapacity(eventIdFilter.capacity());
+        response.setMemoryBytes(eventIdFilter.memoryBytes());
+        return ResponseEntity.ok(response);
+    }
+
+    private ResponseEntity<BatchTicketResponse> enqueueBatch(List<EventRequest> events) {
+        String ticketId = asyncIngestService.submit(events);
+        if (ticketId == null) {
+            // Queue is full, the client should retry later
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                    .header(HttpHeaders.RETRY_AFTER, "1")
+                    .build();
+        }
+        AsyncIngestService.Ticket ticket = asyncIngestService.ticket(ticketId);
+        String status = ticket != null ? ticket.status().name() : AsyncIngestService.Status.QUEUED.name();
+        return ResponseEntity.accepted()
+                .location(URI.create("/events/batch/" + ticketId))
+                .body(new BatchTicketResponse(ticketId, status, null, null));
+    }
 }
\ No newline at end of file
@@ -1,12 +1,20 @@
 package com.factory.machine_events.controller;
 
+import com.factory.machine_events.dto.StatsCacheResponse;
 import com.factory.machine_events.dto.StatsResponse;
 import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.service.StatsCache;
 import com.factory.machine_events.service.StatsService;
+import com.factory.machine_events.service.StatsSubscriptionService;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.Duration;
 import java.time.Instant;
 import java.util.List;
 
@@ -15,9 +23,15 @@ import java.util.List;
 public class StatsController {
 
     private final StatsService statsService;
+    private final StatsCache statsCache;
+    private final StatsSubscriptionService subscriptions;
 
-    public StatsController(StatsService statsService) {
+    public StatsController(StatsService statsService,
+                           StatsCache statsCache,
+                           StatsSubscriptionService subscriptions) {
         this.statsService = statsService;
+        this.statsCache = statsCache;
+        this.subscriptions = subscriptions;
     }
 
     @GetMapping
@@ -42,4 +56,55 @@ public class StatsController {
         );
         return ResponseEntity.ok(response);
     }
-}
\ No newline at end of file
+
+    // Streams "stats" events for the last windowMinutes, pushed when a batch changes them
+    @GetMapping(value = "/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeStats(
+            @RequestParam String machineId,
+            @RequestParam(defaultValue = "60") long windowMinutes) {
+
+        if (windowMinutes < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        SseEmitter emitter = new SseEmitter(subscriptions.timeout().toMillis());
+        if (!subscriptions.subscribeMachine(machineId, Duration.ofMinutes(windowMinutes), emitter)) {
+            return tooManySubscribers();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    // Streams "top-defect-lines" events, the factory-wide counterpart of /subscribe
+    @GetMapping(value = "/top-defect-lines/subscribe", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public ResponseEntity<SseEmitter> subscribeTopDefectLines(
+            @RequestParam String factoryId,
+            @RequestParam(defaultValue = "60") long windowMinutes,
+            @RequestParam(defaultValue = "10") int limit) {
+
+        if (windowMinutes < 1) {
+            return ResponseEntity.badRequest().build();
+        }
+        SseEmitter emitter = new SseEmitter(subscriptions.timeout().toMillis());
+        if (!subscriptions.subscribeFactory(factoryId, Duration.ofMinutes(windowMinutes), limit, emitter)) {
+            return tooManySubscribers();
+        }
+        return ResponseEntity.ok(emitter);
+    }
+
+    @GetMapping("/cache")
+    public ResponseEntity<StatsCacheResponse> getCacheStats() {
+        StatsCacheResponse response = new StatsCacheResponse();
+        response.setEnabled(statsCache.isEnabled());
+        response.setSize(statsCache.size());
+        response.setHits(statsCache.hits());
+        response.setMisses(statsCache.misses());
+        response.setEvictions(statsCache.evictions());
+        response.setInvalidations(statsCache.invalidations());
+        return ResponseEntity.ok(response);
+    }
+
+    private static ResponseEntity<SseEmitter> tooManySubscribers() {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "5")
+                .build();
+    }
+}
@@ -0,0 +1,52 @@
+package com.factory.machine_events.dto;
+
+public class BatchTicketResponse {
+
+    private String ticketId;
+    private String status;
+    private BatchResponse result;
+    private String error;
+
+    // Constructors
+    public BatchTicketResponse() {}
+
+    public BatchTicketResponse(String ticketId, String status, BatchResponse result, String error) {
+        this.ticketId = ticketId;
+        this.status = status;
+        this.result = result;
+        this.error = error;
+    }
+
+    // Getters and Setters
+    public String getTicketId() {
+        return ticketId;
+    }
+
+    public void setTicketId(String ticketId) {
+        this.ticketId = ticketId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public void setStatus(String status) {
+        this.status = status;
+    }
+
+    public BatchResponse getResult() {
+        return result;
+    }
+
+    public void setResult(BatchResponse result) {
+        this.result = result;
+    }
+
+    public String getError() {
+        return error;
+    }
+
+    public void setError(String error) {
+        this.error = error;
+    }
+}
@@ -0,0 +1,78 @@
+package com.factory.machine_events.dto;
+
+public class EventIdFilterResponse {
+
+    private boolean enabled;
+    private long checked;
+    private long lookupsSaved;
+    private long falsePositives;
+    private double falsePositiveRate;
+    private int layers;
+    private long capacity;
+    private long memoryBytes;
+
+    // Getters and Setters
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public long getChecked() {
+        return checked;
+    }
+
+    public void setChecked(long checked) {
+        this.checked = checked;
+    }
+
+    public long getLookupsSaved() {
+        return lookupsSaved;
+    }
+
+    public void setLookupsSaved(long lookupsSaved) {
+        this.lookupsSaved = lookupsSaved;
+    }
+
+    public long getFalsePositives() {
+        return falsePositives;
+    }
+
+    public void setFalsePositives(long falsePositives) {
+        this.falsePositives = falsePositives;
+    }
+
+    public double getFalsePositiveRate() {
+        return falsePositiveRate;
+    }
+
+    public void setFalsePositiveRate(double falsePositiveRate) {
+        this.falsePositiveRate = falsePositiveRate;
+    }
+
+    public int getLayers() {
+        return layers;
+    }
+
+    public void setLayers(int layers) {
+        this.layers = layers;
+    }
+
+    public long getCapacity() {
+        return capacity;
+    }
+
+    public void setCapacity(long capacity) {
+        this.capacity = capacity;
+    }
+
+    public long getMemoryBytes() {
+        return memoryBytes;
+    }
+
+    public void setMemoryBytes(long memoryBytes) {
+        this.memoryBytes = memoryBytes;
+    }
+}
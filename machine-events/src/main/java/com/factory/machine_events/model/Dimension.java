@@ -0,0 +1,22 @@
+package com.factory.machine_events.model;
+
+import jakarta.persistence.*;
+
+// Surrogate keys for machine, line and factory ids, which machine_events stores as
+// ints. Written and read through JDBC by DimensionDictionary only; mapped here so the
+// table is created with the schema. One key space is shared by all three kinds.
+@Entity
+@Table(name = "dimensions")
+public class Dimension {
+
+    public static final int MAX_NAME_LENGTH = 50;
+
+    @Id
+    private Integer id;
+
+    @Column(nullable = false, unique = true, length = MAX_NAME_LENGTH)
+    private String name;
+
+    // Constructors
+    public Dimension() {}
+}
@@ -0,0 +1,22 @@
+package com.factory.machine_events.model;
+
+import jakarta.persistence.*;
+
+// Which window table holds each eventId in persistence mode "partitioned". Written and
+// read through JDBC by PartitionedEventStore only; mapped here so the table is created
+// with the schema. The primary key keeps an eventId unique across all partitions,
+// which the per-table event_id indexes cannot.
+@Entity
+@Table(name = "event_partitions")
+public class EventPartition {
+
+    @Id
+    @Column(length = 100)
+    private String eventId;
+
+    @Column(nullable = false)
+    private Long partitionId;
+
+    // Constructors
+    public EventPartition() {}
+}
@@ -0,0 +1,79 @@
+package com.factory.machine_events.model;
+
+import com.factory.machine_events.repository.DimensionConverter;
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.Objects;
+
+// Staging rows for the native upsert path. Only written and read through JDBC by
+// EventRepositoryCustomImpl; mapped here so the table is created with the schema.
+// Rows are tagged with a batchId and deleted again inside the same transaction.
+@Entity
+@Table(name = "event_staging")
+@IdClass(EventStaging.Key.class)
+public class EventStaging {
+
+    @Id
+    @Column(length = 36)
+    private String batchId;
+
+    @Id
+    @Column(length = 100)
+    private String eventId;
+
+    @Column(nullable = false)
+    private Instant eventTime;
+
+    @Column(nullable = false)
+    private Instant receivedTime;
+
+    @Column(nullable = false)
+    @Convert(converter = DimensionConverter.class)
+    private String machineId;
+
+    @Column(nullable = false)
+    private Long durationMs;
+
+    @Column(nullable = false)
+    private Integer defectCount;
+
+    @Convert(converter = DimensionConverter.class)
+    private String lineId;
+
+    @Convert(converter = DimensionConverter.class)
+    private String factoryId;
+
+    @Column(nullable = false)
+    private Long payloadHash;
+
+    // Constructors
+    public EventStaging() {}
+
+    public static class Key implements Serializable {
+
+        private String batchId;
+        private String eventId;
+
+        public Key() {}
+
+        public Key(String batchId, String eventId) {
+            this.batchId = batchId;
+            this.eventId = eventId;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return Objects.equals(batchId, that.batchId) &&
+                    Objects.equals(eventId, that.eventId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(batchId, eventId);
+        }
+    }
+}
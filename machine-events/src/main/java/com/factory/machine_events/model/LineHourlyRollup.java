@@ -0,0 +1,105 @@
+package com.factory.machine_events.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+// Per (factoryId, lineId, hour) totals maintained incrementally by EventService
+@Entity
+@Table(name = "line_hourly_rollups")
+@IdClass(LineHourlyRollup.Key.class)
+public class LineHourlyRollup {
+
+    @Id
+    @Column(length = 50)
+    private String factoryId;
+
+    @Id
+    @Column(length = 50)
+    private String lineId;
+
+    // Hours since the epoch (UTC) of the bucket start
+    @Id
+    private Long epochHour;
+
+    @Column(nullable = false)
+    private Long eventCount;
+
+    // Sum of defectCount over events with defectCount >= 0
+    @Column(nullable = false)
+    private Long defectSum;
+
+    // Constructors
+    public LineHourlyRollup() {}
+
+    // Getters and Setters
+    public String getFactoryId() {
+        return factoryId;
+    }
+
+    public void setFactoryId(String factoryId) {
+        this.factoryId = factoryId;
+    }
+
+    public String getLineId() {
+        return lineId;
+    }
+
+    public void setLineId(String lineId) {
+        this.lineId = lineId;
+    }
+
+    public Long getEpochHour() {
+        return epochHour;
+    }
+
+    public void setEpochHour(Long epochHour) {
+        this.epochHour = epochHour;
+    }
+
+    public Long getEventCount() {
+        return eventCount;
+    }
+
+    public void setEventCount(Long eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    public Long getDefectSum() {
+        return defectSum;
+    }
+
+    public void setDefectSum(Long defectSum) {
+        this.defectSum = defectSum;
+    }
+
+    public static class Key implements Serializable {
+
+        private String factoryId;
+        private String lineId;
+        private Long epochHour;
+
+        public Key() {}
+
+        public Key(String factoryId, String lineId, Long epochHour) {
+            this.factoryId = factoryId;
+            this.lineId = lineId;
+            this.epochHour = epochHour;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return Objects.equals(factoryId, that.factoryId) &&
+                    Objects.equals(lineId, that.lineId) &&
+                    Objects.equals(epochHour, that.epochHour);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(factoryId, lineId, epochHour);
+        }
+    }
+}
@@ -1,5 +1,7 @@
 package com.factory.machine_events.model;
 
+import com.factory.machine_events.repository.DimensionConverter;
+import com.factory.machine_events.shard.ShardSequence;
 import jakarta.persistence.*;
 import java.time.Instant;
 import java.util.Objects;
@@ -7,13 +9,20 @@ import java.util.Objects;
 @Entity
 @Table(name = "machine_events", indexes = {
         @Index(name = "idx_event_id", columnList = "eventId", unique = true),
+        // Lets the native dedup join compare payload hashes from the index alone
+        @Index(name = "idx_event_payload_hash", columnList = "eventId,payloadHash"),
         @Index(name = "idx_machine_time", columnList = "machineId,eventTime"),
-        @Index(name = "idx_line_time", columnList = "lineId,eventTime")
+        @Index(name = "idx_line_time", columnList = "lineId,eventTime"),
+        // Covers the top defect lines aggregate without touching table rows
+        @Index(name = "idx_factory_time_line_defects", columnList = "factoryId,eventTime,lineId,defectCount")
 })
 public class MachineEvent {
 
+    // Pooled sequence, allocation matches hibernate.jdbc.batch_size. IDENTITY would
+    // make Hibernate insert row by row to read back each generated key. Blocks are
+    // kept per shard, so each shard's ids come from its own sequence.
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @ShardSequence(sequenceName = "machine_events_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false, unique = true, length = 100)
@@ -25,7 +34,10 @@ public class MachineEvent {
     @Column(nullable = false)
     private Instant receivedTime;
 
-    @Column(nullable = false, length = 50)
+    // machineId, lineId and factoryId are stored as int keys from DimensionDictionary,
+    // which keeps rows and the indexes on them small
+    @Column(nullable = false)
+    @Convert(converter = DimensionConverter.class)
     private String machineId;
 
     @Column(nullable = false)
@@ -34,12 +46,16 @@ public class MachineEvent {
     @Column(nullable = false)
     private Integer defectCount;
 
-    @Column(length = 50)
+    @Convert(converter = DimensionConverter.class)
     private String lineId;
 
-    @Column(length = 50)
+    @Convert(converter = DimensionConverter.class)
     private String factoryId;
 
+    // 64-bit hash of the payload fields compared by hasSamePayload, kept current on
+    // every write. Null only for rows written before the column existed.
+    private Long payloadHash;
+
     @Version
     private Long version;
 
@@ -119,6 +135,20 @@ public class MachineEvent {
         this.factoryId = factoryId;
     }
 
+    public Long getPayloadHash() {
+        return payloadHash;
+    }
+
+    public void setPayloadHash(Long payloadHash) {
+        this.payloadHash = payloadHash;
+    }
+
+    @PrePersist
+    @PreUpdate
+    public void refreshPayloadHash() {
+        this.payloadHash = payloadHash(eventTime, machineId, durationMs, defectCount, lineId, factoryId);
+    }
+
     public Long getVersion() {
         return version;
     }
@@ -143,12 +173,61 @@ public class MachineEvent {
 
     // Helper method to check if payloads are identical
     public boolean hasSamePayload(MachineEvent other) {
-        return Objects.equals(this.eventTime, other.eventTime) &&
-                Objects.equals(this.machineId, other.machineId) &&
-                Objects.equals(this.durationMs, other.durationMs) &&
-                Objects.equals(this.defectCount, other.defectCount) &&
-                Objects.equals(this.lineId, other.lineId) &&
-                Objects.equals(this.factoryId, other.factoryId);
+        long otherHash = other.payloadHash != null ? other.payloadHash :
+                payloadHash(other.eventTime, other.machineId, other.durationMs, other.defectCount,
+                        other.lineId, other.factoryId);
+        return hasSamePayload(otherHash, other.eventTime, other.machineId, other.durationMs,
+                other.defectCount, other.lineId, other.factoryId);
+    }
+
+    // Different hashes settle it at once; equal ones are confirmed field by field in
+    // case of a collision
+    public boolean hasSamePayload(long otherHash, Instant eventTime, String machineId, Long durationMs,
+                                  Integer defectCount, String lineId, String factoryId) {
+        if (this.payloadHash != null && this.payloadHash != otherHash) {
+            return false;
+        }
+        return Objects.equals(this.eventTime, eventTime) &&
+                Objects.equals(this.machineId, machineId) &&
+                Objects.equals(this.durationMs, durationMs) &&
+                Objects.equals(this.defectCount, defectCount) &&
+                Objects.equals(this.lineId, lineId) &&
+                Objects.equals(this.factoryId, factoryId);
+    }
+
+    // Stable across JVMs and restarts: fixed string hashing and a murmur3 finalizer per
+    // field, never Object.hashCode
+    public static long payloadHash(Instant eventTime, String machineId, Long durationMs, Integer defectCount,
+                                   String lineId, String factoryId) {
+        long h = 0x9E3779B97F4A7C15L;
+        h = combine(h, eventTime == null ? -1 : eventTime.getEpochSecond());
+        h = combine(h, eventTime == null ? -1 : eventTime.getNano());
+        h = combine(h, hash(machineId));
+        h = combine(h, durationMs == null ? Long.MIN_VALUE : durationMs);
+        h = combine(h, defectCount == null ? Long.MIN_VALUE : defectCount);
+        h = combine(h, hash(lineId));
+        return combine(h, hash(factoryId));
+    }
+
+    private static long hash(String value) {
+        if (value == null) {
+            return Long.MIN_VALUE;
+        }
+        long h = value.length();
+        for (int i = 0; i < value.length(); i++) {
+            h = h * 0x100000001B3L + value.charAt(i);
+        }
+        return h;
+    }
+
+    private static long combine(long h, long value) {
+        h ^= value;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
     }
 
     @Override
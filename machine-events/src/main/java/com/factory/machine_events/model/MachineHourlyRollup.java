@@ -0,0 +1,90 @@
+package com.factory.machine_events.model;
+
+import jakarta.persistence.*;
+import java.io.Serializable;
+import java.util.Objects;
+
+// Per (machineId, hour) totals maintained incrementally by EventService
+@Entity
+@Table(name = "machine_hourly_rollups")
+@IdClass(MachineHourlyRollup.Key.class)
+public class MachineHourlyRollup {
+
+    @Id
+    @Column(length = 50)
+    private String machineId;
+
+    // Hours since the epoch (UTC) of the bucket start
+    @Id
+    private Long epochHour;
+
+    @Column(nullable = false)
+    private Long eventCount;
+
+    // Sum of defectCount over events with defectCount >= 0
+    @Column(nullable = false)
+    private Long defectSum;
+
+    // Constructors
+    public MachineHourlyRollup() {}
+
+    // Getters and Setters
+    public String getMachineId() {
+        return machineId;
+    }
+
+    public void setMachineId(String machineId) {
+        this.machineId = machineId;
+    }
+
+    public Long getEpochHour() {
+        return epochHour;
+    }
+
+    public void setEpochHour(Long epochHour) {
+        this.epochHour = epochHour;
+    }
+
+    public Long getEventCount() {
+        return eventCount;
+    }
+
+    public void setEventCount(Long eventCount) {
+        this.eventCount = eventCount;
+    }
+
+    public Long getDefectSum() {
+        return defectSum;
+    }
+
+    public void setDefectSum(Long defectSum) {
+        this.defectSum = defectSum;
+    }
+
+    public static class Key implements Serializable {
+
+        private String machineId;
+        private Long epochHour;
+
+        public Key() {}
+
+        public Key(String machineId, Long epochHour) {
+            this.machineId = machineId;
+            this.epochHour = epochHour;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key that = (Key) o;
+            return Objects.equals(machineId, that.machineId) &&
+                    Objects.equals(epochHour, that.epochHour);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(machineId, epochHour);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package com.factory.machine_events.repository;
+
+import jakarta.persistence.AttributeConverter;
+import jakarta.persistence.Converter;
+
+// Stores machineId, lineId and factoryId as DimensionDictionary keys. Hibernate also
+// applies it to query parameters and selected values, so JPQL keeps comparing and
+// returning the string ids. Created by Spring through Hibernate's bean container.
+@Converter
+public class DimensionConverter implements AttributeConverter<String, Integer> {
+
+    private final DimensionDictionary dimensions;
+
+    public DimensionConverter(DimensionDictionary dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public Integer convertToDatabaseColumn(String name) {
+        return dimensions.key(name);
+    }
+
+    @Override
+    public String convertToEntityAttribute(Integer key) {
+        return dimensions.name(key);
+    }
+}
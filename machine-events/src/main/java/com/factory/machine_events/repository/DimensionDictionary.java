@@ -0,0 +1,239 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.model.Dimension;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+// Machine, line and factory ids to int keys and back, all held in memory and backed
+// by the dimensions table. Keys are handed out here and every new one is written to
+// all shards before it is used, so an int means the same name everywhere. Like the
+// event id filter this assumes a single writing instance per database.
+//
+// Kept free of JdbcTemplate and of a direct ShardRouter dependency: Hibernate asks
+// for DimensionConverter, and with it this bean, while the EntityManagerFactory
+// those would need is still being built.
+@Component
+public class DimensionDictionary implements SmartInitializingSingleton {
+
+    private static final String SELECT = "SELECT id, name FROM dimensions";
+    private static final String INSERT = "INSERT INTO dimensions (id, name) VALUES (?, ?)";
+
+    private final DataSource dataSource;
+    private final ObjectProvider<ShardRouter> shardRouter;
+
+    private final Map<String, Integer> keys = new ConcurrentHashMap<>();
+    // Indexed by key. Slots are filled under the lock and the array is republished
+    // after every change, so a reader that got a key from keys sees its name.
+    private volatile String[] names = new String[1024];
+    private final ReentrantLock lock = new ReentrantLock();
+    private int nextKey = 1;
+
+    public DimensionDictionary(DataSource dataSource, ObjectProvider<ShardRouter> shardRouter) {
+        this.dataSource = dataSource;
+        this.shardRouter = shardRouter;
+    }
+
+    // Loads every shard's keys before any request is served. A key that only made it
+    // to some shards (a failed registration) is copied to the others.
+    @Override
+    public void afterSingletonsInstantiated() {
+        ShardRouter router = shardRouter.getObject();
+        List<Map<Integer, String>> stored = router.onShards(router.allShards(), shard -> load());
+
+        Map<Integer, String> all = new HashMap<>();
+        for (Map<Integer, String> shardKeys : stored) {
+            shardKeys.forEach((key, name) -> {
+                String other = all.putIfAbsent(key, name);
+                if (other != null && !other.equals(name)) {
+                    throw new IllegalStateException("Dimension key " + key + " is both " + other + " and " + name);
+                }
+            });
+        }
+        for (int shard = 0; shard < stored.size(); shard++) {
+            Map<Integer, String> missing = new LinkedHashMap<>(all);
+            missing.keySet().removeAll(stored.get(shard).keySet());
+            if (!missing.isEmpty()) {
+                router.onShard(shard, () -> {
+                    insert(missing);
+                    return null;
+                });
+            }
+        }
+
+        lock.lock();
+        try {
+            all.forEach((key, name) -> {
+                Integer other = keys.putIfAbsent(name, key);
+                if (other != null && !other.equals(key)) {
+                    throw new IllegalStateException("Dimension " + name + " has more than one key");
+                }
+                nextKey = Math.max(nextKey, key + 1);
+            });
+            publish(all);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Key of a name, registering it first if it is new. Null stays null.
+    public Integer key(String name) {
+        if (name == null) {
+            return null;
+        }
+        Integer key = keys.get(name);
+        if (key != null) {
+            return key;
+        }
+        register(List.of(name));
+        return keys.get(name);
+    }
+
+    // Key of a name, or null if it has never been stored. Never registers anything,
+    // so lookups for unknown ids leave the table alone.
+    public Integer find(String name) {
+        return name == null ? null : keys.get(name);
+    }
+
+    public boolean contains(String name) {
+        return name != null && keys.containsKey(name);
+    }
+
+    public String name(Integer key) {
+        if (key == null) {
+            return null;
+        }
+        String[] current = names;
+        String name = key > 0 && key < current.length ? current[key] : null;
+        if (name == null) {
+            throw new IllegalStateException("Unknown dimension key " + key);
+        }
+        return name;
+    }
+
+    // Registers the machine, line and factory ids of the accepted events that are not
+    // known yet, with one insert per shard. Called before the ingest transaction opens,
+    // so the converter inside it only ever reads the map. Ids too long for the table are
+    // left to fail on the converter's own insert, as they failed on the column before.
+    public void registerAll(List<List<EventRequest>> batches, Predicate<EventRequest> accepted) {
+        List<String> missing = null;
+        for (List<EventRequest> batch : batches) {
+            for (EventRequest request : batch) {
+                if (!accepted.test(request)) {
+                    continue;
+                }
+                missing = addIfMissing(missing, request.getMachineId());
+                missing = addIfMissing(missing, request.getLineId());
+                missing = addIfMissing(missing, request.getFactoryId());
+            }
+        }
+        if (missing != null) {
+            register(missing);
+        }
+    }
+
+    public int size() {
+        return keys.size();
+    }
+
+    private List<String> addIfMissing(List<String> missing, String name) {
+        if (name == null || name.length() > Dimension.MAX_NAME_LENGTH || keys.containsKey(name)) {
+            return missing;
+        }
+        if (missing == null) {
+            missing = new ArrayList<>();
+        }
+        missing.add(name);
+        return missing;
+    }
+
+    // Keys are taken before the insert and never reused, so a failed insert cannot
+    // leave a half-written key that a later name would collide with
+    private void register(List<String> candidates) {
+        lock.lock();
+        try {
+            Map<Integer, String> added = new LinkedHashMap<>();
+            Map<String, Integer> seen = new HashMap<>();
+            for (String name : candidates) {
+                if (!keys.containsKey(name) && !seen.containsKey(name)) {
+                    seen.put(name, nextKey);
+                    added.put(nextKey++, name);
+                }
+            }
+            if (added.isEmpty()) {
+                return;
+            }
+            ShardRouter router = shardRouter.getObject();
+            router.onShards(router.allShards(), shard -> {
+                insert(added);
+                return null;
+            });
+            publish(added);
+            keys.putAll(seen);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Lock held
+    private void publish(Map<Integer, String> added) {
+        String[] current = names;
+        int maxKey = added.keySet().stream().mapToInt(Integer::intValue).max().orElse(0);
+        if (maxKey >= current.length) {
+            current = Arrays.copyOf(current, Math.max(maxKey + 1, current.length * 2));
+        }
+        for (Map.Entry<Integer, String> entry : added.entrySet()) {
+            current[entry.getKey()] = entry.getValue();
+        }
+        names = current;
+    }
+
+    // On a connection of its own, committed at once: a key must outlive a rolled back
+    // batch, since the map keeps it either way
+    private void insert(Map<Integer, String> rows) {
+        try (Connection connection = dataSource.getConnection();
+             PreparedStatement statement = connection.prepareStatement(INSERT)) {
+            connection.setAutoCommit(true);
+            for (Map.Entry<Integer, String> row : rows.entrySet()) {
+                statement.setInt(1, row.getKey());
+                statement.setString(2, row.getValue());
+                statement.addBatch();
+            }
+            statement.executeBatch();
+        } catch (SQLException e) {
+            throw new IllegalStateException("Dimension insert failed", e);
+        }
+    }
+
+    private Map<Integer, String> load() {
+        Map<Integer, String> stored = new HashMap<>();
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery(SELECT)) {
+            while (rs.next()) {
+                stored.put(rs.getInt(1), rs.getString(2));
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Dimension load failed", e);
+        }
+        return stored;
+    }
+}
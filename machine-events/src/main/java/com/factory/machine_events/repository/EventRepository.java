@@ -1,17 +1,19 @@
 package com.factory.machine_events.repository;
 
 import com.factory.machine_events.model.MachineEvent;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.time.Instant;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
-public interface EventRepository extends JpaRepository<MachineEvent, Long> {
+public interface EventRepository extends JpaRepository<MachineEvent, Long>, EventRepositoryCustom {
 
     // Find by eventId for deduplication check
     Optional<MachineEvent> findByEventId(String eventId);
@@ -25,20 +27,38 @@ public interface EventRepository extends JpaRepository<MachineEvent, Long> {
             @Param("end") Instant end
     );
 
-    // Top defect lines query
-    @Query("SELECT e.lineId, SUM(CASE WHEN e.defectCount >= 0 THEN e.defectCount ELSE 0 END), COUNT(e) " +
+    // Count and defect sum for stats, without loading any entities
+    @Query("SELECT COUNT(e) AS eventsCount, " +
+            "COALESCE(SUM(CASE WHEN e.defectCount >= 0 THEN e.defectCount ELSE 0 END), 0) AS defectsCount " +
+            "FROM MachineEvent e WHERE e.machineId = :machineId " +
+            "AND e.eventTime >= :start AND e.eventTime < :end")
+    MachineTotals aggregateByMachineIdAndTimeRange(
+            @Param("machineId") String machineId,
+            @Param("start") Instant start,
+            @Param("end") Instant end
+    );
+
+    // Top defect lines query, limit is applied by the database
+    @Query("SELECT e.lineId AS lineId, " +
+            "SUM(CASE WHEN e.defectCount >= 0 THEN e.defectCount ELSE 0 END) AS totalDefects, " +
+            "COUNT(e) AS eventCount " +
             "FROM MachineEvent e " +
             "WHERE e.factoryId = :factoryId " +
             "AND e.eventTime >= :from AND e.eventTime < :to " +
             "AND e.lineId IS NOT NULL " +
             "GROUP BY e.lineId " +
             "ORDER BY SUM(CASE WHEN e.defectCount >= 0 THEN e.defectCount ELSE 0 END) DESC")
-    List<Object[]> findTopDefectLines(
+    List<LineTotals> findTopDefectLines(
             @Param("factoryId") String factoryId,
             @Param("from") Instant from,
-            @Param("to") Instant to
+            @Param("to") Instant to,
+            Limit limit
     );
 
     // Batch find by eventIds for bulk operations
     List<MachineEvent> findByEventIdIn(List<String> eventIds);
+
+    // The ones among eventIds already stored, without loading the events
+    @Query("SELECT e.eventId FROM MachineEvent e WHERE e.eventId IN :eventIds")
+    List<String> findEventIdsIn(@Param("eventIds") Collection<String> eventIds);
 }
\ No newline at end of file
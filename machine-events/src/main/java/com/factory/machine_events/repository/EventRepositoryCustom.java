@@ -0,0 +1,14 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.model.MachineEvent;
+
+import java.util.List;
+
+// Set-based persistence for EventService, without loading MachineEvent entities
+public interface EventRepositoryCustom {
+
+    // Applies events in order with the processBatch rules: a new eventId is inserted,
+    // an identical payload or an older/equal receivedTime is deduped, anything else
+    // updates. Must run inside the caller's transaction.
+    UpsertResult upsertBatch(List<MachineEvent> events);
+}
@@ -0,0 +1,138 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.model.MachineEvent;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+// Stages the batch with one JDBC batch insert, classifies every staged row against
+// machine_events in a single join and applies inserts and updates with one MERGE.
+// An eventId repeated within a batch goes into a later round, so each occurrence
+// sees the result of the one before it exactly as the entity path does.
+// Machine, line and factory ids are bound and read as DimensionDictionary keys.
+public class EventRepositoryCustomImpl implements EventRepositoryCustom {
+
+    private static final int ACCEPTED = 0;
+    private static final int DEDUPED = 1;
+    private static final int UPDATED = 2;
+
+    // Hashes reject a different payload first; equal ones are confirmed column by column
+    // in case of a collision. Rows from before the hash column only compare columns.
+    private static final String SAME_PAYLOAD =
+            "(e.payload_hash IS NULL OR e.payload_hash = s.payload_hash) " +
+            "AND s.event_time = e.event_time AND s.machine_id = e.machine_id " +
+            "AND s.duration_ms = e.duration_ms AND s.defect_count = e.defect_count " +
+            "AND s.line_id IS NOT DISTINCT FROM e.line_id " +
+            "AND s.factory_id IS NOT DISTINCT FROM e.factory_id";
+
+    private static final String STAGE =
+            "INSERT INTO event_staging (batch_id, event_id, event_time, received_time, machine_id, " +
+            "duration_ms, defect_count, line_id, factory_id, payload_hash) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+
+    // Updated rows also return the columns needed to take back their old contribution
+    private static final String CLASSIFY =
+            "SELECT s.event_id, " +
+            "CASE WHEN e.id IS NULL THEN " + ACCEPTED + " " +
+            "WHEN (" + SAME_PAYLOAD + ") OR s.received_time <= e.received_time THEN " + DEDUPED + " " +
+            "ELSE " + UPDATED + " END, " +
+            "e.event_time, e.machine_id, e.defect_count, e.line_id, e.factory_id " +
+            "FROM event_staging s LEFT JOIN machine_events e ON e.event_id = s.event_id " +
+            "WHERE s.batch_id = ?";
+
+    // Inserted ids are taken straight from the pooled sequence; Hibernate treats each
+    // value it fetches as the top of its own block, so the two never overlap
+    private static final String MERGE =
+            "MERGE INTO machine_events e " +
+            "USING (SELECT * FROM event_staging WHERE batch_id = ?) s ON e.event_id = s.event_id " +
+            "WHEN MATCHED AND s.received_time > e.received_time AND NOT (" + SAME_PAYLOAD + ") THEN UPDATE SET " +
+            "event_time = s.event_time, received_time = s.received_time, machine_id = s.machine_id, " +
+            "duration_ms = s.duration_ms, defect_count = s.defect_count, line_id = s.line_id, " +
+            "factory_id = s.factory_id, payload_hash = s.payload_hash, version = e.version + 1 " +
+            "WHEN NOT MATCHED THEN INSERT (id, event_id, event_time, received_time, machine_id, " +
+            "duration_ms, defect_count, line_id, factory_id, payload_hash, version) " +
+            "VALUES (NEXT VALUE FOR machine_events_seq, s.event_id, s.event_time, s.received_time, " +
+            "s.machine_id, s.duration_ms, s.defect_count, s.line_id, s.factory_id, s.payload_hash, 0)";
+
+    private static final String UNSTAGE = "DELETE FROM event_staging WHERE batch_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DimensionDictionary dimensions;
+
+    public EventRepositoryCustomImpl(JdbcTemplate jdbcTemplate, DimensionDictionary dimensions) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public UpsertResult upsertBatch(List<MachineEvent> events) {
+        UpsertResult result = new UpsertResult();
+        for (List<MachineEvent> round : rounds(events)) {
+            upsertRound(round, result);
+        }
+        return result;
+    }
+
+    // Round n holds the n-th occurrence of every eventId, in batch order
+    private static List<List<MachineEvent>> rounds(List<MachineEvent> events) {
+        List<List<MachineEvent>> rounds = new ArrayList<>();
+        Map<String, Integer> seen = new HashMap<>();
+        for (MachineEvent event : events) {
+            int occurrence = seen.merge(event.getEventId(), 1, Integer::sum) - 1;
+            if (occurrence == rounds.size()) {
+                rounds.add(new ArrayList<>());
+            }
+            rounds.get(occurrence).add(event);
+        }
+        return rounds;
+    }
+
+    private void upsertRound(List<MachineEvent> round, UpsertResult result) {
+        String batchId = UUID.randomUUID().toString();
+
+        List<Object[]> rows = new ArrayList<>(round.size());
+        Map<String, MachineEvent> byEventId = new HashMap<>();
+        for (MachineEvent event : round) {
+            rows.add(new Object[]{batchId, event.getEventId(), utc(event.getEventTime()),
+                    utc(event.getReceivedTime()), dimensions.key(event.getMachineId()), event.getDurationMs(),
+                    event.getDefectCount(), dimensions.key(event.getLineId()), dimensions.key(event.getFactoryId()),
+                    event.getPayloadHash()});
+            byEventId.put(event.getEventId(), event);
+        }
+        jdbcTemplate.batchUpdate(STAGE, rows);
+
+        jdbcTemplate.query(CLASSIFY, rs -> {
+            MachineEvent incoming = byEventId.get(rs.getString(1));
+            switch (rs.getInt(2)) {
+                case ACCEPTED -> result.accept(incoming);
+                case UPDATED -> result.update(before(rs), incoming);
+                default -> result.dedupe();
+            }
+        }, batchId);
+
+        jdbcTemplate.update(MERGE, batchId);
+        jdbcTemplate.update(UNSTAGE, batchId);
+    }
+
+    private MachineEvent before(ResultSet rs) throws SQLException {
+        MachineEvent before = new MachineEvent();
+        before.setEventTime(rs.getObject(3, OffsetDateTime.class).toInstant());
+        before.setMachineId(dimensions.name(rs.getObject(4, Integer.class)));
+        before.setDefectCount(rs.getInt(5));
+        before.setLineId(dimensions.name(rs.getObject(6, Integer.class)));
+        before.setFactoryId(dimensions.name(rs.getObject(7, Integer.class)));
+        return before;
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+}
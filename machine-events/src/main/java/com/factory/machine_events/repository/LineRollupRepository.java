@@ -0,0 +1,27 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.model.LineHourlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface LineRollupRepository extends JpaRepository<LineHourlyRollup, LineHourlyRollup.Key> {
+
+    // Per line defect sum and event count over whole hours [fromHour, toHour). Rows an
+    // update emptied stay behind at zero, so lines without events are left out.
+    @Query("SELECT r.lineId, SUM(r.defectSum), SUM(r.eventCount) " +
+            "FROM LineHourlyRollup r " +
+            "WHERE r.factoryId = :factoryId " +
+            "AND r.epochHour >= :fromHour AND r.epochHour < :toHour " +
+            "GROUP BY r.lineId " +
+            "HAVING SUM(r.eventCount) > 0")
+    List<Object[]> sumByLine(
+            @Param("factoryId") String factoryId,
+            @Param("fromHour") long fromHour,
+            @Param("toHour") long toHour
+    );
+}
@@ -0,0 +1,12 @@
+package com.factory.machine_events.repository;
+
+// Aggregate projection for one production line over a time range
+public interface LineTotals {
+
+    String getLineId();
+
+    // Sum of defectCount, ignoring defectCount = -1
+    long getTotalDefects();
+
+    long getEventCount();
+}
@@ -0,0 +1,24 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.model.MachineHourlyRollup;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface MachineRollupRepository extends JpaRepository<MachineHourlyRollup, MachineHourlyRollup.Key> {
+
+    // Event count and defect sum over whole hours [fromHour, toHour)
+    @Query("SELECT COALESCE(SUM(r.eventCount), 0), COALESCE(SUM(r.defectSum), 0) " +
+            "FROM MachineHourlyRollup r " +
+            "WHERE r.machineId = :machineId " +
+            "AND r.epochHour >= :fromHour AND r.epochHour < :toHour")
+    List<Object[]> sumByMachine(
+            @Param("machineId") String machineId,
+            @Param("fromHour") long fromHour,
+            @Param("toHour") long toHour
+    );
+}
@@ -0,0 +1,10 @@
+package com.factory.machine_events.repository;
+
+// Aggregate projection for one machine over a time range
+public interface MachineTotals {
+
+    long getEventsCount();
+
+    // Sum of defectCount, ignoring defectCount = -1
+    long getDefectsCount();
+}
@@ -0,0 +1,402 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+// Events kept in one table per spanHours window of eventTime (machine_events_p<n> holds
+// [n * spanHours, (n + 1) * spanHours) since the epoch) for persistence mode
+// "partitioned". Range queries only read the tables their window overlaps, and
+// retention drops whole tables. The mapped machine_events table stays empty and only
+// serves as the column template for new partitions. event_partitions names the table
+// of every stored eventId and keeps the ids unique across tables. Machine, line and
+// factory ids are bound and read as DimensionDictionary keys.
+@Repository
+public class PartitionedEventStore {
+
+    private static final String TABLE_PREFIX = "machine_events_p";
+    private static final String COLUMNS =
+            "id, event_id, event_time, received_time, machine_id, duration_ms, defect_count, " +
+            "line_id, factory_id, version, payload_hash";
+
+    private static final String STAGE =
+            "INSERT INTO event_staging (batch_id, event_id, event_time, received_time, machine_id, " +
+            "duration_ms, defect_count, line_id, factory_id, payload_hash) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String UNSTAGE = "DELETE FROM event_staging WHERE batch_id = ?";
+    private static final String STAGED_IDS = "SELECT event_id FROM event_staging WHERE batch_id = ?";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final DataSource dataSource;
+    private final DimensionDictionary dimensions;
+    private final boolean enabled;
+    private final long spanSeconds;
+
+    // Known partitions per shard, loaded from the catalog on first use. DDL is
+    // serialized so two writers never race to create the same table.
+    private final Map<Integer, NavigableSet<Long>> partitions = new ConcurrentHashMap<>();
+    private final ReentrantLock ddlLock = new ReentrantLock();
+
+    public PartitionedEventStore(JdbcTemplate jdbcTemplate,
+                                 DataSource dataSource,
+                                 DimensionDictionary dimensions,
+                                 @Value("${events.persistence.mode:jpa}") String persistenceMode,
+                                 @Value("${events.partitions.span-hours:24}") long spanHours) {
+        if (spanHours < 1) {
+            throw new IllegalArgumentException("span-hours must be positive: " + spanHours);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.dataSource = dataSource;
+        this.dimensions = dimensions;
+        this.enabled = persistenceMode.equals("partitioned");
+        this.spanSeconds = spanHours * 3600;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public long partitionOf(Instant eventTime) {
+        return Math.floorDiv(eventTime.getEpochSecond(), spanSeconds);
+    }
+
+    public Instant partitionStart(long partition) {
+        return Instant.ofEpochSecond(partition * spanSeconds);
+    }
+
+    // Partitions of the current shard, oldest first
+    public NavigableSet<Long> partitions() {
+        return partitions.computeIfAbsent(ShardRouter.currentShard(), shard -> loadPartitions());
+    }
+
+    // Same rules and counts as EventRepositoryCustom.upsertBatch. Existing rows are read
+    // from the partitions event_partitions names, so an update that moves an event to
+    // another window moves its row with it. Must run inside the caller's transaction.
+    public UpsertResult upsertBatch(List<MachineEvent> events) {
+        Map<String, Stored> state = loadExisting(events);
+
+        // Repeats within the batch are applied in order against the running state
+        UpsertResult result = new UpsertResult();
+        for (MachineEvent incoming : events) {
+            Stored current = state.get(incoming.getEventId());
+            if (current == null) {
+                state.put(incoming.getEventId(), new Stored(null, null, 0, incoming));
+                result.accept(incoming);
+            } else if (current.event.hasSamePayload(incoming)
+                    || !incoming.getReceivedTime().isAfter(current.event.getReceivedTime())) {
+                result.dedupe();
+            } else {
+                result.update(current.event, incoming);
+                current.event = incoming;
+                current.dirty = true;
+            }
+        }
+
+        Map<Long, List<Object[]>> inserts = new HashMap<>();
+        Map<Long, List<Object[]>> updates = new HashMap<>();
+        Map<Long, List<Object[]>> deletes = new HashMap<>();
+        List<Object[]> indexInserts = new ArrayList<>();
+        List<Object[]> indexMoves = new ArrayList<>();
+        for (Stored stored : state.values()) {
+            MachineEvent event = stored.event;
+            long target = partitionOf(event.getEventTime());
+            if (stored.id == null) {
+                inserts.computeIfAbsent(target, k -> new ArrayList<>()).add(row(null, event, 0));
+                indexInserts.add(new Object[]{event.getEventId(), target});
+            } else if (stored.dirty && stored.partition == target) {
+                updates.computeIfAbsent(target, k -> new ArrayList<>()).add(new Object[]{
+                        utc(event.getEventTime()), utc(event.getReceivedTime()),
+                        dimensions.key(event.getMachineId()), event.getDurationMs(), event.getDefectCount(),
+                        dimensions.key(event.getLineId()), dimensions.key(event.getFactoryId()),
+                        event.getPayloadHash(), stored.id});
+            } else if (stored.dirty) {
+                deletes.computeIfAbsent(stored.partition, k -> new ArrayList<>()).add(new Object[]{stored.id});
+                inserts.computeIfAbsent(target, k -> new ArrayList<>()).add(row(stored.id, event, stored.version + 1));
+                indexMoves.add(new Object[]{target, event.getEventId()});
+            }
+        }
+
+        // Indexed first: a concurrent writer that inserted one of these eventIds, even
+        // into another window, fails the batch here on the primary key, just as the
+        // native path fails on its unique event_id
+        jdbcTemplate.batchUpdate("INSERT INTO event_partitions (event_id, partition_id) VALUES (?, ?)", indexInserts);
+        jdbcTemplate.batchUpdate("UPDATE event_partitions SET partition_id = ? WHERE event_id = ?", indexMoves);
+        ensurePartitions(inserts.keySet());
+        deletes.forEach((partition, rows) ->
+                jdbcTemplate.batchUpdate("DELETE FROM " + table(partition) + " WHERE id = ?", rows));
+        updates.forEach((partition, rows) -> jdbcTemplate.batchUpdate(
+                "UPDATE " + table(partition) + " SET event_time = ?, received_time = ?, machine_id = ?, " +
+                "duration_ms = ?, defect_count = ?, line_id = ?, factory_id = ?, payload_hash = ?, " +
+                "version = version + 1 WHERE id = ?", rows));
+        // New rows take their ids from the same pooled sequence as the entity path
+        inserts.forEach((partition, rows) -> jdbcTemplate.batchUpdate(
+                "INSERT INTO " + table(partition) + " (" + COLUMNS + ") VALUES (" +
+                "COALESCE(?, NEXT VALUE FOR machine_events_seq), ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)", rows));
+
+        return result;
+    }
+
+    // {eventCount, defectSum} over [start, end), reading only overlapping partitions.
+    // An id without a key binds null and matches no row.
+    public long[] machineTotals(String machineId, Instant start, Instant end) {
+        List<Long> overlapping = overlapping(start, end);
+        if (overlapping.isEmpty()) {
+            return new long[2];
+        }
+        String sql = "SELECT COUNT(*), COALESCE(SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END), 0) " +
+                "FROM " + union(overlapping, "machine_id, event_time, defect_count",
+                "machine_id = ? AND event_time >= ? AND event_time < ?") + " e";
+        return jdbcTemplate.query(sql, rs -> {
+            rs.next();
+            return new long[]{rs.getLong(1), rs.getLong(2)};
+        }, repeat(overlapping.size(), dimensions.find(machineId), utc(start), utc(end)));
+    }
+
+    // lineId -> {totalDefects, eventCount} over [from, to), most defects first
+    public Map<String, long[]> lineTotals(String factoryId, Instant from, Instant to, Limit limit) {
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        List<Long> overlapping = overlapping(from, to);
+        if (overlapping.isEmpty()) {
+            return totals;
+        }
+        String sql = "SELECT line_id, SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END) AS defects, " +
+                "COUNT(*) FROM " + union(overlapping, "line_id, defect_count",
+                "factory_id = ? AND event_time >= ? AND event_time < ? AND line_id IS NOT NULL") + " e " +
+                "GROUP BY line_id ORDER BY defects DESC" +
+                (limit.isLimited() ? " LIMIT " + limit.max() : "");
+        jdbcTemplate.query(sql, rs -> {
+            totals.put(dimensions.name(rs.getInt(1)), new long[]{rs.getLong(2), rs.getLong(3)});
+        }, repeat(overlapping.size(), dimensions.find(factoryId), utc(from), utc(to)));
+        return totals;
+    }
+
+    // The ones among eventIds stored on the current shard, in any partition
+    public List<String> storedEventIds(List<String> eventIds) {
+        String placeholders = String.join(", ", Collections.nCopies(eventIds.size(), "?"));
+        return jdbcTemplate.queryForList("SELECT event_id FROM event_partitions WHERE event_id IN (" +
+                placeholders + ")", String.class, eventIds.toArray());
+    }
+
+    // Every event on the current shard, as a derived table named machine_events, for
+    // the startup rebuilds
+    public String allEvents() {
+        if (!enabled) {
+            return "machine_events";
+        }
+        List<Long> all = new ArrayList<>(partitions());
+        return all.isEmpty() ? "machine_events" : union(all, COLUMNS, "TRUE") + " machine_events";
+    }
+
+    // Drops every partition that ends at or before cutoff, one DROP TABLE each, and
+    // returns the end of the newest one dropped, or null if nothing expired
+    public Instant dropPartitionsBefore(Instant cutoff) {
+        long firstKept = partitionOf(cutoff);
+        Instant droppedUntil = null;
+        ddlLock.lock();
+        try {
+            NavigableSet<Long> known = partitions();
+            // Unindexed before the tables go, so no index row ever names a missing table
+            if (!known.headSet(firstKept, false).isEmpty()) {
+                execute("DELETE FROM event_partitions WHERE partition_id < " + firstKept);
+            }
+            for (Long partition : new ArrayList<>(known.headSet(firstKept, false))) {
+                execute("DROP TABLE IF EXISTS " + table(partition));
+                known.remove(partition);
+                droppedUntil = partitionStart(partition + 1);
+            }
+        } finally {
+            ddlLock.unlock();
+        }
+        return droppedUntil;
+    }
+
+    // H2 commits the open transaction on DDL, so tables are created on a connection
+    // of their own and the caller's transaction is left alone
+    private void ensurePartitions(Set<Long> needed) {
+        NavigableSet<Long> known = partitions();
+        if (known.containsAll(needed)) {
+            return;
+        }
+        ddlLock.lock();
+        try {
+            for (long partition : new TreeSet<>(needed)) {
+                if (known.contains(partition)) {
+                    continue;
+                }
+                String table = table(partition);
+                execute("CREATE TABLE IF NOT EXISTS " + table + " AS SELECT * FROM machine_events WITH NO DATA",
+                        // CREATE TABLE AS copies no constraints, not even NOT NULL
+                        "ALTER TABLE " + table + " ALTER COLUMN id SET NOT NULL",
+                        "ALTER TABLE " + table + " ADD PRIMARY KEY (id)",
+                        "CREATE UNIQUE INDEX " + table + "_event_id ON " + table + " (event_id)",
+                        "CREATE INDEX " + table + "_machine_time ON " + table + " (machine_id, event_time)",
+                        "CREATE INDEX " + table + "_factory_time_line_defects ON " + table +
+                                " (factory_id, event_time, line_id, defect_count)");
+                known.add(partition);
+            }
+        } finally {
+            ddlLock.unlock();
+        }
+    }
+
+    private void execute(String... statements) {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement()) {
+            for (String sql : statements) {
+                statement.execute(sql);
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("Partition DDL failed: " + statements[0], e);
+        }
+    }
+
+    private NavigableSet<Long> loadPartitions() {
+        NavigableSet<Long> loaded = new ConcurrentSkipListSet<>();
+        jdbcTemplate.query("SELECT TABLE_NAME FROM INFORMATION_SCHEMA.TABLES WHERE TABLE_NAME LIKE ?", rs -> {
+            String suffix = rs.getString(1).substring(TABLE_PREFIX.length());
+            if (suffix.matches("-?\\d+")) {
+                loaded.add(Long.parseLong(suffix));
+            }
+        }, TABLE_PREFIX.toUpperCase() + "%");
+        return loaded;
+    }
+
+    private Map<String, Stored> loadExisting(List<MachineEvent> events) {
+        Map<String, Stored> state = new HashMap<>();
+        if (partitions().isEmpty()) {
+            return state;
+        }
+
+        // Staged once per distinct eventId so each partition is probed through its index
+        String batchId = UUID.randomUUID().toString();
+        Map<String, MachineEvent> distinct = events.stream()
+                .collect(Collectors.toMap(MachineEvent::getEventId, e -> e, (first, later) -> first, LinkedHashMap::new));
+        List<Object[]> rows = new ArrayList<>(distinct.size());
+        for (MachineEvent event : distinct.values()) {
+            rows.add(new Object[]{batchId, event.getEventId(), utc(event.getEventTime()),
+                    utc(event.getReceivedTime()), dimensions.key(event.getMachineId()), event.getDurationMs(),
+                    event.getDefectCount(), dimensions.key(event.getLineId()), dimensions.key(event.getFactoryId()),
+                    event.getPayloadHash()});
+        }
+        jdbcTemplate.batchUpdate(STAGE, rows);
+
+        // Only the partitions that hold one of the ids are read
+        List<Long> holding = jdbcTemplate.queryForList("SELECT DISTINCT partition_id FROM event_partitions " +
+                "WHERE event_id IN (" + STAGED_IDS + ")", Long.class, batchId);
+        if (!holding.isEmpty()) {
+            StringBuilder sql = new StringBuilder();
+            for (long partition : holding) {
+                if (!sql.isEmpty()) {
+                    sql.append(" UNION ALL ");
+                }
+                sql.append("SELECT ").append(COLUMNS).append(", ").append(partition).append(" FROM ")
+                        .append(table(partition)).append(" WHERE event_id IN (").append(STAGED_IDS).append(")");
+            }
+            jdbcTemplate.query(sql.toString(), rs -> {
+                state.put(rs.getString(2), new Stored(rs.getLong(1), rs.getLong(12), rs.getLong(10), event(rs)));
+            }, repeat(holding.size(), batchId));
+        }
+
+        jdbcTemplate.update(UNSTAGE, batchId);
+        return state;
+    }
+
+    private List<Long> overlapping(Instant from, Instant to) {
+        if (!from.isBefore(to)) {
+            return List.of();
+        }
+        // to is exclusive, so a window ending on a boundary never opens the next partition
+        long last = partitionOf(to.minusNanos(1));
+        return new ArrayList<>(partitions().subSet(partitionOf(from), true, last, true));
+    }
+
+    private static String union(List<Long> partitions, String columns, String condition) {
+        StringBuilder sql = new StringBuilder("(");
+        for (long partition : partitions) {
+            if (sql.length() > 1) {
+                sql.append(" UNION ALL ");
+            }
+            sql.append("SELECT ").append(columns).append(" FROM ").append(table(partition))
+                    .append(" WHERE ").append(condition);
+        }
+        return sql.append(")").toString();
+    }
+
+    private static Object[] repeat(int times, Object... args) {
+        Object[] repeated = new Object[times * args.length];
+        for (int i = 0; i < times; i++) {
+            System.arraycopy(args, 0, repeated, i * args.length, args.length);
+        }
+        return repeated;
+    }
+
+    private static String table(long partition) {
+        return TABLE_PREFIX + partition;
+    }
+
+    private Object[] row(Long id, MachineEvent event, long version) {
+        return new Object[]{id, event.getEventId(), utc(event.getEventTime()), utc(event.getReceivedTime()),
+                dimensions.key(event.getMachineId()), event.getDurationMs(), event.getDefectCount(),
+                dimensions.key(event.getLineId()), dimensions.key(event.getFactoryId()), version,
+                event.getPayloadHash()};
+    }
+
+    private MachineEvent event(ResultSet rs) throws SQLException {
+        MachineEvent event = new MachineEvent();
+        event.setEventId(rs.getString(2));
+        event.setEventTime(rs.getObject(3, OffsetDateTime.class).toInstant());
+        event.setReceivedTime(rs.getObject(4, OffsetDateTime.class).toInstant());
+        event.setMachineId(dimensions.name(rs.getObject(5, Integer.class)));
+        event.setDurationMs(rs.getLong(6));
+        event.setDefectCount(rs.getInt(7));
+        event.setLineId(dimensions.name(rs.getObject(8, Integer.class)));
+        event.setFactoryId(dimensions.name(rs.getObject(9, Integer.class)));
+        event.setPayloadHash(rs.getObject(11, Long.class));
+        return event;
+    }
+
+    private static OffsetDateTime utc(Instant instant) {
+        return instant.atOffset(ZoneOffset.UTC);
+    }
+
+    // Where an eventId currently lives; id is null for events new in this batch
+    private static final class Stored {
+        final Long id;
+        final Long partition;
+        final long version;
+        MachineEvent event;
+        boolean dirty;
+
+        Stored(Long id, Long partition, long version, MachineEvent event) {
+            this.id = id;
+            this.partition = partition;
+            this.version = version;
+            this.event = event;
+        }
+    }
+}
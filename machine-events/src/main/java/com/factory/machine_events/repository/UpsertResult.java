@@ -0,0 +1,51 @@
+package com.factory.machine_events.repository;
+
+import com.factory.machine_events.model.MachineEvent;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Outcome of EventRepositoryCustom.upsertBatch, counted the same way as BatchResponse
+public class UpsertResult {
+
+    private int accepted;
+    private int deduped;
+    private int updated;
+
+    // Every row written, before is null for inserts
+    private final List<Change> changes = new ArrayList<>();
+
+    public void accept(MachineEvent event) {
+        accepted++;
+        changes.add(new Change(null, event));
+    }
+
+    public void dedupe() {
+        deduped++;
+    }
+
+    public void update(MachineEvent before, MachineEvent after) {
+        updated++;
+        changes.add(new Change(before, after));
+    }
+
+    public int getAccepted() {
+        return accepted;
+    }
+
+    public int getDeduped() {
+        return deduped;
+    }
+
+    public int getUpdated() {
+        return updated;
+    }
+
+    public List<Change> getChanges() {
+        return changes;
+    }
+
+    // before only carries the columns rollups and caches look at
+    public record Change(MachineEvent before, MachineEvent after) {
+    }
+}
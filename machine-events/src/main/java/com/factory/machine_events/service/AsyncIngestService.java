@@ -0,0 +1,363 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.RejectionDetail;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Opt-in asynchronous /events/batch. Batches are validated up front, queued in a
+// bounded queue and written by a few writer threads, each of which coalesces
+// whatever is queued into one processBatches transaction. Results are kept per
+// ticket until maxTickets newer ones have completed. Writers run on virtual
+// threads when spring.threads.virtual.enabled is set.
+//
+// With the write-ahead log enabled (which turns this service on by itself) a batch
+// is on disk before its ticket is handed out, and the writers are its applier: a
+// failing batch is retried maxAttempts times with backoff and then dead-lettered,
+// and whatever was never applied is replayed at the next start.
+@Service
+public class AsyncIngestService implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncIngestService.class);
+
+    private static final long POLL_MILLIS = 100;
+    private static final long STOP_TIMEOUT_MILLIS = 10_000;
+    private static final long FIRST_RETRY_MILLIS = 100;
+    private static final long MAX_RETRY_MILLIS = 5_000;
+    // Below the embedded web server's phase (DEFAULT_PHASE - 2048): the log is replayed
+    // before requests are accepted, and the writers drain after they have stopped
+    private static final int PHASE = SmartLifecycle.DEFAULT_PHASE - 4096;
+
+    public enum Status { QUEUED, DONE, FAILED }
+
+    public record Ticket(String id, Status status, BatchResponse response, String error) {
+    }
+
+    // position is the batch's write-ahead log record, or -1 without the log
+    private record Pending(String ticketId, List<EventRequest> events, BatchResponse prevalidated, long position) {
+    }
+
+    private final EventService eventService;
+    private final WriteAheadLog writeAheadLog;
+    private final boolean enabled;
+    private final int writers;
+    private final int maxCoalescedEvents;
+    private final int maxTickets;
+    private final int maxAttempts;
+    private final boolean virtualThreads;
+
+    private final BlockingQueue<Pending> queue;
+    // One permit per free queue slot, taken before a batch is logged, so a logged
+    // batch always finds room
+    private final Semaphore slots;
+    private final Map<String, Ticket> tickets = new ConcurrentHashMap<>();
+    private final Queue<String> completed = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger completedCount = new AtomicInteger();
+    private volatile CountDownLatch writersDone;
+    private volatile boolean running;
+
+    public AsyncIngestService(EventService eventService,
+                              WriteAheadLog writeAheadLog,
+                              @Value("${events.async.enabled:false}") boolean enabled,
+                              @Value("${events.async.queue-capacity:64}") int queueCapacity,
+                              @Value("${events.async.writers:2}") int writers,
+                              @Value("${events.async.max-coalesced-events:5000}") int maxCoalescedEvents,
+                              @Value("${events.async.max-tickets:10000}") int maxTickets,
+                              @Value("${events.wal.max-attempts:5}") int maxAttempts,
+                              @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (writers < 1) {
+            throw new IllegalArgumentException("writers must be positive: " + writers);
+        }
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("max-attempts must be positive: " + maxAttempts);
+        }
+        this.eventService = eventService;
+        this.writeAheadLog = writeAheadLog;
+        this.enabled = enabled || writeAheadLog.isEnabled();
+        this.writers = writers;
+        this.maxCoalescedEvents = maxCoalescedEvents;
+        this.maxTickets = maxTickets;
+        this.maxAttempts = writeAheadLog.isEnabled() ? maxAttempts : 1;
+        this.virtualThreads = virtualThreads;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.slots = new Semaphore(queueCapacity);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Returns the ticket id, or null when the queue is full (or the log not yet open)
+    // and the caller should back off. Invalid events are rejected here and never take
+    // up queue space or log records.
+    public String submit(List<EventRequest> events) {
+        if (writeAheadLog.isEnabled() && !writeAheadLog.isOpen()) {
+            return null;
+        }
+        BatchResponse prevalidated = new BatchResponse();
+        prevalidated.setRejections(new ArrayList<>());
+        List<EventRequest> valid = new ArrayList<>(events.size());
+        Instant latestEventTime = EventService.latestEventTime(Instant.now());
+        for (EventRequest event : events) {
+            String validationError = eventService.validateEvent(event, latestEventTime);
+            if (validationError != null) {
+                prevalidated.getRejections().add(new RejectionDetail(event.getEventId(), validationError));
+                prevalidated.setRejected(prevalidated.getRejected() + 1);
+            } else {
+                valid.add(event);
+            }
+        }
+
+        String ticketId = UUID.randomUUID().toString();
+        if (valid.isEmpty()) {
+            complete(new Ticket(ticketId, Status.DONE, prevalidated, null));
+            return ticketId;
+        }
+
+        // A full queue turns the batch away before it costs a log record and a force
+        if (!slots.tryAcquire()) {
+            return null;
+        }
+        // Registered first so a writer finishing early always finds the ticket
+        tickets.put(ticketId, new Ticket(ticketId, Status.QUEUED, null, null));
+        long position = -1;
+        if (writeAheadLog.isEnabled()) {
+            try {
+                position = writeAheadLog.append(valid);
+            } catch (RuntimeException e) {
+                tickets.remove(ticketId);
+                slots.release();
+                throw e;
+            }
+        }
+        queue.add(new Pending(ticketId, valid, prevalidated, position));
+        return ticketId;
+    }
+
+    public Ticket ticket(String ticketId) {
+        return tickets.get(ticketId);
+    }
+
+    @Override
+    public void start() {
+        if (!enabled || running) {
+            return;
+        }
+        if (writeAheadLog.isEnabled()) {
+            replay(writeAheadLog.open());
+        }
+        running = true;
+        SimpleAsyncTaskExecutor executor = new SimpleAsyncTaskExecutor("event-writer-");
+        executor.setDaemon(true);
+        // Only touched when enabled, so a Java 17 runtime never reaches the virtual thread API
+        if (virtualThreads) {
+            executor.setVirtualThreads(true);
+        }
+        CountDownLatch done = new CountDownLatch(writers);
+        writersDone = done;
+        for (int i = 0; i < writers; i++) {
+            executor.execute(() -> {
+                try {
+                    writeLoop();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+    }
+
+    // Stops taking new work from the queue only once it is empty
+    @Override
+    public void stop() {
+        running = false;
+        CountDownLatch done = writersDone;
+        if (done == null) {
+            return;
+        }
+        try {
+            if (!done.await(STOP_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS)) {
+                // A writer still applying a batch would mark it in a closed log
+                log.warn("Event writers still running after {} ms; leaving the write-ahead log open",
+                        STOP_TIMEOUT_MILLIS);
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        writersDone = null;
+        writeAheadLog.close();
+    }
+
+    @Override
+    public int getPhase() {
+        return PHASE;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    private void writeLoop() {
+        while (running || !queue.isEmpty()) {
+            Pending first;
+            try {
+                first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (first == null) {
+                continue;
+            }
+            slots.release();
+
+            List<Pending> group = new ArrayList<>();
+            group.add(first);
+            int events = first.events().size();
+            while (events < maxCoalescedEvents) {
+                Pending next = queue.poll();
+                if (next == null) {
+                    break;
+                }
+                slots.release();
+                group.add(next);
+                events += next.events().size();
+            }
+            write(group);
+        }
+    }
+
+    // Before any writer runs and before any new batch can be queued, in log order.
+    // Batches that were applied already before the stop settle as duplicates.
+    private void replay(List<WriteAheadLog.Record> records) {
+        int failed = 0;
+        for (WriteAheadLog.Record record : records) {
+            try {
+                eventService.processBatch(record.events());
+                writeAheadLog.markApplied(record.position());
+            } catch (RuntimeException e) {
+                // Tried once, so a record that cannot apply never blocks the log
+                log.error("Write-ahead log record {} failed on replay", record.position(), e);
+                deadLetter(record.position(), record.events());
+                failed++;
+            }
+        }
+        if (!records.isEmpty()) {
+            log.info("Replayed {} write-ahead log batches, {} failed", records.size(), failed);
+        }
+    }
+
+    private void write(List<Pending> group) {
+        List<List<EventRequest>> batches = new ArrayList<>(group.size());
+        for (Pending pending : group) {
+            batches.add(pending.events());
+        }
+        try {
+            List<BatchResponse> responses = eventService.processBatches(batches);
+            for (int i = 0; i < group.size(); i++) {
+                finish(group.get(i), responses.get(i));
+            }
+        } catch (RuntimeException e) {
+            if (group.size() == 1 && maxAttempts == 1) {
+                fail(group.get(0), e);
+                return;
+            }
+            // One bad batch must not fail the others it was coalesced with
+            for (Pending pending : group) {
+                try {
+                    finish(pending, processWithRetries(pending.events()));
+                } catch (RuntimeException single) {
+                    fail(pending, single);
+                }
+            }
+        }
+    }
+
+    // A logged batch rides out a short database outage; the first attempt was the
+    // coalesced one, so each batch gets maxAttempts more on its own
+    private BatchResponse processWithRetries(List<EventRequest> events) {
+        long backoff = FIRST_RETRY_MILLIS;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return eventService.processBatch(events);
+            } catch (RuntimeException e) {
+                if (attempt >= maxAttempts) {
+                    throw e;
+                }
+                try {
+                    Thread.sleep(backoff);
+                } catch (InterruptedException interrupted) {
+                    Thread.currentThread().interrupt();
+                    throw e;
+                }
+                backoff = Math.min(backoff * 2, MAX_RETRY_MILLIS);
+            }
+        }
+    }
+
+    private void finish(Pending pending, BatchResponse response) {
+        if (pending.position() >= 0) {
+            writeAheadLog.markApplied(pending.position());
+        }
+        BatchResponse merged = pending.prevalidated();
+        merged.setAccepted(response.getAccepted());
+        merged.setDeduped(response.getDeduped());
+        merged.setUpdated(response.getUpdated());
+        merged.setRejected(merged.getRejected() + response.getRejected());
+        merged.getRejections().addAll(response.getRejections());
+        complete(new Ticket(pending.ticketId(), Status.DONE, merged, null));
+    }
+
+    // A logged batch has used up its attempts by now and is dead-lettered, so it no
+    // longer holds the checkpoint back
+    private void fail(Pending pending, RuntimeException e) {
+        log.warn("Async batch {} failed", pending.ticketId(), e);
+        if (pending.position() >= 0) {
+            deadLetter(pending.position(), pending.events());
+        }
+        complete(new Ticket(pending.ticketId(), Status.FAILED, null, e.getMessage()));
+    }
+
+    // Left unapplied, and replayed at the next start, if even that fails
+    private void deadLetter(long position, List<EventRequest> events) {
+        try {
+            writeAheadLog.deadLetter(position, events);
+        } catch (RuntimeException e) {
+            log.error("Write-ahead log record {} could not be dead-lettered", position, e);
+        }
+    }
+
+    private void complete(Ticket ticket) {
+        tickets.put(ticket.id(), ticket);
+        completed.add(ticket.id());
+        if (completedCount.incrementAndGet() > maxTickets) {
+            String oldest = completed.poll();
+            if (oldest != null) {
+                completedCount.decrementAndGet();
+                tickets.remove(oldest);
+            }
+        }
+    }
+}
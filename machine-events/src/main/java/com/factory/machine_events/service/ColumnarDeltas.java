@@ -0,0 +1,99 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.model.MachineEvent;
+
+import java.util.Arrays;
+
+// Rows one processBatch call appends to the columnar store once it has committed: the
+// written events, and a retraction of the previous version of every updated one.
+// The values are copied out at once, since an updated entity changes right after.
+public class ColumnarDeltas {
+
+    private String[] machines = new String[16];
+    private String[] lines = new String[16];
+    private String[] factories = new String[16];
+    private long[] times = new long[16];
+    private int[] defects = new int[16];
+    private long[] durations = new long[16];
+    private byte[] signs = new byte[16];
+    private int size;
+
+    public void add(MachineEvent event) {
+        append(event, 1);
+    }
+
+    public void subtract(MachineEvent event) {
+        append(event, -1);
+    }
+
+    // Folds in the rows of another slice of the same batch
+    public void merge(ColumnarDeltas other) {
+        for (int i = 0; i < other.size; i++) {
+            append(other.machines[i], other.lines[i], other.factories[i], other.times[i], other.defects[i],
+                    other.durations[i], other.signs[i]);
+        }
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public String machineId(int row) {
+        return machines[row];
+    }
+
+    public String lineId(int row) {
+        return lines[row];
+    }
+
+    public String factoryId(int row) {
+        return factories[row];
+    }
+
+    public long eventTime(int row) {
+        return times[row];
+    }
+
+    public int defectCount(int row) {
+        return defects[row];
+    }
+
+    public long durationMs(int row) {
+        return durations[row];
+    }
+
+    public int sign(int row) {
+        return signs[row];
+    }
+
+    private void append(MachineEvent event, int sign) {
+        append(event.getMachineId(), event.getLineId(), event.getFactoryId(), event.getEventTime().toEpochMilli(),
+                event.getDefectCount(), event.getDurationMs(), sign);
+    }
+
+    private void append(String machineId, String lineId, String factoryId, long eventTime, int defectCount,
+                        long durationMs, int sign) {
+        if (size == times.length) {
+            int capacity = size * 2;
+            machines = Arrays.copyOf(machines, capacity);
+            lines = Arrays.copyOf(lines, capacity);
+            factories = Arrays.copyOf(factories, capacity);
+            times = Arrays.copyOf(times, capacity);
+            defects = Arrays.copyOf(defects, capacity);
+            durations = Arrays.copyOf(durations, capacity);
+            signs = Arrays.copyOf(signs, capacity);
+        }
+        machines[size] = machineId;
+        lines[size] = lineId;
+        factories[size] = factoryId;
+        times[size] = eventTime;
+        defects[size] = defectCount;
+        durations[size] = durationMs;
+        signs[size] = (byte) sign;
+        size++;
+    }
+}
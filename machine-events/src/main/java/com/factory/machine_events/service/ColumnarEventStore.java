@@ -0,0 +1,215 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.repository.DimensionDictionary;
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongPredicate;
+
+// A copy of every event as primitive columns off the heap, one EventColumns per
+// machine, spanning every shard like the live counters. EventService appends after
+// commit; StatsService answers any window from here, to the millisecond, while it is
+// serving. Once the memory budget runs out rows would go missing, so the store stops
+// serving until it is rebuilt at the next start.
+@Service
+public class ColumnarEventStore implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(ColumnarEventStore.class);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final PartitionedEventStore partitionedEventStore;
+    private final DimensionDictionary dimensions;
+    private final boolean enabled;
+    private final long budgetBytes;
+
+    private final Map<Integer, EventColumns> machines = new ConcurrentHashMap<>();
+    // Factory key -> keys of the machines that have rows for it
+    private final Map<Integer, Set<Integer>> factoryMachines = new ConcurrentHashMap<>();
+    private final AtomicLong remaining = new AtomicLong();
+    private final LongPredicate reserve = this::reserve;
+    private volatile boolean overflowed;
+
+    public ColumnarEventStore(JdbcTemplate jdbcTemplate,
+                              ShardRouter shardRouter,
+                              PartitionedEventStore partitionedEventStore,
+                              DimensionDictionary dimensions,
+                              @Value("${events.columnar.enabled:false}") boolean enabled,
+                              @Value("${events.columnar.memory-budget-mb:256}") long memoryBudgetMb) {
+        if (memoryBudgetMb < 1) {
+            throw new IllegalArgumentException("memory-budget-mb must be positive: " + memoryBudgetMb);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.partitionedEventStore = partitionedEventStore;
+        this.dimensions = dimensions;
+        this.enabled = enabled;
+        this.budgetBytes = memoryBudgetMb * 1024 * 1024;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isServing() {
+        return enabled && !overflowed;
+    }
+
+    // Copy every shard's events at startup, before any request can be served. Rows
+    // carry their dimension keys as stored, so nothing is looked up per event.
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        machines.clear();
+        factoryMachines.clear();
+        remaining.set(budgetBytes);
+        overflowed = false;
+        shardRouter.onShards(shardRouter.allShards(), shard -> {
+            load();
+            return null;
+        });
+    }
+
+    private void load() {
+        jdbcTemplate.query(
+                "SELECT machine_id, event_time, defect_count, duration_ms, line_id, factory_id " +
+                "FROM " + partitionedEventStore.allEvents(),
+                (RowCallbackHandler) rs -> append(rs.getInt(1), rs.getObject(2, OffsetDateTime.class).toInstant().toEpochMilli(),
+                        rs.getInt(3), rs.getLong(4), rs.getInt(5), rs.getInt(6), 1));
+    }
+
+    // Rows must never come from a batch that rolls back, so inside a transaction they
+    // are held until it commits
+    public void applyAfterCommit(ColumnarDeltas deltas) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(deltas);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(deltas);
+            }
+        });
+    }
+
+    // processBatches registered every id before the batch was written, so the keys
+    // are all known here
+    public void apply(ColumnarDeltas deltas) {
+        for (int row = 0; row < deltas.size(); row++) {
+            Integer machineKey = dimensions.find(deltas.machineId(row));
+            if (machineKey == null) {
+                continue;
+            }
+            append(machineKey, deltas.eventTime(row), deltas.defectCount(row), deltas.durationMs(row),
+                    keyOrNone(deltas.lineId(row)), keyOrNone(deltas.factoryId(row)), deltas.sign(row));
+        }
+    }
+
+    // {eventCount, defectSum} over [start, end); zeros for a machine without rows
+    public long[] machineTotals(String machineId, Instant start, Instant end) {
+        Integer machineKey = dimensions.find(machineId);
+        EventColumns columns = machineKey != null ? machines.get(machineKey) : null;
+        if (columns == null || !start.isBefore(end)) {
+            return new long[2];
+        }
+        return columns.totals(start.toEpochMilli(), end.toEpochMilli());
+    }
+
+    // lineId -> {totalDefects, eventCount} over [from, to), unranked and uncut
+    public Map<String, long[]> lineTotals(String factoryId, Instant from, Instant to) {
+        Map<String, long[]> totals = new HashMap<>();
+        Integer factoryKey = dimensions.find(factoryId);
+        Set<Integer> machineKeys = factoryKey != null ? factoryMachines.get(factoryKey) : null;
+        if (machineKeys == null || !from.isBefore(to)) {
+            return totals;
+        }
+        Map<Integer, long[]> byKey = new HashMap<>();
+        for (Integer machineKey : machineKeys) {
+            machines.get(machineKey).addLineTotals(factoryKey, from.toEpochMilli(), to.toEpochMilli(), byKey);
+        }
+        // A line whose every event was retracted again has no events left in the window
+        byKey.forEach((lineKey, values) -> {
+            if (values[1] > 0) {
+                totals.put(dimensions.name(lineKey), values);
+            }
+        });
+        return totals;
+    }
+
+    // Called by retention once the partitions before cutoff are gone
+    public void dropBefore(Instant cutoff) {
+        if (!enabled) {
+            return;
+        }
+        long cutoffMillis = cutoff.toEpochMilli();
+        for (EventColumns columns : machines.values()) {
+            remaining.addAndGet(columns.dropBefore(cutoffMillis));
+        }
+    }
+
+    // Bytes held by the columns, for tests and benchmarks
+    public long bytes() {
+        return machines.values().stream().mapToLong(EventColumns::bytes).sum();
+    }
+
+    private void append(int machineKey, long eventTime, int defectCount, long durationMs,
+                        int lineKey, int factoryKey, int sign) {
+        if (overflowed) {
+            return;
+        }
+        EventColumns columns = machines.get(machineKey);
+        if (columns == null) {
+            columns = machines.computeIfAbsent(machineKey, k -> EventColumns.create(reserve));
+            if (columns == null) {
+                overflow();
+                return;
+            }
+        }
+        if (factoryKey != 0) {
+            factoryMachines.computeIfAbsent(factoryKey, k -> ConcurrentHashMap.newKeySet()).add(machineKey);
+        }
+        if (!columns.append(eventTime, defectCount, durationMs, lineKey, factoryKey, sign, reserve)) {
+            overflow();
+        }
+    }
+
+    private boolean reserve(long bytes) {
+        if (remaining.addAndGet(-bytes) >= 0) {
+            return true;
+        }
+        remaining.addAndGet(bytes);
+        return false;
+    }
+
+    private void overflow() {
+        if (!overflowed) {
+            overflowed = true;
+            log.warn("Columnar event store is over its {} byte budget; stats go to the database until restart",
+                    budgetBytes);
+        }
+    }
+
+    private int keyOrNone(String name) {
+        Integer key = dimensions.find(name);
+        return key != null ? key : 0;
+    }
+}
@@ -0,0 +1,196 @@
+package com.factory.machine_events.service;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongPredicate;
+
+// One machine's events as primitive columns in direct buffers: eventTime (epoch
+// millis), defectCount, durationMs, line and factory dimension keys (0 = none) and a
+// sign, +1 for an event and -1 for the retraction of an updated one. Rows are only
+// appended, so a scan never needs to know which event a row came from.
+//
+// Appends are serialized by the lock. A full block is copied into a larger one and
+// published before the new row goes in; readers take the current block and its size
+// once and scan that snapshot without locking.
+public class EventColumns {
+
+    static final int BYTES_PER_ROW = Long.BYTES + Integer.BYTES + Long.BYTES + Integer.BYTES + Integer.BYTES + 1;
+
+    private static final int INITIAL_ROWS = 256;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private volatile Block block;
+
+    // Reserves the bytes of the first block from the budget; null if it is exhausted
+    static EventColumns create(LongPredicate reserve) {
+        if (!reserve.test((long) INITIAL_ROWS * BYTES_PER_ROW)) {
+            return null;
+        }
+        EventColumns columns = new EventColumns();
+        columns.block = new Block(INITIAL_ROWS);
+        return columns;
+    }
+
+    private EventColumns() {}
+
+    // False when growing would go over the budget; the row is not added then
+    public boolean append(long eventTime, int defectCount, long durationMs, int lineKey, int factoryKey, int sign,
+                          LongPredicate reserve) {
+        lock.lock();
+        try {
+            Block current = block;
+            int size = current.size;
+            if (size == current.capacity) {
+                int capacity = current.capacity * 2;
+                if (!reserve.test((long) (capacity - current.capacity) * BYTES_PER_ROW)) {
+                    return false;
+                }
+                current = current.copy(capacity, size);
+                block = current;
+            }
+            current.times.put(size, eventTime);
+            current.defects.put(size, defectCount);
+            current.durations.put(size, durationMs);
+            current.lines.put(size, lineKey);
+            current.factories.put(size, factoryKey);
+            current.signs.put(size, (byte) sign);
+            current.size = size + 1;
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // {eventCount, defectSum} over eventTime in [from, to), in epoch millis. Written
+    // without branches in the loop so C2 can turn the comparisons into selects and
+    // unroll it; defectCount = -1 adds nothing to the defect sum.
+    public long[] totals(long from, long to) {
+        Block current = block;
+        int size = current.size;
+        long events = 0;
+        long defects = 0;
+        for (int i = 0; i < size; i++) {
+            long time = current.times.get(i);
+            long weight = (time >= from & time < to ? 1 : 0) * (long) current.signs.get(i);
+            events += weight;
+            defects += weight * Math.max(current.defects.get(i), 0);
+        }
+        return new long[]{events, defects};
+    }
+
+    // Adds {defectSum, eventCount} per line key of the rows of one factory in
+    // [from, to) to totals. Rows without a line are left out.
+    public void addLineTotals(int factoryKey, long from, long to, Map<Integer, long[]> totals) {
+        Block current = block;
+        int size = current.size;
+        int lastLine = 0;
+        long[] lastTotals = null;
+        for (int i = 0; i < size; i++) {
+            long time = current.times.get(i);
+            int line = current.lines.get(i);
+            if (time < from || time >= to || line == 0 || current.factories.get(i) != factoryKey) {
+                continue;
+            }
+            // Rows of a machine mostly share one line, so the map is rarely consulted
+            if (line != lastLine) {
+                lastTotals = totals.computeIfAbsent(line, k -> new long[2]);
+                lastLine = line;
+            }
+            int sign = current.signs.get(i);
+            lastTotals[0] += (long) sign * Math.max(current.defects.get(i), 0);
+            lastTotals[1] += sign;
+        }
+    }
+
+    // Drops every row with eventTime before cutoff into a new block; returns the bytes
+    // given back to the budget
+    public long dropBefore(long cutoff) {
+        lock.lock();
+        try {
+            Block current = block;
+            int kept = 0;
+            for (int i = 0; i < current.size; i++) {
+                if (current.times.get(i) >= cutoff) {
+                    kept++;
+                }
+            }
+            if (kept == current.size) {
+                return 0;
+            }
+            int capacity = INITIAL_ROWS;
+            while (capacity < kept) {
+                capacity *= 2;
+            }
+            Block compacted = new Block(capacity);
+            int row = 0;
+            for (int i = 0; i < current.size; i++) {
+                if (current.times.get(i) >= cutoff) {
+                    current.copyRow(i, compacted, row++);
+                }
+            }
+            compacted.size = row;
+            block = compacted;
+            return (long) (current.capacity - capacity) * BYTES_PER_ROW;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        return block.size;
+    }
+
+    public long bytes() {
+        return (long) block.capacity * BYTES_PER_ROW;
+    }
+
+    private static final class Block {
+        final int capacity;
+        final LongBuffer times;
+        final IntBuffer defects;
+        final LongBuffer durations;
+        final IntBuffer lines;
+        final IntBuffer factories;
+        final ByteBuffer signs;
+        volatile int size;
+
+        Block(int capacity) {
+            this.capacity = capacity;
+            this.times = direct(capacity * Long.BYTES).asLongBuffer();
+            this.defects = direct(capacity * Integer.BYTES).asIntBuffer();
+            this.durations = direct(capacity * Long.BYTES).asLongBuffer();
+            this.lines = direct(capacity * Integer.BYTES).asIntBuffer();
+            this.factories = direct(capacity * Integer.BYTES).asIntBuffer();
+            this.signs = direct(capacity);
+        }
+
+        Block copy(int capacity, int rows) {
+            Block copy = new Block(capacity);
+            copy.times.put(0, times, 0, rows);
+            copy.defects.put(0, defects, 0, rows);
+            copy.durations.put(0, durations, 0, rows);
+            copy.lines.put(0, lines, 0, rows);
+            copy.factories.put(0, factories, 0, rows);
+            copy.signs.put(0, signs, 0, rows);
+            copy.size = rows;
+            return copy;
+        }
+
+        void copyRow(int from, Block to, int row) {
+            to.times.put(row, times.get(from));
+            to.defects.put(row, defects.get(from));
+            to.durations.put(row, durations.get(from));
+            to.lines.put(row, lines.get(from));
+            to.factories.put(row, factories.get(from));
+            to.signs.put(row, signs.get(from));
+        }
+
+        private static ByteBuffer direct(int bytes) {
+            return ByteBuffer.allocateDirect(bytes).order(ByteOrder.nativeOrder());
+        }
+    }
+}
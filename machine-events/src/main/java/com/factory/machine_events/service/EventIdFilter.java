@@ -0,0 +1,278 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Scalable Bloom filter of every eventId written, so processBatch only looks up ids
+// that may already exist. A full layer is followed by one twice its size with half
+// its false-positive rate, which keeps the combined rate under the configured fpp
+// however many ids arrive. Ids are added before the batch commits; a rollback only
+// leaves a few extra false positives behind, and retention never removes any.
+@Service
+public class EventIdFilter implements SmartInitializingSingleton {
+
+    private static final double LN2 = Math.log(2);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final PartitionedEventStore partitionedEventStore;
+    private final boolean enabled;
+    private final long expectedIds;
+    private final double fpp;
+
+    // Replaced whole under growLock, read without it
+    private volatile Layer[] layers = new Layer[0];
+    private final ReentrantLock growLock = new ReentrantLock();
+
+    // Everything is "maybe present" until the startup rebuild has finished
+    private volatile boolean ready;
+
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    public EventIdFilter(JdbcTemplate jdbcTemplate,
+                         ShardRouter shardRouter,
+                         PartitionedEventStore partitionedEventStore,
+                         @Value("${events.id-filter.enabled:false}") boolean enabled,
+                         @Value("${events.id-filter.expected-ids:1000000}") long expectedIds,
+                         @Value("${events.id-filter.fpp:0.01}") double fpp) {
+        if (expectedIds < 1) {
+            throw new IllegalArgumentException("expected-ids must be positive: " + expectedIds);
+        }
+        if (fpp <= 0 || fpp >= 1) {
+            throw new IllegalArgumentException("fpp must be between 0 and 1: " + fpp);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.partitionedEventStore = partitionedEventStore;
+        this.enabled = enabled;
+        this.expectedIds = expectedIds;
+        this.fpp = fpp;
+        if (enabled) {
+            this.layers = new Layer[]{new Layer(expectedIds, fpp / 2)};
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Sized for the stored ids plus half again, or expected-ids if that is more, and
+    // filled from every shard before any request can be served
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (enabled) {
+            rebuild();
+        }
+    }
+
+    // Not safe against concurrent writes, whose ids could be lost with the old layers
+    public void rebuild() {
+        ready = false;
+        long stored = shardRouter.onShards(shardRouter.allShards(), shard -> jdbcTemplate.queryForObject(
+                "SELECT COUNT(*) FROM " + partitionedEventStore.allEvents(), Long.class))
+                .stream().mapToLong(Long::longValue).sum();
+        growLock.lock();
+        try {
+            // The first layer takes half the error budget, the rest share the other half
+            layers = new Layer[]{new Layer(Math.max(expectedIds, stored + stored / 2), fpp / 2)};
+        } finally {
+            growLock.unlock();
+        }
+        shardRouter.onShards(shardRouter.allShards(), shard -> {
+            jdbcTemplate.query("SELECT event_id FROM " + partitionedEventStore.allEvents(),
+                    rs -> {
+                        insert(rs.getString(1));
+                    });
+            return null;
+        });
+        ready = true;
+    }
+
+    // Adds the ids that have to be looked up to lookup; the rest were never written
+    public void maybePresent(Collection<String> eventIds, Collection<String> lookup) {
+        if (!enabled || !ready) {
+            lookup.addAll(eventIds);
+            return;
+        }
+        int found = 0;
+        for (String eventId : eventIds) {
+            if (mightContain(eventId)) {
+                lookup.add(eventId);
+                found++;
+            }
+        }
+        checked.add(eventIds.size());
+        skipped.add(eventIds.size() - found);
+    }
+
+    // Ids that maybePresent sent to the database but it did not find
+    public void recordMisses(int misses) {
+        if (enabled && ready) {
+            falsePositives.add(misses);
+        }
+    }
+
+    public void add(String eventId) {
+        if (enabled) {
+            insert(eventId);
+        }
+    }
+
+    private void insert(String eventId) {
+        long h1 = hash(eventId);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        Layer[] current = layers;
+        for (Layer layer : current) {
+            if (layer.mightContain(h1, h2)) {
+                return;
+            }
+        }
+        Layer last = current[current.length - 1];
+        if (last.count.get() >= last.capacity) {
+            last = grow(last);
+        }
+        last.put(h1, h2);
+    }
+
+    private boolean mightContain(String eventId) {
+        long h1 = hash(eventId);
+        long h2 = mix(h1 ^ 0x9E3779B97F4A7C15L) | 1;
+        for (Layer layer : layers) {
+            if (layer.mightContain(h1, h2)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Layer grow(Layer full) {
+        growLock.lock();
+        try {
+            Layer[] current = layers;
+            Layer last = current[current.length - 1];
+            if (last != full) {
+                return last;
+            }
+            Layer[] grown = new Layer[current.length + 1];
+            System.arraycopy(current, 0, grown, 0, current.length);
+            grown[current.length] = new Layer(full.capacity * 2, full.fpp / 2);
+            layers = grown;
+            return grown[current.length];
+        } finally {
+            growLock.unlock();
+        }
+    }
+
+    public long checked() {
+        return checked.sum();
+    }
+
+    // Lookups saved: ids the filter ruled out
+    public long skipped() {
+        return skipped.sum();
+    }
+
+    public long falsePositives() {
+        return falsePositives.sum();
+    }
+
+    // Share of the ids that turned out to be new which still went to the database
+    public double falsePositiveRate() {
+        long fp = falsePositives.sum();
+        long negatives = fp + skipped.sum();
+        return negatives == 0 ? 0 : (double) fp / negatives;
+    }
+
+    public int layers() {
+        return layers.length;
+    }
+
+    public long capacity() {
+        long capacity = 0;
+        for (Layer layer : layers) {
+            capacity += layer.capacity;
+        }
+        return capacity;
+    }
+
+    public long memoryBytes() {
+        long bytes = 0;
+        for (Layer layer : layers) {
+            bytes += layer.bits.length() * 8L;
+        }
+        return bytes;
+    }
+
+    // 64-bit polynomial hash finished with a murmur3 mix; String.hashCode alone is too
+    // narrow for filters of a few million ids
+    private static long hash(String value) {
+        long h = 0;
+        for (int i = 0; i < value.length(); i++) {
+            h = h * 0x100000001B3L + value.charAt(i);
+        }
+        return mix(h);
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    // One fixed-size Bloom filter, probed with double hashing h1 + i * h2
+    private static final class Layer {
+        final long capacity;
+        final double fpp;
+        final AtomicLongArray bits;
+        final long bitCount;
+        final int hashes;
+        final AtomicLong count = new AtomicLong();
+
+        Layer(long capacity, double fpp) {
+            this.capacity = capacity;
+            this.fpp = fpp;
+            long optimal = (long) Math.ceil(-capacity * Math.log(fpp) / (LN2 * LN2));
+            this.bits = new AtomicLongArray(Math.toIntExact(Math.max(1, (optimal + 63) / 64)));
+            this.bitCount = bits.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) bitCount / capacity * LN2));
+        }
+
+        boolean mightContain(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                if ((bits.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void put(long h1, long h2) {
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bitCount);
+                int word = (int) (bit >>> 6);
+                long mask = 1L << bit;
+                long old;
+                while (((old = bits.get(word)) & mask) == 0 && !bits.compareAndSet(word, old, old | mask)) {
+                    // Another writer changed the word, try again
+                }
+            }
+            count.incrementAndGet();
+        }
+    }
+}
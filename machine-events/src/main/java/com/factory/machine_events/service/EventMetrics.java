@@ -0,0 +1,197 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.RejectionDetail;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+
+// Micrometer meters for the ingest stages and stats queries, scraped from
+// /actuator/prometheus. Meters are registered once up front, so recording is a
+// nanoTime pair and a histogram update; when disabled nothing is read or recorded.
+// The id filter and cache counters are kept by those beans and only read at scrape.
+@Service
+public class EventMetrics {
+
+    // bind: request body to EventRequests, before processBatch. In native and
+    // partitioned modes the dedup decision and the write are one upsert, timed as save.
+    public enum Stage { BIND, VALIDATE, LOOKUP, DIFF, SAVE }
+
+    public enum Query { STATS, TOP_DEFECT_LINES }
+
+    private final boolean enabled;
+    private final MeterRegistry registry;
+
+    private final Timer[] stages = new Timer[Stage.values().length];
+    private final Timer[] queries = new Timer[Query.values().length];
+    private final Timer batchDuration;
+    private final DistributionSummary batchSize;
+    private final Counter accepted;
+    private final Counter deduped;
+    private final Counter updated;
+    private final Counter rejected;
+    private final Map<String, Counter> rejectionReasons = new ConcurrentHashMap<>();
+    private final Timer lockWait;
+
+    public EventMetrics(MeterRegistry registry,
+                        EventIdFilter eventIdFilter,
+                        RecentEventCache recentEventCache,
+                        StatsCache statsCache,
+                        @Value("${events.metrics.enabled:true}") boolean enabled) {
+        this.enabled = enabled;
+        this.registry = registry;
+        for (Stage stage : Stage.values()) {
+            stages[stage.ordinal()] = Timer.builder("events.ingest.stage")
+                    .description("Time spent in one stage of a batch")
+                    .tag("stage", tagValue(stage))
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        for (Query query : Query.values()) {
+            queries[query.ordinal()] = Timer.builder("events.stats.query")
+                    .description("StatsService query latency, cache hits included")
+                    .tag("query", tagValue(query))
+                    .publishPercentileHistogram()
+                    .register(registry);
+        }
+        this.batchDuration = Timer.builder("events.ingest.batch")
+                .description("One processBatch or processBatches call end to end, commit included")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.batchSize = DistributionSummary.builder("events.ingest.batch.size")
+                .description("Events per batch")
+                .baseUnit("events")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.accepted = outcome("accepted");
+        this.deduped = outcome("deduped");
+        this.updated = outcome("updated");
+        this.rejected = outcome("rejected");
+        this.lockWait = Timer.builder("events.ingest.lock.wait")
+                .description("Wait for a contended per-event lock stripe; uncontended acquires are not recorded")
+                .publishPercentileHistogram()
+                .register(registry);
+
+        functionCounter("events.id.filter.checked", "Ids tested against the event id filter",
+                eventIdFilter, EventIdFilter::checked);
+        functionCounter("events.id.filter.skipped", "Ids the filter ruled out, so never looked up",
+                eventIdFilter, EventIdFilter::skipped);
+        functionCounter("events.id.filter.false.positives", "New ids the filter still sent to the database",
+                eventIdFilter, EventIdFilter::falsePositives);
+        cache("recent-events", recentEventCache, RecentEventCache::hits, RecentEventCache::misses,
+                RecentEventCache::evictions, RecentEventCache::size);
+        cache("stats", statsCache, StatsCache::hits, StatsCache::misses, StatsCache::evictions, StatsCache::size);
+        FunctionCounter.builder("events.cache.invalidations", statsCache, StatsCache::invalidations)
+                .description("Stats cache entries dropped because a write touched their window")
+                .tag("cache", "stats")
+                .register(registry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // Start of a stage, 0 when disabled so no clock is read
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    public void record(Stage stage, long start) {
+        if (enabled) {
+            stages[stage.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    // Batches coalesced into one transaction share a single duration sample, since
+    // none of them commits before the others; see recordBatchesDuration
+    public void recordBatch(int size, BatchResponse response) {
+        if (!enabled) {
+            return;
+        }
+        batchSize.record(size);
+        accepted.increment(response.getAccepted());
+        deduped.increment(response.getDeduped());
+        updated.increment(response.getUpdated());
+        rejected.increment(response.getRejected());
+        for (RejectionDetail rejection : response.getRejections()) {
+            rejectionReasons.computeIfAbsent(rejection.getReason(), reason -> Counter.builder("events.ingest.rejections")
+                    .description("Rejected events by reason code")
+                    .tag("reason", reason)
+                    .register(registry)).increment();
+        }
+    }
+
+    public void recordBatchesDuration(long start) {
+        if (enabled) {
+            batchDuration.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public void recordLockWait(long nanos) {
+        if (enabled) {
+            lockWait.record(nanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public <T> T timeQuery(Query query, Supplier<T> work) {
+        if (!enabled) {
+            return work.get();
+        }
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } finally {
+            queries[query.ordinal()].record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private <T> void functionCounter(String name, String description, T source, ToDoubleFunction<T> count) {
+        FunctionCounter.builder(name, source, count)
+                .description(description)
+                .register(registry);
+    }
+
+    // Named after Micrometer's own cache meters, with the cache as a tag
+    private <T> void cache(String cache, T source, ToDoubleFunction<T> hits, ToDoubleFunction<T> misses,
+                           ToDoubleFunction<T> evictions, ToDoubleFunction<T> size) {
+        FunctionCounter.builder("events.cache.gets", source, hits)
+                .description("Cache lookups by result")
+                .tags("cache", cache, "result", "hit")
+                .register(registry);
+        FunctionCounter.builder("events.cache.gets", source, misses)
+                .description("Cache lookups by result")
+                .tags("cache", cache, "result", "miss")
+                .register(registry);
+        FunctionCounter.builder("events.cache.evictions", source, evictions)
+                .description("Entries evicted to stay within the cache's bound")
+                .tag("cache", cache)
+                .register(registry);
+        Gauge.builder("events.cache.size", source, size)
+                .description("Entries held")
+                .tag("cache", cache)
+                .register(registry);
+    }
+
+    private Counter outcome(String outcome) {
+        return Counter.builder("events.ingest.events")
+                .description("Events by batch outcome")
+                .tag("outcome", outcome)
+                .register(registry);
+    }
+
+    private static String tagValue(Enum<?> value) {
+        return value.name().toLowerCase(Locale.ROOT).replace('_', '-');
+    }
+}
@@ -0,0 +1,90 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.shard.ShardRouter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Objects;
+
+// Retention for persistence mode "partitioned": partitions that end more than
+// retention-hours ago are dropped whole, and the rollup hours behind them go too.
+// A late event for a dropped window creates its partition again until the next run.
+@Service
+public class EventRetentionService {
+
+    private static final Logger log = LoggerFactory.getLogger(EventRetentionService.class);
+
+    private final PartitionedEventStore partitionedEventStore;
+    private final RollupService rollupService;
+    private final StatsCache statsCache;
+    private final RecentEventCache recentEventCache;
+    private final ColumnarEventStore columnarStore;
+    private final ShardRouter shardRouter;
+    private final Duration retention;
+
+    public EventRetentionService(PartitionedEventStore partitionedEventStore,
+                                 RollupService rollupService,
+                                 StatsCache statsCache,
+                                 RecentEventCache recentEventCache,
+                                 ColumnarEventStore columnarStore,
+                                 ShardRouter shardRouter,
+                                 @Value("${events.partitions.retention-hours:0}") long retentionHours) {
+        if (retentionHours < 0) {
+            throw new IllegalArgumentException("retention-hours must not be negative: " + retentionHours);
+        }
+        this.partitionedEventStore = partitionedEventStore;
+        this.rollupService = rollupService;
+        this.statsCache = statsCache;
+        this.recentEventCache = recentEventCache;
+        this.columnarStore = columnarStore;
+        this.shardRouter = shardRouter;
+        this.retention = Duration.ofHours(retentionHours);
+    }
+
+    public boolean isEnabled() {
+        return partitionedEventStore.isEnabled() && !retention.isZero();
+    }
+
+    @Scheduled(fixedDelayString = "${events.partitions.retention-check-ms:3600000}")
+    public void dropExpired() {
+        dropExpired(Instant.now());
+    }
+
+    // Returns the number of shards that dropped at least one partition
+    public int dropExpired(Instant now) {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Instant cutoff = now.minus(retention);
+        long dropped = shardRouter.onShards(shardRouter.allShards(), shard -> {
+            Instant droppedUntil = partitionedEventStore.dropPartitionsBefore(cutoff);
+            if (droppedUntil != null && rollupService.isEnabled()) {
+                shardRouter.inTransaction(() -> {
+                    rollupService.dropBefore(RollupService.epochHour(droppedUntil));
+                    return null;
+                });
+            }
+            // Every shard drops all partitions before the cutoff's, so no shard keeps
+            // rows before droppedUntil that the shared columnar copy would still need
+            if (droppedUntil != null) {
+                columnarStore.dropBefore(droppedUntil);
+            }
+            return droppedUntil;
+        }).stream().filter(Objects::nonNull).count();
+
+        if (dropped > 0) {
+            // Cached windows may still count the dropped events, and a retry of one
+            // must be accepted again rather than settled as a duplicate
+            statsCache.clear();
+            recentEventCache.clear();
+            log.info("Dropped event partitions before {} on {} shard(s)", cutoff, dropped);
+        }
+        return (int) dropped;
+    }
+}
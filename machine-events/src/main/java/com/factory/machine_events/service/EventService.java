@@ -4,15 +4,21 @@ import com.factory.machine_events.dto.BatchResponse;
 import com.factory.machine_events.dto.EventRequest;
 import com.factory.machine_events.dto.RejectionDetail;
 import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.repository.DimensionDictionary;
 import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.repository.UpsertResult;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 
-import java.time.Duration;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
 
 @Service
 public class EventService {
@@ -20,96 +26,602 @@ public class EventService {
     private static final long MAX_DURATION_MS = 6L * 60 * 60 * 1000; // 6 hours
     private static final long FUTURE_TIME_THRESHOLD_MINUTES = 15;
 
+    // Scratch collections kept for reuse; batches larger than SCRATCH_MAX_EVENTS use
+    // their own and drop them afterwards, so idle scratch memory stays bounded
+    private static final int SCRATCH_POOL_SIZE = 64;
+    private static final int SCRATCH_MAX_EVENTS = 10_000;
+
     private final EventRepository eventRepository;
+    private final RollupService rollupService;
+    private final LiveCounterService liveCounterService;
+    private final ColumnarEventStore columnarStore;
+    private final StatsCache statsCache;
+    private final StatsSubscriptionService subscriptions;
+    private final ShardRouter shardRouter;
+    private final EventIdFilter eventIdFilter;
+    private final RecentEventCache recentEventCache;
+    private final EventMetrics metrics;
+    private final DimensionDictionary dimensions;
+
+    // Striped in-memory locks by eventId hash to prevent race conditions; "map" brings
+    // back the old lock per eventId for benchmarks
+    private final LockTable eventLocks;
+
+    // "native" applies batches through EventRepository.upsertBatch instead of entities,
+    // "partitioned" through PartitionedEventStore.upsertBatch
+    private final boolean nativeUpsert;
+    private final boolean partitioned;
+    private final PartitionedEventStore partitionedEventStore;
 
-    // In-memory lock for each eventId to prevent race conditions
-    private final ConcurrentHashMap<String, Object> eventLocks = new ConcurrentHashMap<>();
+    // Batches of at least parallelThreshold events (0 = never) are split into
+    // parallelPartitions partitions by eventId hash and diffed in parallel
+    private final int parallelThreshold;
+    private final int parallelPartitions;
 
-    public EventService(EventRepository eventRepository) {
+    private final BlockingQueue<BatchScratch> scratchPool = new ArrayBlockingQueue<>(SCRATCH_POOL_SIZE);
+
+    public EventService(EventRepository eventRepository,
+                        RollupService rollupService,
+                        LiveCounterService liveCounterService,
+                        StatsCache statsCache,
+                        ShardRouter shardRouter,
+                        PartitionedEventStore partitionedEventStore,
+                        EventIdFilter eventIdFilter,
+                        RecentEventCache recentEventCache,
+                        EventMetrics metrics,
+                        DimensionDictionary dimensions,
+                        ColumnarEventStore columnarStore,
+                        StatsSubscriptionService subscriptions,
+                        @Value("${events.lock.stripes:1024}") int lockStripes,
+                        @Value("${events.lock.strategy:striped}") String lockStrategy,
+                        @Value("${events.persistence.mode:jpa}") String persistenceMode,
+                        @Value("${events.parallel.threshold:0}") int parallelThreshold,
+                        @Value("${events.parallel.partitions:0}") int parallelPartitions) {
+        if (!List.of("jpa", "native", "partitioned").contains(persistenceMode)) {
+            throw new IllegalArgumentException(
+                    "persistence mode must be jpa, native or partitioned: " + persistenceMode);
+        }
+        if (!lockStrategy.equals("striped") && !lockStrategy.equals("map")) {
+            throw new IllegalArgumentException("lock strategy must be striped or map: " + lockStrategy);
+        }
         this.eventRepository = eventRepository;
+        this.rollupService = rollupService;
+        this.liveCounterService = liveCounterService;
+        this.statsCache = statsCache;
+        this.shardRouter = shardRouter;
+        this.eventIdFilter = eventIdFilter;
+        this.recentEventCache = recentEventCache;
+        this.metrics = metrics;
+        this.dimensions = dimensions;
+        this.columnarStore = columnarStore;
+        this.subscriptions = subscriptions;
+        this.eventLocks = lockStrategy.equals("map") ? new LockMap() : new StripedLocks(lockStripes);
+        this.nativeUpsert = !persistenceMode.equals("jpa");
+        this.partitioned = persistenceMode.equals("partitioned");
+        this.partitionedEventStore = partitionedEventStore;
+        this.parallelThreshold = parallelThreshold;
+        this.parallelPartitions = parallelPartitions > 0 ?
+                parallelPartitions : ForkJoinPool.getCommonPoolParallelism() + 1;
     }
 
-    @Transactional
+    // One transaction, or one per shard the batch touches when storage is sharded
     public BatchResponse processBatch(List<EventRequest> requests) {
-        BatchResponse response = new BatchResponse();
-        List<RejectionDetail> rejections = new ArrayList<>();
+        return processBatches(List.of(requests)).get(0);
+    }
+
+    // Several batches in one transaction (one per shard when sharded), each counted on
+    // its own. Later batches see the writes of earlier ones exactly as if they had been
+    // sent one after another.
+    public List<BatchResponse> processBatches(List<List<EventRequest>> batches) {
+        long start = metrics.start();
+        // The clock is read once: it stamps missing receivedTimes and bounds eventTime.
+        // Times are kept to the millisecond, as the frame format and the write-ahead log
+        // carry them, so two sends of the same reading compare equal however they came.
+        Instant now = Instant.now().truncatedTo(ChronoUnit.MILLIS);
+        for (List<EventRequest> batch : batches) {
+            batch.forEach(EventService::truncateToMillis);
+        }
+        // New machine, line and factory ids get their keys before any transaction opens,
+        // so writing the batch only reads the dictionary. Only events that will pass
+        // validation register theirs; rejected ones must not grow the dictionary.
+        Instant latestEventTime = latestEventTime(now);
+        dimensions.registerAll(batches, request -> validateEvent(request, latestEventTime) == null);
+        List<BatchResponse> responses = shardRouter.isSharded() ?
+                processSharded(batches, now) : shardRouter.inTransaction(() -> applyBatches(batches, now));
+        metrics.recordBatchesDuration(start);
+        for (int b = 0; b < responses.size(); b++) {
+            metrics.recordBatch(batches.get(b).size(), responses.get(b));
+        }
+        return responses;
+    }
+
+    private List<BatchResponse> processSharded(List<List<EventRequest>> batches, Instant now) {
+        // Invalid events are rejected here, in request order, and never routed
+        Instant latestEventTime = latestEventTime(now);
+        List<BatchResponse> responses = new ArrayList<>(batches.size());
+        List<List<EventRequest>> valid = new ArrayList<>(batches.size());
+        Map<String, Integer> homes = new HashMap<>();
+        for (int b = 0; b < batches.size(); b++) {
+            BatchResponse response = new BatchResponse();
+            response.setRejections(new ArrayList<>());
+            responses.add(response);
+            List<EventRequest> batchValid = new ArrayList<>(batches.get(b).size());
+            valid.add(batchValid);
+            for (EventRequest request : batches.get(b)) {
+                String validationError = validateEvent(request, latestEventTime);
+                if (validationError != null) {
+                    response.getRejections().add(new RejectionDetail(request.getEventId(), validationError));
+                    continue;
+                }
+                batchValid.add(request);
+                homes.putIfAbsent(request.getEventId(), shardRouter.shardFor(request));
+            }
+        }
+
+        // An event stays on the shard it was first written to. A request that would
+        // route it elsewhere, by changing its machine or factory, is rejected rather
+        // than inserted there as a second copy.
+        homes.putAll(storedHomes(homes.keySet()));
+        Map<Integer, List<List<EventRequest>>> byShard = new TreeMap<>();
+        for (int b = 0; b < batches.size(); b++) {
+            for (EventRequest request : valid.get(b)) {
+                int shard = shardRouter.shardFor(request);
+                if (homes.get(request.getEventId()) != shard) {
+                    responses.get(b).getRejections().add(
+                            new RejectionDetail(request.getEventId(), "SHARD_KEY_CHANGED"));
+                    continue;
+                }
+                byShard.computeIfAbsent(shard, k -> emptyBatches(batches.size())).get(b).add(request);
+            }
+        }
+
+        // Each shard commits on its own and in parallel, so a batch spanning shards is
+        // not atomic; a failed shard fails the call after the others have committed
+        List<List<BatchResponse>> shardResponses = shardRouter.onShards(byShard.keySet(),
+                shard -> shardRouter.inTransaction(() -> applyBatches(byShard.get(shard), now)));
+        for (List<BatchResponse> shardResponse : shardResponses) {
+            for (int b = 0; b < responses.size(); b++) {
+                BatchResponse response = responses.get(b);
+                BatchResponse part = shardResponse.get(b);
+                response.setAccepted(response.getAccepted() + part.getAccepted());
+                response.setDeduped(response.getDeduped() + part.getDeduped());
+                response.setUpdated(response.getUpdated() + part.getUpdated());
+                response.getRejections().addAll(part.getRejections());
+            }
+        }
+        for (BatchResponse response : responses) {
+            response.setRejected(response.getRejections().size());
+        }
+        return responses;
+    }
 
-        int accepted = 0, deduped = 0, updated = 0, rejected = 0;
+    // Shard each already stored eventId lives on, asking every shard for the ids the
+    // filter cannot rule out
+    private Map<String, Integer> storedHomes(Collection<String> eventIds) {
+        Map<String, Integer> homes = new HashMap<>();
+        List<String> lookup = new ArrayList<>();
+        eventIdFilter.maybePresent(eventIds, lookup);
+        if (lookup.isEmpty()) {
+            return homes;
+        }
+        List<Integer> shards = shardRouter.allShards();
+        List<List<String>> stored = shardRouter.onShards(shards, shard -> partitioned ?
+                partitionedEventStore.storedEventIds(lookup) : eventRepository.findEventIdsIn(lookup));
+        for (int i = 0; i < shards.size(); i++) {
+            for (String eventId : stored.get(i)) {
+                homes.put(eventId, shards.get(i));
+            }
+        }
+        return homes;
+    }
 
-        // Group by eventId for efficient processing
-        Map<String, EventRequest> eventMap = new HashMap<>();
-        for (EventRequest req : requests) {
-            eventMap.put(req.getEventId(), req);
+    private static List<List<EventRequest>> emptyBatches(int count) {
+        List<List<EventRequest>> batches = new ArrayList<>(count);
+        for (int b = 0; b < count; b++) {
+            batches.add(new ArrayList<>());
         }
+        return batches;
+    }
 
-        // Fetch existing events in bulk
-        List<String> eventIds = new ArrayList<>(eventMap.keySet());
-        Map<String, MachineEvent> existingEvents = eventRepository
-                .findByEventIdIn(eventIds)
-                .stream()
-                .collect(Collectors.toMap(MachineEvent::getEventId, e -> e));
+    // Must run inside a transaction on the shard the events belong to
+    private List<BatchResponse> applyBatches(List<List<EventRequest>> batches, Instant now) {
+        List<BatchResponse> responses = new ArrayList<>(batches.size());
+        for (List<EventRequest> batch : batches) {
+            responses.add(nativeUpsert ? processBatchNative(batch, now) : applyBatch(batch, now));
+        }
+        return responses;
+    }
 
-        List<MachineEvent> toSave = new ArrayList<>();
+    private BatchResponse applyBatch(List<EventRequest> requests, Instant now) {
+        BatchScratch scratch = requests.size() <= SCRATCH_MAX_EVENTS ? scratchPool.poll() : null;
+        if (scratch == null) {
+            scratch = new BatchScratch();
+        }
+        try {
+            return applyBatch(requests, now, scratch);
+        } finally {
+            // Cleared before reuse or not, so no entity outlives its batch
+            scratch.clear();
+            if (requests.size() <= SCRATCH_MAX_EVENTS) {
+                scratchPool.offer(scratch);
+            }
+        }
+    }
 
-        for (EventRequest request : requests) {
-            // Validation
-            String validationError = validateEvent(request);
+    private BatchResponse applyBatch(List<EventRequest> requests, Instant now, BatchScratch scratch) {
+        // Validation, before anything is looked up
+        long stageStart = metrics.start();
+        Instant latestEventTime = latestEventTime(now);
+        List<RejectionDetail> rejections = new ArrayList<>();
+        BitSet invalid = scratch.invalid;
+        for (int i = 0; i < requests.size(); i++) {
+            String validationError = validateEvent(requests.get(i), latestEventTime);
             if (validationError != null) {
-                rejections.add(new RejectionDetail(request.getEventId(), validationError));
-                rejected++;
+                invalid.set(i);
+                rejections.add(new RejectionDetail(requests.get(i).getEventId(), validationError));
+            }
+        }
+        metrics.record(EventMetrics.Stage.VALIDATE, stageStart);
+
+        // Retries of recently committed events are settled from memory
+        stageStart = metrics.start();
+        Set<String> settled = recentEventCache.settled(requests);
+
+        // Fetch existing events in bulk, skipping ids the filter knows were never written
+        Set<String> eventIds = scratch.eventIds;
+        for (int i = invalid.nextClearBit(0); i < requests.size(); i = invalid.nextClearBit(i + 1)) {
+            String eventId = requests.get(i).getEventId();
+            if (!settled.contains(eventId)) {
+                eventIds.add(eventId);
+            }
+        }
+        List<String> lookup = scratch.lookup;
+        eventIdFilter.maybePresent(eventIds, lookup);
+        Map<String, MachineEvent> existingEvents = scratch.existingEvents;
+        if (!lookup.isEmpty()) {
+            for (MachineEvent existing : eventRepository.findByEventIdIn(lookup)) {
+                existingEvents.put(existing.getEventId(), existing);
+            }
+        }
+        eventIdFilter.recordMisses(lookup.size() - existingEvents.size());
+        metrics.record(EventMetrics.Stage.LOOKUP, stageStart);
+
+        stageStart = metrics.start();
+        List<BatchPartition> partitions = partition(requests, invalid, existingEvents, settled, now, scratch);
+        if (partitions.size() == 1) {
+            processPartition(partitions.get(0));
+        } else {
+            // Partitions share no eventIds, so they can be diffed on the fork-join pool.
+            // Only entities are touched there; all database work stays on this thread.
+            partitions.parallelStream().forEach(this::processPartition);
+        }
+
+        // Merge into the first partition's results
+        BatchPartition first = partitions.get(0);
+        List<MachineEvent> toSave = first.toSave;
+        RollupDeltas rollupDeltas = first.rollupDeltas;
+        LiveDeltas liveDeltas = first.liveDeltas;
+        ColumnarDeltas columnarDeltas = first.columnarDeltas;
+        TouchedBuckets touched = first.touched;
+        int accepted = first.accepted, deduped = first.deduped, updated = first.updated;
+
+        for (BatchPartition partition : partitions.subList(1, partitions.size())) {
+            toSave.addAll(partition.toSave);
+            accepted += partition.accepted;
+            deduped += partition.deduped;
+            updated += partition.updated;
+            if (rollupDeltas != null) {
+                rollupDeltas.merge(partition.rollupDeltas);
+            }
+            if (liveDeltas != null) {
+                liveDeltas.merge(partition.liveDeltas);
+            }
+            if (columnarDeltas != null) {
+                columnarDeltas.merge(partition.columnarDeltas);
+            }
+            if (touched != null) {
+                touched.merge(partition.touched);
+            }
+        }
+        metrics.record(EventMetrics.Stage.DIFF, stageStart);
+
+        // Batch save. The filter learns the new ids first, so no batch that could see
+        // them committed ever skips their lookup. With JPA the INSERTs and UPDATEs are
+        // only flushed at commit, which events.ingest.batch includes.
+        stageStart = metrics.start();
+        if (!toSave.isEmpty()) {
+            if (eventIdFilter.isEnabled()) {
+                for (MachineEvent event : toSave) {
+                    eventIdFilter.add(event.getEventId());
+                }
+            }
+            recentEventCache.rememberAfterCommit(toSave);
+            eventRepository.saveAll(toSave);
+        }
+
+        applyDeltas(rollupDeltas, liveDeltas, columnarDeltas, touched);
+        metrics.record(EventMetrics.Stage.SAVE, stageStart);
+
+        BatchResponse response = new BatchResponse();
+        response.setAccepted(accepted);
+        response.setDeduped(deduped);
+        response.setUpdated(updated);
+        response.setRejected(rejections.size());
+        response.setRejections(rejections);
+
+        return response;
+    }
+
+    // One partition below the threshold, otherwise one per fork-join worker plus the
+    // calling thread. Every occurrence of an eventId lands in the same partition in
+    // batch order, so a later duplicate still sees the outcome of the earlier one.
+    // Invalid requests are already rejected and go nowhere.
+    private List<BatchPartition> partition(List<EventRequest> requests, BitSet invalid,
+                                           Map<String, MachineEvent> existingEvents, Set<String> settled,
+                                           Instant now, BatchScratch scratch) {
+        int count = parallelThreshold > 0 && requests.size() >= parallelThreshold ? parallelPartitions : 1;
+        if (count == 1) {
+            BatchPartition all = scratch.partition.reset(existingEvents, settled, now);
+            for (int i = invalid.nextClearBit(0); i < requests.size(); i = invalid.nextClearBit(i + 1)) {
+                all.requests.add(requests.get(i));
+            }
+            return List.of(all);
+        }
+
+        List<BatchPartition> partitions = new ArrayList<>(count);
+        for (int p = 0; p < count; p++) {
+            partitions.add(new BatchPartition().reset(new HashMap<>(), settled, now));
+        }
+        for (int i = invalid.nextClearBit(0); i < requests.size(); i = invalid.nextClearBit(i + 1)) {
+            EventRequest request = requests.get(i);
+            partitions.get(partitionOf(request.getEventId(), count)).requests.add(request);
+        }
+        for (MachineEvent existing : existingEvents.values()) {
+            BatchPartition partition = partitions.get(partitionOf(existing.getEventId(), count));
+            partition.existingEvents.put(existing.getEventId(), existing);
+        }
+        return partitions;
+    }
+
+    private static int partitionOf(String eventId, int count) {
+        int h = Objects.hashCode(eventId);
+        h ^= (h >>> 16);
+        return Math.floorMod(h, count);
+    }
+
+    private void processPartition(BatchPartition partition) {
+        RollupDeltas rollupDeltas = rollupService.isEnabled() ? new RollupDeltas() : null;
+        LiveDeltas liveDeltas = liveCounterService.isEnabled() ? new LiveDeltas() : null;
+        ColumnarDeltas columnarDeltas = columnarStore.isEnabled() ? new ColumnarDeltas() : null;
+        TouchedBuckets touched = tracksTouched() ? new TouchedBuckets() : null;
+        partition.rollupDeltas = rollupDeltas;
+        partition.liveDeltas = liveDeltas;
+        partition.columnarDeltas = columnarDeltas;
+        partition.touched = touched;
+        Map<String, MachineEvent> existingEvents = partition.existingEvents;
+        List<MachineEvent> toSave = partition.toSave;
+
+        for (EventRequest request : partition.requests) {
+            // A repeat of the committed event, without a lookup
+            if (partition.settled.contains(request.getEventId())) {
+                partition.deduped++;
                 continue;
             }
 
-            // Get lock for this eventId
-            Object lock = eventLocks.computeIfAbsent(request.getEventId(), k -> new Object());
+            // Get lock for this eventId, timing the wait only when someone else holds it
+            Lock lock = eventLocks.lockFor(request.getEventId());
 
-            synchronized (lock) {
+            if (!lock.tryLock()) {
+                long waitStart = System.nanoTime();
+                lock.lock();
+                metrics.recordLockWait(System.nanoTime() - waitStart);
+            }
+            try {
                 MachineEvent existing = existingEvents.get(request.getEventId());
 
                 if (existing == null) {
                     // New event
-                    MachineEvent newEvent = convertToEntity(request);
+                    MachineEvent newEvent = convertToEntity(request, partition.now);
                     toSave.add(newEvent);
                     existingEvents.put(request.getEventId(), newEvent);
-                    accepted++;
+                    if (rollupDeltas != null) {
+                        rollupDeltas.add(newEvent);
+                    }
+                    if (liveDeltas != null) {
+                        liveDeltas.add(newEvent);
+                    }
+                    if (columnarDeltas != null) {
+                        columnarDeltas.add(newEvent);
+                    }
+                    if (touched != null) {
+                        touched.add(newEvent);
+                    }
+                    partition.accepted++;
                 } else {
-                    // Check for duplicate or update
-                    MachineEvent incoming = convertToEntity(request);
-
-                    if (existing.hasSamePayload(incoming)) {
+                    // Check for duplicate or update against the request itself, comparing
+                    // payload hashes first; no entity is built for it
+                    long hash = payloadHash(request);
+                    if (existing.hasSamePayload(hash, request.getEventTime(),
+                            request.getMachineId(), request.getDurationMs(), defectCountOf(request),
+                            request.getLineId(), request.getFactoryId())) {
                         // Exact duplicate - ignore
-                        deduped++;
+                        partition.deduped++;
                     } else {
                         // Different payload - check receivedTime
-                        if (incoming.getReceivedTime().isAfter(existing.getReceivedTime())) {
-                            // Update the existing event
-                            updateEvent(existing, incoming);
+                        Instant receivedTime = receivedTimeOf(request, partition.now);
+                        if (receivedTime.isAfter(existing.getReceivedTime())) {
+                            // Update the existing event, moving its rollup contribution
+                            if (rollupDeltas != null) {
+                                rollupDeltas.subtract(existing);
+                            }
+                            if (liveDeltas != null) {
+                                liveDeltas.subtract(existing);
+                            }
+                            if (columnarDeltas != null) {
+                                columnarDeltas.subtract(existing);
+                            }
+                            if (touched != null) {
+                                touched.add(existing);
+                            }
+                            updateEvent(existing, request, receivedTime, hash);
+                            if (rollupDeltas != null) {
+                                rollupDeltas.add(existing);
+                            }
+                            if (liveDeltas != null) {
+                                liveDeltas.add(existing);
+                            }
+                            if (columnarDeltas != null) {
+                                columnarDeltas.add(existing);
+                            }
+                            if (touched != null) {
+                                touched.add(existing);
+                            }
                             toSave.add(existing);
-                            updated++;
+                            partition.updated++;
                         } else {
                             // Older receivedTime - ignore
-                            deduped++;
+                            partition.deduped++;
                         }
                     }
                 }
+            } finally {
+                lock.unlock();
             }
         }
+    }
 
-        // Batch save
-        if (!toSave.isEmpty()) {
-            eventRepository.saveAll(toSave);
+    // Same rules and counts as above, decided in SQL without loading any entities
+    private BatchResponse processBatchNative(List<EventRequest> requests, Instant now) {
+        long stageStart = metrics.start();
+        Instant latestEventTime = latestEventTime(now);
+        List<RejectionDetail> rejections = new ArrayList<>();
+        List<EventRequest> validRequests = new ArrayList<>(requests.size());
+        for (EventRequest request : requests) {
+            String validationError = validateEvent(request, latestEventTime);
+            if (validationError != null) {
+                rejections.add(new RejectionDetail(request.getEventId(), validationError));
+            } else {
+                validRequests.add(request);
+            }
         }
+        metrics.record(EventMetrics.Stage.VALIDATE, stageStart);
 
-        response.setAccepted(accepted);
-        response.setDeduped(deduped);
-        response.setUpdated(updated);
-        response.setRejected(rejected);
+        stageStart = metrics.start();
+        Set<String> settled = recentEventCache.settled(validRequests);
+        List<MachineEvent> valid = new ArrayList<>(validRequests.size());
+        int cachedDuplicates = 0;
+        for (EventRequest request : validRequests) {
+            if (settled.contains(request.getEventId())) {
+                cachedDuplicates++;
+            } else {
+                valid.add(convertToEntity(request, now));
+            }
+        }
+        metrics.record(EventMetrics.Stage.LOOKUP, stageStart);
+
+        // The filter is not consulted here, but the sharded router and jpa-mode batches
+        // on the same store rely on it knowing every written id before the commit
+        stageStart = metrics.start();
+        if (eventIdFilter.isEnabled()) {
+            for (MachineEvent event : valid) {
+                eventIdFilter.add(event.getEventId());
+            }
+        }
+        UpsertResult result;
+        if (valid.isEmpty()) {
+            result = new UpsertResult();
+        } else if (partitioned) {
+            result = partitionedEventStore.upsertBatch(valid);
+        } else {
+            result = eventRepository.upsertBatch(valid);
+        }
+
+        RollupDeltas rollupDeltas = rollupService.isEnabled() ? new RollupDeltas() : null;
+        LiveDeltas liveDeltas = liveCounterService.isEnabled() ? new LiveDeltas() : null;
+        ColumnarDeltas columnarDeltas = columnarStore.isEnabled() ? new ColumnarDeltas() : null;
+        TouchedBuckets touched = tracksTouched() ? new TouchedBuckets() : null;
+        List<MachineEvent> written = new ArrayList<>(result.getChanges().size());
+        for (UpsertResult.Change change : result.getChanges()) {
+            written.add(change.after());
+            if (change.before() != null) {
+                if (rollupDeltas != null) {
+                    rollupDeltas.subtract(change.before());
+                }
+                if (liveDeltas != null) {
+                    liveDeltas.subtract(change.before());
+                }
+                if (columnarDeltas != null) {
+                    columnarDeltas.subtract(change.before());
+                }
+                if (touched != null) {
+                    touched.add(change.before());
+                }
+            }
+            if (rollupDeltas != null) {
+                rollupDeltas.add(change.after());
+            }
+            if (liveDeltas != null) {
+                liveDeltas.add(change.after());
+            }
+            if (columnarDeltas != null) {
+                columnarDeltas.add(change.after());
+            }
+            if (touched != null) {
+                touched.add(change.after());
+            }
+        }
+
+        recentEventCache.rememberAfterCommit(written);
+        applyDeltas(rollupDeltas, liveDeltas, columnarDeltas, touched);
+        metrics.record(EventMetrics.Stage.SAVE, stageStart);
+
+        BatchResponse response = new BatchResponse();
+        response.setAccepted(result.getAccepted());
+        response.setDeduped(result.getDeduped() + cachedDuplicates);
+        response.setUpdated(result.getUpdated());
+        response.setRejected(rejections.size());
         response.setRejections(rejections);
 
         return response;
     }
 
-    private String validateEvent(EventRequest request) {
+    private void applyDeltas(RollupDeltas rollupDeltas, LiveDeltas liveDeltas, ColumnarDeltas columnarDeltas,
+                             TouchedBuckets touched) {
+        // Rollups commit or roll back together with the events
+        if (rollupDeltas != null && !rollupDeltas.isEmpty()) {
+            rollupService.apply(rollupDeltas);
+        }
+
+        // Live counters only change once the batch has committed
+        if (liveDeltas != null && !liveDeltas.isEmpty()) {
+            liveCounterService.applyAfterCommit(liveDeltas);
+        }
+
+        // So does the columnar copy, which keeps a row per event
+        if (columnarDeltas != null && !columnarDeltas.isEmpty()) {
+            columnarStore.applyAfterCommit(columnarDeltas);
+        }
+
+        // Cached stats for the machines, factories and hours written here go too,
+        // before their subscribers are pushed the new ones
+        if (touched != null && !touched.isEmpty()) {
+            if (statsCache.isEnabled()) {
+                statsCache.invalidateAfterCommit(touched);
+            }
+            subscriptions.notifyAfterCommit(touched);
+        }
+    }
+
+    private boolean tracksTouched() {
+        return statsCache.isEnabled() || subscriptions.hasSubscribers();
+    }
+
+    // Latest eventTime accepted in a batch received at now
+    static Instant latestEventTime(Instant now) {
+        return now.plusSeconds(FUTURE_TIME_THRESHOLD_MINUTES * 60);
+    }
+
+    String validateEvent(EventRequest request, Instant latestEventTime) {
         // Check duration
         if (request.getDurationMs() == null || request.getDurationMs() < 0) {
             return "INVALID_DURATION";
@@ -119,9 +631,7 @@ public class EventService {
         }
 
         // Check future eventTime
-        Instant now = Instant.now();
-        Instant maxFutureTime = now.plus(Duration.ofMinutes(FUTURE_TIME_THRESHOLD_MINUTES));
-        if (request.getEventTime().isAfter(maxFutureTime)) {
+        if (request.getEventTime().isAfter(latestEventTime)) {
             return "FUTURE_EVENT_TIME";
         }
 
@@ -139,32 +649,110 @@ public class EventService {
         return null; // Valid
     }
 
-    private MachineEvent convertToEntity(EventRequest request) {
+    MachineEvent convertToEntity(EventRequest request, Instant now) {
         MachineEvent event = new MachineEvent();
         event.setEventId(request.getEventId());
         event.setEventTime(request.getEventTime());
 
         // receivedTime is set by server
-        event.setReceivedTime(request.getReceivedTime() != null ?
-                request.getReceivedTime() : Instant.now());
+        event.setReceivedTime(receivedTimeOf(request, now));
 
         event.setMachineId(request.getMachineId());
         event.setDurationMs(request.getDurationMs());
-        event.setDefectCount(request.getDefectCount() != null ?
-                request.getDefectCount() : 0);
+        event.setDefectCount(defectCountOf(request));
         event.setLineId(request.getLineId());
         event.setFactoryId(request.getFactoryId());
+        event.refreshPayloadHash();
 
         return event;
     }
 
-    private void updateEvent(MachineEvent existing, MachineEvent incoming) {
-        existing.setEventTime(incoming.getEventTime());
-        existing.setReceivedTime(incoming.getReceivedTime());
-        existing.setMachineId(incoming.getMachineId());
-        existing.setDurationMs(incoming.getDurationMs());
-        existing.setDefectCount(incoming.getDefectCount());
-        existing.setLineId(incoming.getLineId());
-        existing.setFactoryId(incoming.getFactoryId());
+    // The hash convertToEntity would store, without building the entity
+    static long payloadHash(EventRequest request) {
+        return MachineEvent.payloadHash(request.getEventTime(), request.getMachineId(), request.getDurationMs(),
+                defectCountOf(request), request.getLineId(), request.getFactoryId());
+    }
+
+    private static int defectCountOf(EventRequest request) {
+        return request.getDefectCount() != null ? request.getDefectCount() : 0;
+    }
+
+    private static void truncateToMillis(EventRequest request) {
+        if (request.getEventTime() != null) {
+            request.setEventTime(request.getEventTime().truncatedTo(ChronoUnit.MILLIS));
+        }
+        if (request.getReceivedTime() != null) {
+            request.setReceivedTime(request.getReceivedTime().truncatedTo(ChronoUnit.MILLIS));
+        }
+    }
+
+    private static Instant receivedTimeOf(EventRequest request, Instant now) {
+        return request.getReceivedTime() != null ? request.getReceivedTime() : now;
+    }
+
+    private void updateEvent(MachineEvent existing, EventRequest request, Instant receivedTime, long payloadHash) {
+        existing.setEventTime(request.getEventTime());
+        existing.setReceivedTime(receivedTime);
+        existing.setMachineId(request.getMachineId());
+        existing.setDurationMs(request.getDurationMs());
+        existing.setDefectCount(defectCountOf(request));
+        existing.setLineId(request.getLineId());
+        existing.setFactoryId(request.getFactoryId());
+        existing.setPayloadHash(payloadHash);
+    }
+
+    // The valid slice of a batch one thread diffs, and what it found
+    private static final class BatchPartition {
+
+        final List<EventRequest> requests = new ArrayList<>();
+        final List<MachineEvent> toSave = new ArrayList<>();
+        Map<String, MachineEvent> existingEvents;
+        Set<String> settled;
+        Instant now;
+        RollupDeltas rollupDeltas;
+        LiveDeltas liveDeltas;
+        ColumnarDeltas columnarDeltas;
+        TouchedBuckets touched;
+        int accepted, deduped, updated;
+
+        BatchPartition reset(Map<String, MachineEvent> existingEvents, Set<String> settled, Instant now) {
+            clear();
+            this.existingEvents = existingEvents;
+            this.settled = settled;
+            this.now = now;
+            return this;
+        }
+
+        void clear() {
+            requests.clear();
+            toSave.clear();
+            existingEvents = null;
+            settled = null;
+            now = null;
+            rollupDeltas = null;
+            liveDeltas = null;
+            columnarDeltas = null;
+            touched = null;
+            accepted = deduped = updated = 0;
+        }
+    }
+
+    // Working collections of one jpa-mode batch, taken from scratchPool and cleared
+    // after use, so a steady stream of batches does not allocate them again
+    private static final class BatchScratch {
+
+        final BitSet invalid = new BitSet();
+        final Set<String> eventIds = new HashSet<>();
+        final List<String> lookup = new ArrayList<>();
+        final Map<String, MachineEvent> existingEvents = new HashMap<>();
+        final BatchPartition partition = new BatchPartition();
+
+        void clear() {
+            invalid.clear();
+            eventIds.clear();
+            lookup.clear();
+            existingEvents.clear();
+            partition.clear();
+        }
     }
-}
\ No newline at end of file
+}
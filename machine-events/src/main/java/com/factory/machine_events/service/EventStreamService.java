@@ -0,0 +1,196 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.RejectionDetail;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.core.JacksonException;
+import tools.jackson.databind.ObjectMapper;
+import tools.jackson.databind.ObjectReader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+@Service
+public class EventStreamService {
+
+    private final EventService eventService;
+    private final ObjectReader eventReader;
+    private final int chunkSize;
+    private final int maxLineBytes;
+
+    public EventStreamService(EventService eventService,
+                              ObjectMapper objectMapper,
+                              @Value("${events.stream.chunk-size:1000}") int chunkSize,
+                              @Value("${events.stream.max-line-length:64KB}") DataSize maxLineLength) {
+        if (maxLineLength.toBytes() < 1 || maxLineLength.toBytes() > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("max-line-length out of range: " + maxLineLength);
+        }
+        this.eventService = eventService;
+        this.eventReader = objectMapper.readerFor(EventRequest.class);
+        this.chunkSize = chunkSize;
+        this.maxLineBytes = (int) maxLineLength.toBytes();
+    }
+
+    // Reads newline-delimited JSON events one line at a time and commits them in
+    // chunks of chunkSize, each chunk in its own processBatch transaction.
+    // Only one chunk and one line of at most maxLineBytes are held in memory at any
+    // time; lines are parsed from their UTF-8 bytes without decoding them to Strings.
+    // A line that is not an event is rejected as MALFORMED_EVENT, and a longer one as
+    // EVENT_TOO_LARGE without buffering the rest of it, on its own: the lines after
+    // it are still read.
+    public BatchResponse processStream(InputStream body) {
+        BatchResponse total = new BatchResponse();
+        total.setRejections(new ArrayList<>());
+
+        List<EventRequest> chunk = new ArrayList<>(chunkSize);
+
+        try (body) {
+            LineReader lines = new LineReader(body, maxLineBytes);
+            while (lines.next()) {
+                if (lines.isBlank()) {
+                    continue;
+                }
+                if (lines.isTooLong()) {
+                    total.getRejections().add(new RejectionDetail(null, "EVENT_TOO_LARGE"));
+                    total.setRejected(total.getRejected() + 1);
+                    continue;
+                }
+                EventRequest event = parse(lines);
+                if (event == null) {
+                    total.getRejections().add(new RejectionDetail(null, "MALFORMED_EVENT"));
+                    total.setRejected(total.getRejected() + 1);
+                    continue;
+                }
+                chunk.add(event);
+                if (chunk.size() >= chunkSize) {
+                    processChunk(chunk, total);
+                    chunk.clear();
+                }
+            }
+        } catch (IOException e) {
+            // The client went away; chunks committed so far are kept
+            throw new UncheckedIOException(e);
+        }
+
+        if (!chunk.isEmpty()) {
+            processChunk(chunk, total);
+        }
+
+        return total;
+    }
+
+    private EventRequest parse(LineReader line) {
+        try {
+            return eventReader.readValue(line.bytes, 0, line.length);
+        } catch (JacksonException e) {
+            return null;
+        }
+    }
+
+    private void processChunk(List<EventRequest> chunk, BatchResponse total) {
+        // Set receivedTime on server, same as the batch endpoint
+        Instant now = Instant.now();
+        for (EventRequest event : chunk) {
+            if (event.getReceivedTime() == null) {
+                event.setReceivedTime(now);
+            }
+        }
+
+        BatchResponse response = eventService.processBatch(chunk);
+
+        total.setAccepted(total.getAccepted() + response.getAccepted());
+        total.setDeduped(total.getDeduped() + response.getDeduped());
+        total.setUpdated(total.getUpdated() + response.getUpdated());
+        total.setRejected(total.getRejected() + response.getRejected());
+        total.getRejections().addAll(response.getRejections());
+    }
+
+    // Splits the body on '\n' through one read buffer. A line is kept only up to
+    // maxLength bytes; the rest of a longer one is skipped, not buffered.
+    private static final class LineReader {
+
+        private final InputStream in;
+        private final int maxLength;
+        private final byte[] buffer = new byte[8192];
+        private int position;
+        private int limit;
+
+        private byte[] bytes = new byte[1024];
+        private int length;
+        private boolean tooLong;
+
+        LineReader(InputStream in, int maxLength) {
+            this.in = in;
+            this.maxLength = maxLength;
+        }
+
+        // Moves to the next line, without its terminator; false at the end of the body
+        boolean next() throws IOException {
+            length = 0;
+            tooLong = false;
+            boolean started = false;
+            while (true) {
+                if (position == limit) {
+                    int n = in.read(buffer, 0, buffer.length);
+                    if (n < 0) {
+                        return started;
+                    }
+                    position = 0;
+                    limit = n;
+                    continue;
+                }
+                started = true;
+                int start = position;
+                while (position < limit && buffer[position] != '\n') {
+                    position++;
+                }
+                append(start, position - start);
+                if (position < limit) {
+                    position++;
+                    return true;
+                }
+            }
+        }
+
+        boolean isTooLong() {
+            return tooLong;
+        }
+
+        // Only JSON whitespace, which includes the '\r' of a CRLF line end
+        boolean isBlank() {
+            if (tooLong) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                byte b = bytes[i];
+                if (b != ' ' && b != '\t' && b != '\r') {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void append(int offset, int count) {
+            if (tooLong || count == 0) {
+                return;
+            }
+            if (count > maxLength - length) {
+                tooLong = true;
+                return;
+            }
+            if (length + count > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.min(maxLength, Math.max(length + count, bytes.length * 2)));
+            }
+            System.arraycopy(buffer, offset, bytes, length, count);
+            length += count;
+        }
+    }
+}
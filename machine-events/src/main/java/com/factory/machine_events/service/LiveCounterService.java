@@ -0,0 +1,161 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// In-memory per-minute counters for the most recent horizonMinutes of every machine.
+// EventService hands over its deltas after commit, StatsService answers whole
+// minutes from here when the window lies inside the horizon.
+@Service
+public class LiveCounterService implements SmartInitializingSingleton {
+
+    private static final long SECONDS_PER_MINUTE = 60;
+
+    // EventService accepts eventTimes up to 15 minutes ahead, plus the current minute
+    static final long FUTURE_MINUTES = 16;
+
+    // Worst case per slot: one reference plus one populated bucket
+    static final long BYTES_PER_SLOT = 40;
+
+    private static final String EPOCH_MINUTE_OF_EVENT =
+            "CAST(FLOOR(EXTRACT(EPOCH FROM event_time) / 60) AS BIGINT)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final ShardRouter shardRouter;
+    private final PartitionedEventStore partitionedEventStore;
+    private final boolean enabled;
+    private final long horizonMinutes;
+    private final int slots;
+    private final int maxMachines;
+
+    private final Map<String, MinuteRing> rings = new ConcurrentHashMap<>();
+    // Only ever grows, so a machine turned away once is never tracked with gaps later
+    private final AtomicInteger admitted = new AtomicInteger();
+
+    public LiveCounterService(JdbcTemplate jdbcTemplate,
+                              ShardRouter shardRouter,
+                              PartitionedEventStore partitionedEventStore,
+                              @Value("${events.live.enabled:false}") boolean enabled,
+                              @Value("${events.live.horizon-minutes:1440}") long horizonMinutes,
+                              @Value("${events.live.memory-budget-mb:64}") long memoryBudgetMb) {
+        if (horizonMinutes < 1) {
+            throw new IllegalArgumentException("horizon-minutes must be positive: " + horizonMinutes);
+        }
+        this.jdbcTemplate = jdbcTemplate;
+        this.shardRouter = shardRouter;
+        this.partitionedEventStore = partitionedEventStore;
+        this.enabled = enabled;
+        this.horizonMinutes = horizonMinutes;
+        this.slots = Math.toIntExact(horizonMinutes + FUTURE_MINUTES + 1);
+        this.maxMachines = (int) Math.min(Integer.MAX_VALUE, memoryBudgetMb * 1024 * 1024 / (slots * BYTES_PER_SLOT));
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public int maxMachines() {
+        return maxMachines;
+    }
+
+    public static long epochMinute(Instant time) {
+        return Math.floorDiv(time.getEpochSecond(), SECONDS_PER_MINUTE);
+    }
+
+    public static Instant minuteStart(long epochMinute) {
+        return Instant.ofEpochSecond(epochMinute * SECONDS_PER_MINUTE);
+    }
+
+    // Load the horizon from raw events at startup, before any request can be served,
+    // adding up every shard
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        long oldest = epochMinute(Instant.now()) - horizonMinutes;
+        shardRouter.onShards(shardRouter.allShards(), shard -> {
+            load(oldest);
+            return null;
+        });
+    }
+
+    private void load(long oldest) {
+        jdbcTemplate.query(
+                "SELECT m.name, " + EPOCH_MINUTE_OF_EVENT + ", COUNT(*), " +
+                "SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END) " +
+                "FROM " + partitionedEventStore.allEvents() + " JOIN dimensions m ON m.id = machine_id " +
+                "WHERE event_time >= ? GROUP BY m.name, " + EPOCH_MINUTE_OF_EVENT,
+                (RowCallbackHandler) rs -> add(rs.getString(1), rs.getLong(2), rs.getLong(3), rs.getLong(4)),
+                minuteStart(oldest).atOffset(ZoneOffset.UTC));
+    }
+
+    // Counters must never see a batch that rolls back, so inside a transaction the
+    // deltas are held until it commits
+    public void applyAfterCommit(LiveDeltas deltas) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            apply(deltas);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                apply(deltas);
+            }
+        });
+    }
+
+    public void apply(LiveDeltas deltas) {
+        for (Map.Entry<LiveDeltas.MachineMinute, long[]> entry : deltas.getDeltas().entrySet()) {
+            long[] delta = entry.getValue();
+            if (delta[0] == 0 && delta[1] == 0) {
+                continue;
+            }
+            LiveDeltas.MachineMinute key = entry.getKey();
+            add(key.machineId(), key.epochMinute(), delta[0], delta[1]);
+        }
+    }
+
+    // {eventCount, defectSum} for whole minutes [fromMinute, toMinute), or null when
+    // the machine is not tracked or the range reaches outside the horizon
+    public long[] machineTotals(String machineId, long fromMinute, long toMinute) {
+        if (!enabled || fromMinute >= toMinute) {
+            return null;
+        }
+        long now = epochMinute(Instant.now());
+        if (fromMinute < now - horizonMinutes || toMinute > now + FUTURE_MINUTES) {
+            return null;
+        }
+        MinuteRing ring = rings.get(machineId);
+        return ring != null ? ring.totals(fromMinute, toMinute) : null;
+    }
+
+    private void add(String machineId, long epochMinute, long events, long defects) {
+        // Minutes already past the horizon can never be queried from here
+        if (epochMinute < epochMinute(Instant.now()) - horizonMinutes) {
+            return;
+        }
+        MinuteRing ring = rings.get(machineId);
+        if (ring == null) {
+            ring = rings.computeIfAbsent(machineId,
+                    k -> admitted.incrementAndGet() <= maxMachines ? new MinuteRing(slots) : null);
+            if (ring == null) {
+                return;
+            }
+        }
+        ring.add(epochMinute, events, defects);
+    }
+}
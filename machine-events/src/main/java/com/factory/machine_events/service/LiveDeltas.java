@@ -0,0 +1,54 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.model.MachineEvent;
+
+import java.util.HashMap;
+import java.util.Map;
+
+// Net live counter changes produced by one processBatch call, applied once the
+// batch has committed
+public class LiveDeltas {
+
+    private final Map<MachineMinute, long[]> deltas = new HashMap<>();
+
+    public void add(MachineEvent event) {
+        accumulate(event, 1);
+    }
+
+    public void subtract(MachineEvent event) {
+        accumulate(event, -1);
+    }
+
+    // Folds in the deltas of another slice of the same batch
+    public void merge(LiveDeltas other) {
+        other.deltas.forEach((key, delta) -> {
+            long[] into = deltas.computeIfAbsent(key, k -> new long[2]);
+            into[0] += delta[0];
+            into[1] += delta[1];
+        });
+    }
+
+    public boolean isEmpty() {
+        return deltas.isEmpty();
+    }
+
+    // Values are {eventCount delta, defectSum delta}
+    public Map<MachineMinute, long[]> getDeltas() {
+        return deltas;
+    }
+
+    private void accumulate(MachineEvent event, int sign) {
+        // defectCount = -1 means unknown and never counts towards defect totals
+        long defects = event.getDefectCount() != null && event.getDefectCount() >= 0 ?
+                event.getDefectCount() : 0;
+
+        long[] delta = deltas.computeIfAbsent(
+                new MachineMinute(event.getMachineId(), LiveCounterService.epochMinute(event.getEventTime())),
+                k -> new long[2]);
+        delta[0] += sign;
+        delta[1] += sign * defects;
+    }
+
+    public record MachineMinute(String machineId, long epochMinute) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.factory.machine_events.service;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// One lock per key ever seen, never pruned: the lock table EventService had before
+// StripedLocks. Kept only so events.lock.strategy=map can measure the difference.
+public class LockMap implements LockTable {
+
+    private final ConcurrentHashMap<String, Lock> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public Lock lockFor(String key) {
+        return locks.computeIfAbsent(key, k -> new ReentrantLock());
+    }
+}
@@ -0,0 +1,9 @@
+package com.factory.machine_events.service;
+
+import java.util.concurrent.locks.Lock;
+
+// Where EventService finds the lock for an eventId; see StripedLocks and LockMap
+public interface LockTable {
+
+    Lock lockFor(String key);
+}
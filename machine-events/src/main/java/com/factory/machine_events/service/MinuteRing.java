@@ -0,0 +1,73 @@
+package com.factory.machine_events.service;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+// Per-minute event and defect counts for one machine, one slot per minute. Writers
+// never block: a slot still holding an older minute is swapped for a fresh bucket
+// by CAS, and counts are added atomically. A minute older than the one already in
+// its slot has fallen out of the ring and is dropped.
+public class MinuteRing {
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public MinuteRing(int slots) {
+        if (slots < 1) {
+            throw new IllegalArgumentException("slots must be positive: " + slots);
+        }
+        this.buckets = new AtomicReferenceArray<>(slots);
+    }
+
+    public void add(long epochMinute, long events, long defects) {
+        int slot = slot(epochMinute);
+        while (true) {
+            Bucket bucket = buckets.get(slot);
+            if (bucket != null && bucket.minute == epochMinute) {
+                Bucket.EVENTS.addAndGet(bucket, events);
+                Bucket.DEFECTS.addAndGet(bucket, defects);
+                return;
+            }
+            if (bucket != null && bucket.minute > epochMinute) {
+                return;
+            }
+            buckets.compareAndSet(slot, bucket, new Bucket(epochMinute));
+        }
+    }
+
+    // {eventCount, defectSum} for minutes [fromMinute, toMinute)
+    public long[] totals(long fromMinute, long toMinute) {
+        long[] totals = new long[2];
+        for (long minute = fromMinute; minute < toMinute; minute++) {
+            Bucket bucket = buckets.get(slot(minute));
+            if (bucket != null && bucket.minute == minute) {
+                totals[0] += bucket.events;
+                totals[1] += bucket.defects;
+            }
+        }
+        return totals;
+    }
+
+    public int slots() {
+        return buckets.length();
+    }
+
+    private int slot(long epochMinute) {
+        return (int) Math.floorMod(epochMinute, (long) buckets.length());
+    }
+
+    private static final class Bucket {
+
+        static final AtomicLongFieldUpdater<Bucket> EVENTS =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "events");
+        static final AtomicLongFieldUpdater<Bucket> DEFECTS =
+                AtomicLongFieldUpdater.newUpdater(Bucket.class, "defects");
+
+        final long minute;
+        volatile long events;
+        volatile long defects;
+
+        Bucket(long minute) {
+            this.minute = minute;
+        }
+    }
+}
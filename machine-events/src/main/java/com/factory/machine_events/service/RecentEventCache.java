@@ -0,0 +1,258 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.repository.DimensionDictionary;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Committed payload and receivedTime of recently written events, so retries that are
+// plain duplicates are settled without a lookup. Entries are forgotten as soon as a
+// batch writes an eventId and come back only once it commits, so a rolled-back batch
+// leaves nothing behind and a reader never sees state the database does not have
+// yet. Each segment is an LRU bounded by its share of the memory budget. Machine,
+// line and factory ids are kept as DimensionDictionary keys, so a matching
+// fingerprint is confirmed field by field like hasSamePayload does.
+@Service
+public class RecentEventCache {
+
+    // Dimension keys are positive; 0 stands for a null id
+    private record Entry(long fingerprint, Instant receivedTime, Instant eventTime, long durationMs,
+                         int defectCount, int machine, int line, int factory) {
+    }
+
+    private static final int SEGMENTS = 64;
+
+    // String header and latin-1 chars, the entry record with its eventTime, and its
+    // LinkedHashMap node
+    private static final long BYTES_PER_ENTRY = 160;
+
+    private final DimensionDictionary dimensions;
+
+    private final boolean enabled;
+    private final long budgetPerSegment;
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public RecentEventCache(DimensionDictionary dimensions,
+                            @Value("${events.recent-cache.enabled:false}") boolean enabled,
+                            @Value("${events.recent-cache.memory-budget-mb:32}") long memoryBudgetMb) {
+        if (memoryBudgetMb < 1) {
+            throw new IllegalArgumentException("memory-budget-mb must be positive: " + memoryBudgetMb);
+        }
+        this.dimensions = dimensions;
+        this.enabled = enabled;
+        this.budgetPerSegment = memoryBudgetMb * 1024 * 1024 / SEGMENTS;
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    // eventIds whose every occurrence in the batch is a duplicate of the committed
+    // event, by identical payload or a receivedTime no newer than the stored one
+    public Set<String> settled(List<EventRequest> requests) {
+        if (!enabled) {
+            return Set.of();
+        }
+        Map<String, Boolean> duplicates = new HashMap<>();
+        for (EventRequest request : requests) {
+            String eventId = request.getEventId();
+            if (eventId == null || Boolean.FALSE.equals(duplicates.get(eventId))) {
+                continue;
+            }
+            Entry cached = segment(eventId).get(eventId);
+            boolean duplicate = cached != null && (samePayload(cached, request)
+                    || request.getReceivedTime() != null && !request.getReceivedTime().isAfter(cached.receivedTime()));
+            duplicates.put(eventId, duplicate);
+        }
+
+        Set<String> settled = new HashSet<>();
+        for (Map.Entry<String, Boolean> entry : duplicates.entrySet()) {
+            if (entry.getValue()) {
+                settled.add(entry.getKey());
+            }
+        }
+        hits.add(settled.size());
+        misses.add(duplicates.size() - settled.size());
+        return settled;
+    }
+
+    // Called with the events a batch is about to write, inside its transaction. They are
+    // forgotten now and remembered with the written state once the batch commits.
+    public void rememberAfterCommit(Collection<MachineEvent> written) {
+        if (!enabled || written.isEmpty()) {
+            return;
+        }
+        Map<String, Entry> entries = new HashMap<>();
+        for (MachineEvent event : written) {
+            segment(event.getEventId()).remove(event.getEventId());
+            entries.put(event.getEventId(), new Entry(event.getPayloadHash(), event.getReceivedTime(),
+                    event.getEventTime(), event.getDurationMs(), event.getDefectCount(),
+                    keyOf(event.getMachineId()), keyOf(event.getLineId()), keyOf(event.getFactoryId())));
+        }
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            putAll(entries);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                putAll(entries);
+            }
+        });
+    }
+
+    // For changes that are not tied to a batch, such as retention dropping events
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    public long size() {
+        long size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    // An id without a key yet was never stored, so it matches no entry
+    private boolean samePayload(Entry cached, EventRequest request) {
+        return cached.fingerprint() == EventService.payloadHash(request)
+                && cached.eventTime().equals(request.getEventTime())
+                && request.getDurationMs() != null && cached.durationMs() == request.getDurationMs()
+                && cached.defectCount() == (request.getDefectCount() != null ? request.getDefectCount() : 0)
+                && cached.machine() == foundKey(request.getMachineId())
+                && cached.line() == foundKey(request.getLineId())
+                && cached.factory() == foundKey(request.getFactoryId());
+    }
+
+    private int keyOf(String name) {
+        Integer key = dimensions.key(name);
+        return key != null ? key : 0;
+    }
+
+    private int foundKey(String name) {
+        if (name == null) {
+            return 0;
+        }
+        Integer key = dimensions.find(name);
+        return key != null ? key : -1;
+    }
+
+    private void putAll(Map<String, Entry> entries) {
+        for (Map.Entry<String, Entry> entry : entries.entrySet()) {
+            segment(entry.getKey()).put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private Segment segment(String eventId) {
+        int h = eventId.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & (SEGMENTS - 1)];
+    }
+
+    private final class Segment {
+
+        private final ReentrantLock lock = new ReentrantLock();
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long bytes;
+
+        Entry get(String eventId) {
+            lock.lock();
+            try {
+                return entries.get(eventId);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // A commit that finishes late never replaces a newer state, since updates only
+        // ever move receivedTime forward
+        void put(String eventId, Entry entry) {
+            lock.lock();
+            try {
+                Entry current = entries.get(eventId);
+                if (current != null && current.receivedTime().isAfter(entry.receivedTime())) {
+                    return;
+                }
+                if (entries.put(eventId, entry) == null) {
+                    bytes += BYTES_PER_ENTRY + eventId.length();
+                }
+                Iterator<Map.Entry<String, Entry>> eldest = entries.entrySet().iterator();
+                while (bytes > budgetPerSegment && eldest.hasNext()) {
+                    String evicted = eldest.next().getKey();
+                    eldest.remove();
+                    bytes -= BYTES_PER_ENTRY + evicted.length();
+                    evictions.increment();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void remove(String eventId) {
+            lock.lock();
+            try {
+                if (entries.remove(eventId) != null) {
+                    bytes -= BYTES_PER_ENTRY + eventId.length();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() {
+            lock.lock();
+            try {
+                entries.clear();
+                bytes = 0;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        int size() {
+            lock.lock();
+            try {
+                return entries.size();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
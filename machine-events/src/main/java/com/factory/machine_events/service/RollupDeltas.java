@@ -0,0 +1,85 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.model.MachineEvent;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+// Net rollup changes produced by one processBatch call. Keys are kept sorted so
+// concurrent transactions always touch rollup rows in the same order.
+public class RollupDeltas {
+
+    private final Map<MachineHour, long[]> machineDeltas = new TreeMap<>();
+    private final Map<LineHour, long[]> lineDeltas = new TreeMap<>();
+
+    public void add(MachineEvent event) {
+        accumulate(event, 1);
+    }
+
+    public void subtract(MachineEvent event) {
+        accumulate(event, -1);
+    }
+
+    // Folds in the deltas of another slice of the same batch
+    public void merge(RollupDeltas other) {
+        other.machineDeltas.forEach((key, delta) ->
+                sum(machineDeltas.computeIfAbsent(key, k -> new long[2]), delta));
+        other.lineDeltas.forEach((key, delta) ->
+                sum(lineDeltas.computeIfAbsent(key, k -> new long[2]), delta));
+    }
+
+    public boolean isEmpty() {
+        return machineDeltas.isEmpty() && lineDeltas.isEmpty();
+    }
+
+    // Values are {eventCount delta, defectSum delta}
+    public Map<MachineHour, long[]> getMachineDeltas() {
+        return machineDeltas;
+    }
+
+    public Map<LineHour, long[]> getLineDeltas() {
+        return lineDeltas;
+    }
+
+    private void accumulate(MachineEvent event, int sign) {
+        long hour = RollupService.epochHour(event.getEventTime());
+        // defectCount = -1 means unknown and never counts towards defect totals
+        long defects = event.getDefectCount() != null && event.getDefectCount() >= 0 ?
+                event.getDefectCount() : 0;
+
+        long[] machine = machineDeltas.computeIfAbsent(
+                new MachineHour(event.getMachineId(), hour), k -> new long[2]);
+        machine[0] += sign;
+        machine[1] += sign * defects;
+
+        // Top defect lines only ever look at events with both a factory and a line
+        if (event.getFactoryId() != null && event.getLineId() != null) {
+            long[] line = lineDeltas.computeIfAbsent(
+                    new LineHour(event.getFactoryId(), event.getLineId(), hour), k -> new long[2]);
+            line[0] += sign;
+            line[1] += sign * defects;
+        }
+    }
+
+    private static void sum(long[] into, long[] delta) {
+        into[0] += delta[0];
+        into[1] += delta[1];
+    }
+
+    public record MachineHour(String machineId, long epochHour) implements Comparable<MachineHour> {
+        @Override
+        public int compareTo(MachineHour o) {
+            int c = machineId.compareTo(o.machineId);
+            return c != 0 ? c : Long.compare(epochHour, o.epochHour);
+        }
+    }
+
+    public record LineHour(String factoryId, String lineId, long epochHour) implements Comparable<LineHour> {
+        @Override
+        public int compareTo(LineHour o) {
+            int c = factoryId.compareTo(o.factoryId);
+            if (c == 0) c = lineId.compareTo(o.lineId);
+            return c != 0 ? c : Long.compare(epochHour, o.epochHour);
+        }
+    }
+}
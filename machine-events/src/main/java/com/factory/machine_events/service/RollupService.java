@@ -0,0 +1,168 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.repository.LineRollupRepository;
+import com.factory.machine_events.repository.MachineRollupRepository;
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Hourly per-machine and per-line rollups. EventService applies its deltas in the
+// same transaction as the event writes, StatsService reads whole hours from here.
+@Service
+public class RollupService implements SmartInitializingSingleton {
+
+    private static final long SECONDS_PER_HOUR = 3600;
+
+    private static final String INCREMENT_MACHINE =
+            "UPDATE machine_hourly_rollups SET event_count = event_count + ?, defect_sum = defect_sum + ? " +
+            "WHERE machine_id = ? AND epoch_hour = ?";
+    private static final String INSERT_MACHINE =
+            "INSERT INTO machine_hourly_rollups (event_count, defect_sum, machine_id, epoch_hour) " +
+            "VALUES (?, ?, ?, ?)";
+    private static final String INCREMENT_LINE =
+            "UPDATE line_hourly_rollups SET event_count = event_count + ?, defect_sum = defect_sum + ? " +
+            "WHERE factory_id = ? AND line_id = ? AND epoch_hour = ?";
+    private static final String INSERT_LINE =
+            "INSERT INTO line_hourly_rollups (event_count, defect_sum, factory_id, line_id, epoch_hour) " +
+            "VALUES (?, ?, ?, ?, ?)";
+
+    private static final String EPOCH_HOUR_OF_EVENT =
+            "CAST(FLOOR(EXTRACT(EPOCH FROM event_time) / 3600) AS BIGINT)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final MachineRollupRepository machineRollupRepository;
+    private final LineRollupRepository lineRollupRepository;
+    private final ShardRouter shardRouter;
+    private final PartitionedEventStore partitionedEventStore;
+    private final boolean enabled;
+
+    public RollupService(JdbcTemplate jdbcTemplate,
+                         MachineRollupRepository machineRollupRepository,
+                         LineRollupRepository lineRollupRepository,
+                         ShardRouter shardRouter,
+                         PartitionedEventStore partitionedEventStore,
+                         @Value("${events.rollup.enabled:false}") boolean enabled) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.machineRollupRepository = machineRollupRepository;
+        this.lineRollupRepository = lineRollupRepository;
+        this.shardRouter = shardRouter;
+        this.partitionedEventStore = partitionedEventStore;
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public static long epochHour(Instant time) {
+        return Math.floorDiv(time.getEpochSecond(), SECONDS_PER_HOUR);
+    }
+
+    public static Instant hourStart(long epochHour) {
+        return Instant.ofEpochSecond(epochHour * SECONDS_PER_HOUR);
+    }
+
+    // Rebuild from raw events at startup, before any request can be served, so
+    // enabling rollups on an existing database starts from correct totals. Every
+    // shard keeps the rollups of its own events.
+    @Override
+    public void afterSingletonsInstantiated() {
+        if (!enabled) {
+            return;
+        }
+        shardRouter.onShards(shardRouter.allShards(), shard -> {
+            rebuild();
+            return null;
+        });
+    }
+
+    // Events store dimension keys and rollups keep the ids, so the rebuild joins the
+    // dimensions table; the inner joins also leave out events without a line or factory
+    private void rebuild() {
+        String events = partitionedEventStore.allEvents();
+        jdbcTemplate.update("DELETE FROM machine_hourly_rollups");
+        jdbcTemplate.update("DELETE FROM line_hourly_rollups");
+        jdbcTemplate.update(
+                "INSERT INTO machine_hourly_rollups (machine_id, epoch_hour, event_count, defect_sum) " +
+                "SELECT m.name, " + EPOCH_HOUR_OF_EVENT + ", COUNT(*), " +
+                "SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END) " +
+                "FROM " + events + " JOIN dimensions m ON m.id = machine_id " +
+                "GROUP BY m.name, " + EPOCH_HOUR_OF_EVENT);
+        jdbcTemplate.update(
+                "INSERT INTO line_hourly_rollups (factory_id, line_id, epoch_hour, event_count, defect_sum) " +
+                "SELECT f.name, l.name, " + EPOCH_HOUR_OF_EVENT + ", COUNT(*), " +
+                "SUM(CASE WHEN defect_count >= 0 THEN defect_count ELSE 0 END) " +
+                "FROM " + events + " JOIN dimensions f ON f.id = factory_id " +
+                "JOIN dimensions l ON l.id = line_id " +
+                "GROUP BY f.name, l.name, " + EPOCH_HOUR_OF_EVENT);
+    }
+
+    // Forgets every hour before toHour on the current shard, once retention has dropped
+    // the events behind them
+    public void dropBefore(long toHour) {
+        jdbcTemplate.update("DELETE FROM machine_hourly_rollups WHERE epoch_hour < ?", toHour);
+        jdbcTemplate.update("DELETE FROM line_hourly_rollups WHERE epoch_hour < ?", toHour);
+    }
+
+    // Must run inside the caller's transaction. JdbcTemplate is used rather than
+    // repository methods so a lost insert race can be retried without marking the
+    // whole ingest transaction rollback-only.
+    public void apply(RollupDeltas deltas) {
+        for (Map.Entry<RollupDeltas.MachineHour, long[]> entry : deltas.getMachineDeltas().entrySet()) {
+            long[] delta = entry.getValue();
+            if (delta[0] == 0 && delta[1] == 0) {
+                continue;
+            }
+            RollupDeltas.MachineHour key = entry.getKey();
+            upsert(INCREMENT_MACHINE, INSERT_MACHINE,
+                    delta[0], delta[1], key.machineId(), key.epochHour());
+        }
+        for (Map.Entry<RollupDeltas.LineHour, long[]> entry : deltas.getLineDeltas().entrySet()) {
+            long[] delta = entry.getValue();
+            if (delta[0] == 0 && delta[1] == 0) {
+                continue;
+            }
+            RollupDeltas.LineHour key = entry.getKey();
+            upsert(INCREMENT_LINE, INSERT_LINE,
+                    delta[0], delta[1], key.factoryId(), key.lineId(), key.epochHour());
+        }
+    }
+
+    private void upsert(String increment, String insert, Object... args) {
+        if (jdbcTemplate.update(increment, args) > 0) {
+            return;
+        }
+        try {
+            jdbcTemplate.update(insert, args);
+        } catch (DuplicateKeyException e) {
+            // Another transaction created the row first
+            jdbcTemplate.update(increment, args);
+        }
+    }
+
+    // {eventCount, defectSum} for whole hours [fromHour, toHour)
+    public long[] machineTotals(String machineId, long fromHour, long toHour) {
+        Object[] row = machineRollupRepository.sumByMachine(machineId, fromHour, toHour).get(0);
+        return new long[]{((Number) row[0]).longValue(), ((Number) row[1]).longValue()};
+    }
+
+    // lineId -> {totalDefects, eventCount} for whole hours [fromHour, toHour)
+    public Map<String, long[]> lineTotals(String factoryId, long fromHour, long toHour) {
+        List<Object[]> rows = lineRollupRepository.sumByLine(factoryId, fromHour, toHour);
+        Map<String, long[]> totals = new HashMap<>();
+        for (Object[] row : rows) {
+            totals.put((String) row[0],
+                    new long[]{((Number) row[1]).longValue(), ((Number) row[2]).longValue()});
+        }
+        return totals;
+    }
+}
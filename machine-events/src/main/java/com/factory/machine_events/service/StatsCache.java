@@ -0,0 +1,231 @@
+package com.factory.machine_events.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+// Bounded LRU + TTL cache of StatsService results. Entries are keyed by the exact
+// query and indexed by machine or factory, and processBatch drops only the entries
+// whose scope and hours it wrote to, after its transaction commits.
+@Service
+public class StatsCache {
+
+    public enum Kind { MACHINE, FACTORY }
+
+    public record Scope(Kind kind, String id) {
+    }
+
+    public record Key(Scope scope, Instant start, Instant end, int limit) {
+
+        // Hours the window can see, end hour included so no boundary is missed
+        boolean covers(long hour) {
+            return hour >= RollupService.epochHour(start) && hour <= RollupService.epochHour(end);
+        }
+    }
+
+    private record Entry(Object value, long expiresAt) {
+    }
+
+    private static final int GENERATION_STRIPES = 1024;
+
+    private final boolean enabled;
+    private final int maxEntries;
+    private final long ttlNanos;
+
+    // Guarded by lock, which unlike a monitor never pins a virtual thread's carrier
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Scope, Set<Key>> keysByScope = new HashMap<>();
+
+    // Bumped per scope stripe on every invalidation, so a result computed while a
+    // batch was committing is never stored
+    private final AtomicLongArray generations = new AtomicLongArray(GENERATION_STRIPES);
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public StatsCache(@Value("${events.stats-cache.enabled:false}") boolean enabled,
+                      @Value("${events.stats-cache.max-entries:10000}") int maxEntries,
+                      @Value("${events.stats-cache.ttl-seconds:300}") long ttlSeconds) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("max-entries must be positive: " + maxEntries);
+        }
+        this.enabled = enabled;
+        this.maxEntries = maxEntries;
+        this.ttlNanos = ttlSeconds * 1_000_000_000L;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T get(Key key, Supplier<T> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        Entry cached = lookup(key);
+        if (cached != null) {
+            hits.increment();
+            return (T) cached.value();
+        }
+        misses.increment();
+
+        long generation = generations.get(stripe(key.scope()));
+        T value = loader.get();
+        store(key, value, generation);
+        return value;
+    }
+
+    // The database must already show the batch before entries go, or a reader
+    // could cache the old totals again right after
+    public void invalidateAfterCommit(TouchedBuckets touched) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            invalidate(touched);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                invalidate(touched);
+            }
+        });
+    }
+
+    public void invalidate(TouchedBuckets touched) {
+        for (Map.Entry<Scope, Set<Long>> scopeHours : touched.getHours().entrySet()) {
+            Scope scope = scopeHours.getKey();
+            generations.incrementAndGet(stripe(scope));
+            lock.lock();
+            try {
+                Set<Key> keys = keysByScope.get(scope);
+                if (keys == null) {
+                    continue;
+                }
+                for (Iterator<Key> it = keys.iterator(); it.hasNext(); ) {
+                    Key key = it.next();
+                    if (scopeHours.getValue().stream().anyMatch(key::covers)) {
+                        it.remove();
+                        entries.remove(key);
+                        invalidations.increment();
+                    }
+                }
+                if (keys.isEmpty()) {
+                    keysByScope.remove(scope);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    // Drops everything, for changes that are not tied to a batch such as retention
+    public void clear() {
+        for (int i = 0; i < GENERATION_STRIPES; i++) {
+            generations.incrementAndGet(i);
+        }
+        lock.lock();
+        try {
+            invalidations.add(entries.size());
+            entries.clear();
+            keysByScope.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return entries.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public long invalidations() {
+        return invalidations.sum();
+    }
+
+    private Entry lookup(Key key) {
+        lock.lock();
+        try {
+            Entry entry = entries.get(key);
+            if (entry != null && entry.expiresAt() - System.nanoTime() <= 0) {
+                remove(key);
+                evictions.increment();
+                return null;
+            }
+            return entry;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void store(Key key, Object value, long generation) {
+        lock.lock();
+        try {
+            if (generations.get(stripe(key.scope())) != generation) {
+                return;
+            }
+            entries.put(key, new Entry(value, System.nanoTime() + ttlNanos));
+            keysByScope.computeIfAbsent(key.scope(), k -> new HashSet<>()).add(key);
+
+            // Access order puts the least recently used entry first
+            Iterator<Key> eldest = entries.keySet().iterator();
+            while (entries.size() > maxEntries) {
+                Key evicted = eldest.next();
+                eldest.remove();
+                unindex(evicted);
+                evictions.increment();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void remove(Key key) {
+        entries.remove(key);
+        unindex(key);
+    }
+
+    private void unindex(Key key) {
+        Set<Key> keys = keysByScope.get(key.scope());
+        if (keys != null && keys.remove(key) && keys.isEmpty()) {
+            keysByScope.remove(key.scope());
+        }
+    }
+
+    private static int stripe(Scope scope) {
+        int h = scope.hashCode();
+        h ^= (h >>> 16);
+        return h & (GENERATION_STRIPES - 1);
+    }
+}
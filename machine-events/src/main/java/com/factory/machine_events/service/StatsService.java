@@ -2,13 +2,22 @@ package com.factory.machine_events.service;
 
 import com.factory.machine_events.dto.StatsResponse;
 import com.factory.machine_events.dto.TopDefectLineResponse;
-import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.repository.DimensionDictionary;
 import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.LineTotals;
+import com.factory.machine_events.repository.MachineTotals;
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.shard.ShardRouter;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
 import java.util.stream.Collectors;
 
 @Service
@@ -17,23 +26,60 @@ public class StatsService {
     private static final double HEALTHY_THRESHOLD = 2.0;
 
     private final EventRepository eventRepository;
+    private final RollupService rollupService;
+    private final LiveCounterService liveCounterService;
+    private final StatsCache statsCache;
+    private final ShardRouter shardRouter;
+    private final PartitionedEventStore partitionedEventStore;
+    private final EventMetrics metrics;
+    private final DimensionDictionary dimensions;
+    private final ColumnarEventStore columnarStore;
 
-    public StatsService(EventRepository eventRepository) {
+    public StatsService(EventRepository eventRepository,
+                        RollupService rollupService,
+                        LiveCounterService liveCounterService,
+                        StatsCache statsCache,
+                        ShardRouter shardRouter,
+                        PartitionedEventStore partitionedEventStore,
+                        EventMetrics metrics,
+                        DimensionDictionary dimensions,
+                        ColumnarEventStore columnarStore) {
         this.eventRepository = eventRepository;
+        this.rollupService = rollupService;
+        this.liveCounterService = liveCounterService;
+        this.statsCache = statsCache;
+        this.shardRouter = shardRouter;
+        this.partitionedEventStore = partitionedEventStore;
+        this.metrics = metrics;
+        this.dimensions = dimensions;
+        this.columnarStore = columnarStore;
     }
 
     public StatsResponse getStats(String machineId, Instant start, Instant end) {
-        List<MachineEvent> events = eventRepository.findByMachineIdAndTimeRange(
-                machineId, start, end
-        );
+        StatsCache.Key key = new StatsCache.Key(
+                new StatsCache.Scope(StatsCache.Kind.MACHINE, machineId), start, end, 0);
+        return metrics.timeQuery(EventMetrics.Query.STATS,
+                () -> statsCache.get(key, () -> computeStats(machineId, start, end)));
+    }
+
+    public List<TopDefectLineResponse> getTopDefectLines(
+            String factoryId, Instant from, Instant to, int limit) {
+
+        if (limit <= 0) {
+            return List.of();
+        }
+
+        StatsCache.Key key = new StatsCache.Key(
+                new StatsCache.Scope(StatsCache.Kind.FACTORY, factoryId), from, to, limit);
+        return metrics.timeQuery(EventMetrics.Query.TOP_DEFECT_LINES,
+                () -> statsCache.get(key, () -> computeTopDefectLines(factoryId, from, to, limit)));
+    }
 
-        long eventsCount = events.size();
+    private StatsResponse computeStats(String machineId, Instant start, Instant end) {
+        long[] totals = machineTotals(machineId, start, end);
 
-        // Count defects, ignoring defectCount = -1
-        long defectsCount = events.stream()
-                .filter(e -> e.getDefectCount() != null && e.getDefectCount() >= 0)
-                .mapToLong(MachineEvent::getDefectCount)
-                .sum();
+        long eventsCount = totals[0];
+        long defectsCount = totals[1];
 
         // Calculate window hours
         double windowSeconds = Duration.between(start, end).getSeconds();
@@ -57,18 +103,154 @@ public class StatsService {
         return response;
     }
 
-    public List<TopDefectLineResponse> getTopDefectLines(
+    private List<TopDefectLineResponse> computeTopDefectLines(
             String factoryId, Instant from, Instant to, int limit) {
 
-        List<Object[]> results = eventRepository.findTopDefectLines(factoryId, from, to);
+        Map<String, long[]> totals = lineTotals(factoryId, from, to, limit);
 
-        return results.stream()
+        return totals.entrySet().stream()
+                .sorted((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]))
                 .limit(limit)
-                .map(row -> new TopDefectLineResponse(
-                        (String) row[0],      // lineId
-                        ((Number) row[1]).longValue(),  // totalDefects
-                        ((Number) row[2]).longValue()   // eventCount
+                .map(e -> new TopDefectLineResponse(
+                        e.getKey(),         // lineId
+                        e.getValue()[0],    // totalDefects
+                        e.getValue()[1]     // eventCount
                 ))
                 .collect(Collectors.toList());
     }
-}
\ No newline at end of file
+
+    // {eventCount, defectSum}: the whole window from the columnar copy while it is
+    // serving, else whole minutes from the live counters when the window is inside
+    // their horizon, else whole hours from the rollups; edges from raw rows. Columnar
+    // and live counters span every shard, the rest is summed over the machine's shards.
+    private long[] machineTotals(String machineId, Instant start, Instant end) {
+        if (columnarStore.isServing()) {
+            return columnarStore.machineTotals(machineId, start, end);
+        }
+        if (liveCounterService.isEnabled()) {
+            long firstMinute = firstWholeMinute(start);
+            long endMinute = LiveCounterService.epochMinute(end);
+            long[] totals = liveCounterService.machineTotals(machineId, firstMinute, endMinute);
+            if (totals != null) {
+                Instant headEnd = LiveCounterService.minuteStart(firstMinute);
+                Instant tailStart = LiveCounterService.minuteStart(endMinute);
+                addTo(totals, onMachineShards(machineId, () -> {
+                    long[] edges = scanMachine(machineId, start, headEnd);
+                    addTo(edges, scanMachine(machineId, tailStart, end));
+                    return edges;
+                }));
+                return totals;
+            }
+        }
+        return onMachineShards(machineId, () -> storedMachineTotals(machineId, start, end));
+    }
+
+    private long[] onMachineShards(String machineId, Supplier<long[]> work) {
+        List<long[]> perShard = shardRouter.onShards(shardRouter.shardsForMachine(machineId), shard -> work.get());
+        if (perShard.size() == 1) {
+            return perShard.get(0);
+        }
+        long[] totals = new long[2];
+        perShard.forEach(shardTotals -> addTo(totals, shardTotals));
+        return totals;
+    }
+
+    private long[] storedMachineTotals(String machineId, Instant start, Instant end) {
+        if (rollupService.isEnabled()) {
+            long firstHour = firstWholeHour(start);
+            long endHour = RollupService.epochHour(end);
+            if (firstHour < endHour) {
+                long[] totals = rollupService.machineTotals(machineId, firstHour, endHour);
+                addTo(totals, scanMachine(machineId, start, RollupService.hourStart(firstHour)));
+                addTo(totals, scanMachine(machineId, RollupService.hourStart(endHour), end));
+                return totals;
+            }
+        }
+        return scanMachine(machineId, start, end);
+    }
+
+    // An id the dictionary has never seen has no rows, and looking it up through the
+    // converter would register it
+    private long[] scanMachine(String machineId, Instant start, Instant end) {
+        if (!start.isBefore(end) || !dimensions.contains(machineId)) {
+            return new long[2];
+        }
+        if (partitionedEventStore.isEnabled()) {
+            return partitionedEventStore.machineTotals(machineId, start, end);
+        }
+        // Count and sum in the database, defectCount = -1 is ignored there
+        MachineTotals totals = eventRepository.aggregateByMachineIdAndTimeRange(
+                machineId, start, end
+        );
+        return new long[]{totals.getEventsCount(), totals.getDefectsCount()};
+    }
+
+    // lineId -> {totalDefects, eventCount}, split the same way as machineTotals
+    private Map<String, long[]> lineTotals(String factoryId, Instant from, Instant to, int limit) {
+        if (columnarStore.isServing()) {
+            return columnarStore.lineTotals(factoryId, from, to);
+        }
+        List<Integer> shards = shardRouter.shardsForFactory(factoryId);
+        if (shards.size() == 1) {
+            return shardRouter.onShard(shards.get(0), () -> storedLineTotals(factoryId, from, to, Limit.of(limit)));
+        }
+        // Each shard only sees part of a line's events, so nothing is ranked or cut
+        // until all of them are merged
+        Map<String, long[]> totals = new HashMap<>();
+        for (Map<String, long[]> shardTotals : shardRouter.onShards(shards,
+                shard -> storedLineTotals(factoryId, from, to, Limit.unlimited()))) {
+            mergeInto(totals, shardTotals);
+        }
+        return totals;
+    }
+
+    private Map<String, long[]> storedLineTotals(String factoryId, Instant from, Instant to, Limit limit) {
+        if (rollupService.isEnabled()) {
+            long firstHour = firstWholeHour(from);
+            long endHour = RollupService.epochHour(to);
+            if (firstHour < endHour) {
+                Map<String, long[]> totals = rollupService.lineTotals(factoryId, firstHour, endHour);
+                // Partial sums can only be ranked once merged, so no limit here
+                mergeInto(totals, scanLines(factoryId, from, RollupService.hourStart(firstHour), Limit.unlimited()));
+                mergeInto(totals, scanLines(factoryId, RollupService.hourStart(endHour), to, Limit.unlimited()));
+                return totals;
+            }
+        }
+        // A single raw scan lets the database rank the lines and apply the limit
+        return scanLines(factoryId, from, to, limit);
+    }
+
+    private Map<String, long[]> scanLines(String factoryId, Instant from, Instant to, Limit limit) {
+        // Keeps the query's defect ordering when no rollups are merged in
+        Map<String, long[]> totals = new LinkedHashMap<>();
+        if (!from.isBefore(to) || !dimensions.contains(factoryId)) {
+            return totals;
+        }
+        if (partitionedEventStore.isEnabled()) {
+            return partitionedEventStore.lineTotals(factoryId, from, to, limit);
+        }
+        for (LineTotals line : eventRepository.findTopDefectLines(factoryId, from, to, limit)) {
+            totals.put(line.getLineId(), new long[]{line.getTotalDefects(), line.getEventCount()});
+        }
+        return totals;
+    }
+
+    private static long firstWholeHour(Instant start) {
+        long hour = RollupService.epochHour(start);
+        return RollupService.hourStart(hour).equals(start) ? hour : hour + 1;
+    }
+
+    private static long firstWholeMinute(Instant start) {
+        long minute = LiveCounterService.epochMinute(start);
+        return LiveCounterService.minuteStart(minute).equals(start) ? minute : minute + 1;
+    }
+
+    private static void addTo(long[] totals, long[] more) {
+        totals[0] += more[0];
+        totals[1] += more[1];
+    }
+
+    private static void mergeInto(Map<String, long[]> totals, Map<String, long[]> more) {
+        more.forEach((lineId, values) -> addTo(totals.computeIfAbsent(lineId, k -> new long[2]), values));
+    }
+}
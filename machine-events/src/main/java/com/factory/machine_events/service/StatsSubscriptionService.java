@@ -0,0 +1,224 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskScheduler;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Server-Sent Events subscriptions to a machine's stats or a factory's top defect
+// lines over a window ending now. Each gets one push when it starts and another
+// whenever a committed batch wrote to its machine or factory within the window;
+// pushes to one subscriber are at least minInterval apart, and the changes in
+// between are coalesced into the next one. Pushes are computed through StatsService
+// on pushThreads threads of their own; windows end at the next whole second, so
+// screens watching the same machine share its cache entries when it is enabled.
+@Service
+public class StatsSubscriptionService implements DisposableBean {
+
+    private static final Logger log = LoggerFactory.getLogger(StatsSubscriptionService.class);
+
+    private final StatsService statsService;
+    private final long minIntervalMillis;
+    private final int maxSubscribers;
+    private final Duration timeout;
+    private final ThreadPoolTaskScheduler scheduler;
+
+    private final Map<StatsCache.Scope, Set<Subscription>> subscriptions = new ConcurrentHashMap<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+
+    public StatsSubscriptionService(StatsService statsService,
+                                    @Value("${events.subscriptions.max-pushes-per-second:1}") double maxPushesPerSecond,
+                                    @Value("${events.subscriptions.max-subscribers:1000}") int maxSubscribers,
+                                    @Value("${events.subscriptions.timeout-minutes:30}") long timeoutMinutes,
+                                    @Value("${events.subscriptions.push-threads:2}") int pushThreads) {
+        if (maxPushesPerSecond <= 0) {
+            throw new IllegalArgumentException("max-pushes-per-second must be positive: " + maxPushesPerSecond);
+        }
+        this.statsService = statsService;
+        this.minIntervalMillis = (long) (1000 / maxPushesPerSecond);
+        this.maxSubscribers = maxSubscribers;
+        this.timeout = Duration.ofMinutes(timeoutMinutes);
+        this.scheduler = new ThreadPoolTaskScheduler();
+        scheduler.setPoolSize(pushThreads);
+        scheduler.setThreadNamePrefix("stats-push-");
+        scheduler.setDaemon(true);
+        scheduler.initialize();
+    }
+
+    // For the emitters handed in, so a subscription ends before its client notices
+    public Duration timeout() {
+        return timeout;
+    }
+
+    public int subscriberCount() {
+        return subscriberCount.get();
+    }
+
+    public boolean hasSubscribers() {
+        return subscriberCount.get() > 0;
+    }
+
+    // False when max-subscribers are connected already and the caller should back off
+    public boolean subscribeMachine(String machineId, Duration window, SseEmitter emitter) {
+        return subscribe(new Subscription(
+                new StatsCache.Scope(StatsCache.Kind.MACHINE, machineId), window, 0, emitter));
+    }
+
+    public boolean subscribeFactory(String factoryId, Duration window, int limit, SseEmitter emitter) {
+        return subscribe(new Subscription(
+                new StatsCache.Scope(StatsCache.Kind.FACTORY, factoryId), window, limit, emitter));
+    }
+
+    // Subscribers must never be pushed a batch that rolls back, so inside a
+    // transaction they hear of it once it commits
+    public void notifyAfterCommit(TouchedBuckets touched) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            publish(touched);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                publish(touched);
+            }
+        });
+    }
+
+    public void publish(TouchedBuckets touched) {
+        Instant now = Instant.now();
+        for (Map.Entry<StatsCache.Scope, Set<Long>> scopeHours : touched.getHours().entrySet()) {
+            Set<Subscription> subscribed = subscriptions.get(scopeHours.getKey());
+            if (subscribed == null) {
+                continue;
+            }
+            for (Subscription subscription : subscribed) {
+                long firstHour = RollupService.epochHour(now.minus(subscription.window));
+                if (scopeHours.getValue().stream().anyMatch(hour -> hour >= firstHour)) {
+                    subscription.changed();
+                }
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        scheduler.shutdown();
+        for (Set<Subscription> subscribed : subscriptions.values()) {
+            subscribed.forEach(subscription -> subscription.emitter.complete());
+        }
+    }
+
+    private boolean subscribe(Subscription subscription) {
+        if (subscriberCount.incrementAndGet() > maxSubscribers) {
+            subscriberCount.decrementAndGet();
+            return false;
+        }
+        // Added and removed inside compute, so an emptied set is never dropped while
+        // a new subscriber is joining it
+        subscriptions.compute(subscription.scope, (scope, subscribed) -> {
+            Set<Subscription> joined = subscribed != null ? subscribed : ConcurrentHashMap.newKeySet();
+            joined.add(subscription);
+            return joined;
+        });
+        SseEmitter emitter = subscription.emitter;
+        emitter.onCompletion(() -> remove(subscription));
+        emitter.onTimeout(() -> {
+            remove(subscription);
+            emitter.complete();
+        });
+        emitter.onError(e -> remove(subscription));
+        subscription.changed();
+        return true;
+    }
+
+    private void remove(Subscription subscription) {
+        subscriptions.computeIfPresent(subscription.scope, (scope, subscribed) -> {
+            if (subscribed.remove(subscription)) {
+                subscriberCount.decrementAndGet();
+            }
+            return subscribed.isEmpty() ? null : subscribed;
+        });
+    }
+
+    private final class Subscription {
+
+        final StatsCache.Scope scope;
+        final Duration window;
+        final int limit;
+        final SseEmitter emitter;
+        // Set while a push is scheduled and not started yet; changes then ride along
+        final AtomicBoolean pending = new AtomicBoolean();
+        // A slow push still running when the next one is due finishes first, so
+        // a client never sees older stats after newer ones
+        final ReentrantLock pushLock = new ReentrantLock();
+        volatile long lastPushMillis;
+
+        Subscription(StatsCache.Scope scope, Duration window, int limit, SseEmitter emitter) {
+            this.scope = scope;
+            this.window = window;
+            this.limit = limit;
+            this.emitter = emitter;
+        }
+
+        void changed() {
+            if (pending.compareAndSet(false, true)) {
+                long delay = Math.max(0, lastPushMillis + minIntervalMillis - System.currentTimeMillis());
+                scheduler.schedule(this::push, Instant.now().plusMillis(delay));
+            }
+        }
+
+        // Cleared before the stats are read, so a batch committed meanwhile is
+        // pushed next rather than lost
+        private void push() {
+            pushLock.lock();
+            try {
+                pending.set(false);
+                lastPushMillis = System.currentTimeMillis();
+                send();
+            } finally {
+                pushLock.unlock();
+            }
+        }
+
+        private void send() {
+            Instant end = Instant.now().truncatedTo(ChronoUnit.SECONDS).plusSeconds(1);
+            Instant start = end.minus(window);
+            try {
+                if (scope.kind() == StatsCache.Kind.MACHINE) {
+                    StatsResponse stats = statsService.getStats(scope.id(), start, end);
+                    emitter.send(SseEmitter.event().name("stats").data(stats, MediaType.APPLICATION_JSON));
+                } else {
+                    List<TopDefectLineResponse> lines = statsService.getTopDefectLines(scope.id(), start, end, limit);
+                    emitter.send(SseEmitter.event().name("top-defect-lines").data(lines, MediaType.APPLICATION_JSON));
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away, or the emitter has completed
+                remove(this);
+            } catch (RuntimeException e) {
+                log.warn("Stats push for {} failed", scope, e);
+                remove(this);
+                emitter.completeWithError(e);
+            }
+        }
+    }
+}
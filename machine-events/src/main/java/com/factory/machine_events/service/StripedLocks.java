@@ -0,0 +1,43 @@
+package com.factory.machine_events.service;
+
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Fixed-size lock table keyed by hash. Two keys may share a stripe, which only
+// costs some extra contention; memory stays constant no matter how many keys
+// have been seen. ReentrantLock rather than monitors, so a virtual thread waiting
+// for a stripe unmounts instead of pinning its carrier.
+public class StripedLocks implements LockTable {
+
+    private final Lock[] locks;
+    private final int mask;
+
+    public StripedLocks(int stripes) {
+        if (stripes < 1) {
+            throw new IllegalArgumentException("stripes must be positive: " + stripes);
+        }
+        // Round up to a power of two so the stripe index is a mask, not a modulo
+        int size = stripes == 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        this.locks = new Lock[size];
+        this.mask = size - 1;
+        for (int i = 0; i < size; i++) {
+            locks[i] = new ReentrantLock();
+        }
+    }
+
+    @Override
+    public Lock lockFor(String key) {
+        return locks[stripe(key)];
+    }
+
+    public int stripes() {
+        return locks.length;
+    }
+
+    int stripe(String key) {
+        int h = key.hashCode();
+        // Spread high bits down, String hashes cluster in the low bits for similar ids
+        h ^= (h >>> 16);
+        return h & mask;
+    }
+}
@@ -0,0 +1,42 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.model.MachineEvent;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+// Machine and factory hours written by one processBatch call, used to invalidate
+// the cached stats that could have seen them
+public class TouchedBuckets {
+
+    private final Map<StatsCache.Scope, Set<Long>> hours = new HashMap<>();
+
+    public void add(MachineEvent event) {
+        long hour = RollupService.epochHour(event.getEventTime());
+        touch(new StatsCache.Scope(StatsCache.Kind.MACHINE, event.getMachineId()), hour);
+
+        // Top defect lines only ever look at events with both a factory and a line
+        if (event.getFactoryId() != null && event.getLineId() != null) {
+            touch(new StatsCache.Scope(StatsCache.Kind.FACTORY, event.getFactoryId()), hour);
+        }
+    }
+
+    public void merge(TouchedBuckets other) {
+        other.hours.forEach((scope, scopeHours) ->
+                hours.computeIfAbsent(scope, k -> new HashSet<>()).addAll(scopeHours));
+    }
+
+    public boolean isEmpty() {
+        return hours.isEmpty();
+    }
+
+    public Map<StatsCache.Scope, Set<Long>> getHours() {
+        return hours;
+    }
+
+    private void touch(StatsCache.Scope scope, long hour) {
+        hours.computeIfAbsent(scope, k -> new HashSet<>()).add(hour);
+    }
+}
@@ -0,0 +1,381 @@
+package com.factory.machine_events.service;
+
+import com.factory.machine_events.codec.EventFrameCodec;
+import com.factory.machine_events.dto.EventRequest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+// Write-ahead log of accepted batches for async ingestion, in memory-mapped segment
+// files of segment-size each. A record is
+//
+//   int    length of the frame
+//   int    CRC32 of the frame
+//   bytes  the batch as an EventFrameCodec frame
+//
+// and a zero length ends a segment's data. append returns once the record is forced
+// to disk; concurrent appenders share one force where they can. A position is the
+// segment number in the high 32 bits and the offset in the low ones.
+//
+// The checkpoint file holds the position of the first record not yet applied. It is
+// written through a mapping but never forced: losing it only replays records that
+// were applied already, which processBatch settles as duplicates. Segments wholly
+// before the checkpoint are deleted; their mappings go when they are collected.
+//
+// A record that cannot be applied at all is copied to the dead-letter file, in the
+// same record format, and then counts as applied so it no longer holds the
+// checkpoint back.
+@Service
+public class WriteAheadLog {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteAheadLog.class);
+
+    private static final int HEADER_BYTES = 2 * Integer.BYTES;
+    private static final String CHECKPOINT_FILE = "checkpoint";
+    private static final String DEAD_LETTER_FILE = "dead-letter.log";
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    public record Record(long position, List<EventRequest> events) {
+    }
+
+    private record Segment(long number, Path path, MappedByteBuffer buffer) {
+    }
+
+    private final boolean enabled;
+    private final Path directory;
+    private final long segmentBytes;
+
+    private final ConcurrentSkipListMap<Long, Segment> segments = new ConcurrentSkipListMap<>();
+    // Positions of records appended or replayed but not applied yet
+    private final ConcurrentSkipListSet<Long> unapplied = new ConcurrentSkipListSet<>();
+    private final ReentrantLock appendLock = new ReentrantLock();
+    private final ReentrantLock forceLock = new ReentrantLock();
+    private final ReentrantLock checkpointLock = new ReentrantLock();
+    private final ReentrantLock deadLetterLock = new ReentrantLock();
+
+    private Segment tail;
+    // End of the last record written, and how far the log is known to be on disk
+    private volatile long written;
+    private long forced;
+    private MappedByteBuffer checkpoint;
+    private volatile boolean open;
+
+    public WriteAheadLog(@Value("${events.wal.enabled:false}") boolean enabled,
+                         @Value("${events.wal.directory:data/wal}") String directory,
+                         @Value("${events.wal.segment-size:64MB}") DataSize segmentSize) {
+        if (segmentSize.toBytes() < 1024 || segmentSize.toBytes() > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("segment-size must be between 1KB and 2GB: " + segmentSize);
+        }
+        this.enabled = enabled;
+        this.directory = Path.of(directory);
+        this.segmentBytes = segmentSize.toBytes();
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public boolean isOpen() {
+        return open;
+    }
+
+    // Maps the segments from the checkpoint on and returns every intact record after
+    // it, in log order, for replay. Scanning stops at the first torn record, which
+    // the next append overwrites.
+    public List<Record> open() {
+        try {
+            Files.createDirectories(directory);
+            checkpoint = map(directory.resolve(CHECKPOINT_FILE), Long.BYTES);
+            long from = checkpoint.getLong(0);
+
+            List<Record> records = new ArrayList<>();
+            for (Path path : segmentFiles()) {
+                long number = segmentNumber(path);
+                if (number < segmentOf(from)) {
+                    Files.delete(path);
+                    continue;
+                }
+                Segment segment = new Segment(number, path, map(path, Files.size(path)));
+                segments.put(number, segment);
+                int end = scan(segment, number == segmentOf(from) ? offsetOf(from) : 0, records);
+                tail = segment;
+                written = position(number, end);
+            }
+            if (tail == null) {
+                tail = newSegment(segmentOf(from) + (offsetOf(from) > 0 ? 1 : 0), segmentBytes);
+                written = position(tail.number(), 0);
+            }
+            forced = written;
+            records.forEach(record -> unapplied.add(record.position()));
+            open = true;
+            return records;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log in " + directory + " could not be opened", e);
+        }
+    }
+
+    // Returns the record's position once it is on disk
+    public long append(List<EventRequest> events) {
+        byte[] frame = encode(events);
+        CRC32 crc = new CRC32();
+        crc.update(frame);
+
+        long position;
+        long end;
+        appendLock.lock();
+        try {
+            int offset = offsetOf(written);
+            // Room for the record and the zero length that ends the data after it
+            long needed = (long) HEADER_BYTES + frame.length + Integer.BYTES;
+            if (offset + needed > tail.buffer().capacity()) {
+                rotate(needed);
+                offset = 0;
+            }
+            MappedByteBuffer buffer = tail.buffer();
+            position = position(tail.number(), offset);
+            unapplied.add(position);
+            buffer.putInt(offset + HEADER_BYTES + frame.length, 0);
+            buffer.put(offset + HEADER_BYTES, frame);
+            buffer.putInt(offset + Integer.BYTES, (int) crc.getValue());
+            buffer.putInt(offset, frame.length);
+            end = position(tail.number(), offset + HEADER_BYTES + frame.length);
+            written = end;
+        } finally {
+            appendLock.unlock();
+        }
+        force(end);
+        return position;
+    }
+
+    // Moves the checkpoint past every record before the first one still unapplied
+    public void markApplied(long position) {
+        unapplied.remove(position);
+        // written is read first: a record appended after it lies beyond it
+        long tailPosition = written;
+        Long first = unapplied.ceiling(Long.MIN_VALUE);
+        long applied = first != null ? Math.min(first, tailPosition) : tailPosition;
+
+        checkpointLock.lock();
+        try {
+            if (applied <= checkpoint.getLong(0)) {
+                return;
+            }
+            checkpoint.putLong(0, applied);
+            for (Segment segment : segments.headMap(segmentOf(applied)).values()) {
+                segments.remove(segment.number());
+                Files.deleteIfExists(segment.path());
+            }
+        } catch (IOException e) {
+            log.warn("Could not delete applied write-ahead log segment", e);
+        } finally {
+            checkpointLock.unlock();
+        }
+    }
+
+    // Returns once the batch is forced to the dead-letter file; if that fails the
+    // record stays unapplied and is replayed at the next start
+    public void deadLetter(long position, List<EventRequest> events) {
+        byte[] frame = encode(events);
+        CRC32 crc = new CRC32();
+        crc.update(frame);
+        ByteBuffer record = ByteBuffer.allocate(HEADER_BYTES + frame.length);
+        record.putInt(frame.length).putInt((int) crc.getValue()).put(frame).flip();
+
+        Path path = directory.resolve(DEAD_LETTER_FILE);
+        deadLetterLock.lock();
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+            channel.force(false);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Dead-letter file " + path + " could not be written", e);
+        } finally {
+            deadLetterLock.unlock();
+        }
+        markApplied(position);
+    }
+
+    // Every batch in the dead-letter file, oldest first
+    public List<List<EventRequest>> deadLetters() {
+        Path path = directory.resolve(DEAD_LETTER_FILE);
+        List<Record> records = new ArrayList<>();
+        deadLetterLock.lock();
+        try {
+            if (Files.exists(path)) {
+                scan(new Segment(0, path, map(path, Files.size(path))), 0, records);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Dead-letter file " + path + " could not be read", e);
+        } finally {
+            deadLetterLock.unlock();
+        }
+        return records.stream().map(Record::events).toList();
+    }
+
+    public void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        checkpoint.force();
+        segments.clear();
+        unapplied.clear();
+        tail = null;
+    }
+
+    public long checkpoint() {
+        return checkpoint.getLong(0);
+    }
+
+    public int segmentCount() {
+        return segments.size();
+    }
+
+    public int unappliedCount() {
+        return unapplied.size();
+    }
+
+    // One force covers every record written by then, so appenders waiting here
+    // behind it usually find theirs done already
+    private void force(long end) {
+        forceLock.lock();
+        try {
+            if (end <= forced) {
+                return;
+            }
+            long target = written;
+            if (segmentOf(target) != segmentOf(end)) {
+                target = end;
+            }
+            int from = segmentOf(forced) == segmentOf(end) ? offsetOf(forced) : 0;
+            segments.get(segmentOf(end)).buffer().force(from, offsetOf(target) - from);
+            forced = target;
+        } finally {
+            forceLock.unlock();
+        }
+    }
+
+    // Lock held. The full segment is forced before the next one takes writes, so no
+    // position left behind is ever waiting on a later force.
+    private void rotate(long needed) {
+        Segment full = tail;
+        full.buffer().force();
+        tail = newSegment(full.number() + 1, Math.max(segmentBytes, needed));
+        long start = position(tail.number(), 0);
+        forceLock.lock();
+        try {
+            forced = Math.max(forced, start);
+        } finally {
+            forceLock.unlock();
+        }
+        written = start;
+    }
+
+    private Segment newSegment(long number, long bytes) {
+        Path path = directory.resolve(String.format("%s%010d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+        try {
+            Segment segment = new Segment(number, path, map(path, bytes));
+            segments.put(number, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Write-ahead log segment " + path + " could not be created", e);
+        }
+    }
+
+    // Adds the intact records from offset on and returns the offset after the last
+    private int scan(Segment segment, int offset, List<Record> records) {
+        MappedByteBuffer buffer = segment.buffer();
+        while (offset + HEADER_BYTES <= buffer.capacity()) {
+            int length = buffer.getInt(offset);
+            if (length <= 0 || offset + HEADER_BYTES + (long) length > buffer.capacity()) {
+                break;
+            }
+            byte[] frame = new byte[length];
+            buffer.get(offset + HEADER_BYTES, frame);
+            CRC32 crc = new CRC32();
+            crc.update(frame);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                log.warn("Torn write-ahead log record at {} offset {}, ignoring the rest", segment.path(), offset);
+                break;
+            }
+            records.add(new Record(position(segment.number(), offset), decode(frame)));
+            offset += HEADER_BYTES + length;
+        }
+        return offset;
+    }
+
+    private List<Path> segmentFiles() throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.filter(path -> {
+                String name = path.getFileName().toString();
+                return name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX);
+            }).sorted().toList();
+        }
+    }
+
+    private static long segmentNumber(Path path) {
+        String name = path.getFileName().toString();
+        return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    // Mapping a region past the end of the file grows it, zero-filled
+    private static MappedByteBuffer map(Path path, long bytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+        }
+    }
+
+    private static byte[] encode(List<EventRequest> events) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + events.size() * 96);
+        try {
+            EventFrameCodec.write(events, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<EventRequest> decode(byte[] frame) {
+        try {
+            return EventFrameCodec.read(new ByteArrayInputStream(frame));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Unreadable write-ahead log record", e);
+        }
+    }
+
+    private static long position(long segment, int offset) {
+        return segment << 32 | offset;
+    }
+
+    private static long segmentOf(long position) {
+        return position >>> 32;
+    }
+
+    private static int offsetOf(long position) {
+        return (int) position;
+    }
+}
@@ -0,0 +1,181 @@
+package com.factory.machine_events.shard;
+
+import com.factory.machine_events.dto.EventRequest;
+import jakarta.persistence.EntityManagerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
+
+// Decides which shard an event lives on and runs work against one or more shards.
+// Events are placed by machineId hash, or by factoryId hash (machineId when there is
+// none) with routing=factory. An event's machine and factory must not change across
+// updates; EventService rejects updates that would move it to another shard.
+// Changing the number of shards re-homes existing data.
+// Without events.shards.urls there is a single shard and everything runs inline.
+@Component
+public class ShardRouter implements DisposableBean {
+
+    public enum Routing { MACHINE, FACTORY }
+
+    private static final ThreadLocal<Integer> CURRENT = new ThreadLocal<>();
+
+    private final int shards;
+    private final Routing routing;
+    private final TransactionTemplate transactionTemplate;
+    private final ThreadPoolTaskExecutor fanOut;
+
+    public ShardRouter(EntityManagerFactory entityManagerFactory,
+                       PlatformTransactionManager transactionManager,
+                       @Value("${events.shards.urls:}") String[] urls,
+                       @Value("${events.shards.routing:machine}") String routing,
+                       @Value("${spring.jpa.hibernate.ddl-auto:none}") String ddlAuto,
+                       @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (!routing.equals("machine") && !routing.equals("factory")) {
+            throw new IllegalArgumentException("shard routing must be machine or factory: " + routing);
+        }
+        this.shards = Math.max(1, urls.length);
+        this.routing = routing.equals("factory") ? Routing.FACTORY : Routing.MACHINE;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+
+        // One reused thread per shard. The caller takes the first shard itself, and any
+        // shard the pool has no free thread for when many callers fan out at once.
+        this.fanOut = new ThreadPoolTaskExecutor();
+        fanOut.setThreadNamePrefix("shard-");
+        fanOut.setCorePoolSize(shards);
+        fanOut.setMaxPoolSize(shards);
+        fanOut.setQueueCapacity(0);
+        fanOut.setRejectedExecutionHandler(new ThreadPoolExecutor.CallerRunsPolicy());
+        fanOut.setDaemon(true);
+        if (virtualThreads) {
+            fanOut.setVirtualThreads(true);
+        }
+        fanOut.initialize();
+
+        // Hibernate only creates the schema on the default shard
+        if (ddlAuto.startsWith("create")) {
+            for (int shard = 1; shard < shards; shard++) {
+                onShard(shard, () -> {
+                    entityManagerFactory.getSchemaManager().create(true);
+                    return null;
+                });
+            }
+        }
+    }
+
+    public static int currentShard() {
+        Integer shard = CURRENT.get();
+        return shard != null ? shard : 0;
+    }
+
+    public boolean isSharded() {
+        return shards > 1;
+    }
+
+    public int shardCount() {
+        return shards;
+    }
+
+    public int shardFor(EventRequest event) {
+        if (routing == Routing.FACTORY && event.getFactoryId() != null) {
+            return shardOf(event.getFactoryId());
+        }
+        return shardOf(event.getMachineId());
+    }
+
+    // Shards that can hold a machine's events
+    public List<Integer> shardsForMachine(String machineId) {
+        return routing == Routing.MACHINE ? List.of(shardOf(machineId)) : allShards();
+    }
+
+    // Shards that can hold a factory's events
+    public List<Integer> shardsForFactory(String factoryId) {
+        return routing == Routing.FACTORY ? List.of(shardOf(factoryId)) : allShards();
+    }
+
+    public List<Integer> allShards() {
+        return IntStream.range(0, shards).boxed().toList();
+    }
+
+    public <T> T onShard(int shard, Supplier<T> work) {
+        if (!isSharded()) {
+            return work.get();
+        }
+        Integer previous = CURRENT.get();
+        CURRENT.set(shard);
+        try {
+            return work.get();
+        } finally {
+            CURRENT.set(previous);
+        }
+    }
+
+    // One result per shard, in the order given. More than one shard fans out in
+    // parallel, the first on the calling thread; the first failure is rethrown once all
+    // of them have finished.
+    public <T> List<T> onShards(Collection<Integer> targets, IntFunction<T> work) {
+        if (targets.size() == 1) {
+            int shard = targets.iterator().next();
+            // Work run for its side effects returns null, which List.of refuses
+            return Collections.singletonList(onShard(shard, () -> work.apply(shard)));
+        }
+        if (targets.isEmpty()) {
+            return List.of();
+        }
+        List<Integer> shardList = List.copyOf(targets);
+        List<CompletableFuture<T>> futures = new ArrayList<>(shardList.size());
+        CompletableFuture<T> callerRun = new CompletableFuture<>();
+        futures.add(callerRun);
+        for (int shard : shardList.subList(1, shardList.size())) {
+            futures.add(CompletableFuture.supplyAsync(() -> onShard(shard, () -> work.apply(shard)), fanOut));
+        }
+        int callerShard = shardList.get(0);
+        try {
+            callerRun.complete(onShard(callerShard, () -> work.apply(callerShard)));
+        } catch (RuntimeException e) {
+            callerRun.completeExceptionally(e);
+        }
+        try {
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new)).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+        return futures.stream().map(CompletableFuture::join).toList();
+    }
+
+    // Runs work in a transaction on the current shard. With more than one shard the
+    // transaction must start here, or it would already hold another shard's connection.
+    public <T> T inTransaction(Supplier<T> work) {
+        if (isSharded() && TransactionSynchronizationManager.isActualTransactionActive()) {
+            throw new IllegalStateException("Sharded writes cannot join an existing transaction");
+        }
+        return transactionTemplate.execute(status -> work.get());
+    }
+
+    @Override
+    public void destroy() {
+        fanOut.shutdown();
+    }
+
+    private int shardOf(String key) {
+        return Math.floorMod(Objects.hashCode(key), shards);
+    }
+}
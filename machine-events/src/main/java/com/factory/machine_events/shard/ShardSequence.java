@@ -0,0 +1,20 @@
+package com.factory.machine_events.shard;
+
+import org.hibernate.annotations.IdGeneratorType;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+// A pooled database sequence whose blocks are kept per shard; see
+// ShardSequenceGenerator
+@IdGeneratorType(ShardSequenceGenerator.class)
+@Retention(RetentionPolicy.RUNTIME)
+@Target({ElementType.FIELD, ElementType.METHOD})
+public @interface ShardSequence {
+
+    String sequenceName();
+
+    int allocationSize() default 50;
+}
@@ -0,0 +1,58 @@
+package com.factory.machine_events.shard;
+
+import org.hibernate.MappingException;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.generator.GeneratorCreationContext;
+import org.hibernate.id.OptimizableGenerator;
+import org.hibernate.id.enhanced.Optimizer;
+import org.hibernate.id.enhanced.OptimizerFactory;
+import org.hibernate.id.enhanced.SequenceStyleGenerator;
+import org.hibernate.id.enhanced.StandardOptimizerDescriptor;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Hibernate's sequence generator keeps one pooled optimizer per entity, so with
+// several shards a block fetched from one shard's sequence would be used for inserts
+// on another, and collide with that shard's own ids once its sequence got there.
+// Here every shard gets an optimizer of its own, fed from the sequence on the
+// connection the insert runs on. Unsharded there is only shard 0 and this behaves
+// exactly like @SequenceGenerator.
+public class ShardSequenceGenerator extends SequenceStyleGenerator {
+
+    private final String sequenceName;
+    private final int allocationSize;
+    private final Map<Integer, Optimizer> optimizers = new ConcurrentHashMap<>();
+
+    public ShardSequenceGenerator(ShardSequence config) {
+        this.sequenceName = config.sequenceName();
+        this.allocationSize = config.allocationSize();
+    }
+
+    @Override
+    public void configure(GeneratorCreationContext creationContext, Properties parameters) throws MappingException {
+        parameters.setProperty(SEQUENCE_PARAM, sequenceName);
+        parameters.setProperty(OptimizableGenerator.INCREMENT_PARAM, Integer.toString(allocationSize));
+        parameters.setProperty(OptimizableGenerator.INITIAL_PARAM, "1");
+        super.configure(creationContext, parameters);
+    }
+
+    @Override
+    public Object generate(SharedSessionContractImplementor session, Object owner) {
+        Optimizer optimizer = optimizers.computeIfAbsent(ShardRouter.currentShard(),
+                shard -> shard == 0 ? getOptimizer() : newOptimizer());
+        return optimizer.generate(getDatabaseStructure().buildCallback(session));
+    }
+
+    // Same kind as the one Hibernate chose for shard 0
+    private Optimizer newOptimizer() {
+        for (StandardOptimizerDescriptor descriptor : StandardOptimizerDescriptor.values()) {
+            if (descriptor.getOptimizerClass() == getOptimizer().getClass()) {
+                return OptimizerFactory.buildOptimizer(descriptor, getIdentifierType().getReturnedClass(),
+                        allocationSize, 1);
+            }
+        }
+        throw new IllegalStateException("Unknown optimizer " + getOptimizer().getClass());
+    }
+}
@@ -0,0 +1,41 @@
+package com.factory.machine_events.shard;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.List;
+
+// Replaces the single spring.datasource pool with one pool per events.shards.urls
+// entry behind a ShardRoutingDataSource. Credentials and pool size are shared.
+@Configuration
+@ConditionalOnProperty("events.shards.urls")
+public class ShardingConfig {
+
+    @Bean
+    public DataSource dataSource(@Value("${events.shards.urls}") String[] urls,
+                                 @Value("${spring.datasource.driverClassName:org.h2.Driver}") String driverClassName,
+                                 @Value("${spring.datasource.username:sa}") String username,
+                                 @Value("${spring.datasource.password:}") String password,
+                                 @Value("${spring.datasource.hikari.maximum-pool-size:10}") int maxPoolSize) {
+        if (urls.length == 0) {
+            throw new IllegalArgumentException("events.shards.urls must list at least one url");
+        }
+        List<HikariDataSource> shards = new ArrayList<>(urls.length);
+        for (int i = 0; i < urls.length; i++) {
+            HikariDataSource shard = new HikariDataSource();
+            shard.setPoolName("shard-" + i);
+            shard.setJdbcUrl(urls[i].trim());
+            shard.setDriverClassName(driverClassName);
+            shard.setUsername(username);
+            shard.setPassword(password);
+            shard.setMaximumPoolSize(maxPoolSize);
+            shards.add(shard);
+        }
+        return new ShardRoutingDataSource(shards);
+    }
+}
@@ -0,0 +1,104 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.AsyncIngestService;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.WriteAheadLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class AsyncIngestTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private WriteAheadLog writeAheadLog;
+
+    private AsyncIngestService asyncIngestService;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        // Writers are not started until the test has filled the queue
+        asyncIngestService = new AsyncIngestService(eventService, writeAheadLog, true, 3, 1, 5000, 100, 5, false);
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncIngestService.stop();
+    }
+
+    // Test 1: Coalesced batches are committed together but counted per ticket
+    @Test
+    void testCoalescedBatchesCountedPerTicket() throws InterruptedException {
+        EventRequest invalid = event("A-3", 1, BASE);
+        invalid.setDurationMs(-1L);
+
+        String first = asyncIngestService.submit(List.of(
+                event("A-1", 1, BASE), event("A-2", 2, BASE), invalid));
+        String second = asyncIngestService.submit(List.of(event("A-1", 1, BASE)));
+        String third = asyncIngestService.submit(List.of(event("A-2", 5, BASE.plusSeconds(1))));
+
+        asyncIngestService.start();
+
+        BatchResponse firstResult = await(first);
+        assertEquals(2, firstResult.getAccepted());
+        assertEquals(1, firstResult.getRejected());
+        assertEquals("INVALID_DURATION", firstResult.getRejections().get(0).getReason());
+        assertEquals(1, await(second).getDeduped());
+        assertEquals(1, await(third).getUpdated());
+        assertEquals(2, eventRepository.count());
+    }
+
+    // Test 2: A full queue turns batches away instead of blocking
+    @Test
+    void testFullQueueAppliesBackpressure() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            assertNotNull(asyncIngestService.submit(List.of(event("A-1" + i, 0, BASE))));
+        }
+        assertNull(asyncIngestService.submit(List.of(event("A-20", 0, BASE))));
+
+        // Fully invalid batches complete immediately and never need queue space
+        EventRequest invalid = event("A-21", 0, BASE);
+        invalid.setDurationMs(-1L);
+        String rejectedOnly = asyncIngestService.submit(List.of(invalid));
+        assertEquals(AsyncIngestService.Status.DONE, asyncIngestService.ticket(rejectedOnly).status());
+
+        asyncIngestService.start();
+        String afterDrain = null;
+        for (int attempt = 0; attempt < 100 && afterDrain == null; attempt++) {
+            afterDrain = asyncIngestService.submit(List.of(event("A-20", 0, BASE)));
+            Thread.sleep(50);
+        }
+        assertNotNull(afterDrain);
+        assertEquals(1, await(afterDrain).getAccepted());
+    }
+
+    private BatchResponse await(String ticketId) throws InterruptedException {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            AsyncIngestService.Ticket ticket = asyncIngestService.ticket(ticketId);
+            if (ticket.status() == AsyncIngestService.Status.DONE) {
+                return ticket.response();
+            }
+            assertNotEquals(AsyncIngestService.Status.FAILED, ticket.status(), ticket.error());
+            Thread.sleep(25);
+        }
+        return fail("Ticket " + ticketId + " did not complete");
+    }
+}
@@ -0,0 +1,70 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import jakarta.persistence.EntityManagerFactory;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.jpa.properties.hibernate.generate_statistics=true",
+        "spring.datasource.url=jdbc:h2:mem:batchdb"
+})
+class BatchInsertTest {
+
+    private static final int BATCH_SIZE = 1000;
+    private static final int JDBC_BATCH_SIZE = 50;
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    private Statistics statistics;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    // Test 1: 1000 new events go out as JDBC batches, not one INSERT per row
+    @Test
+    void testNewEventsAreInsertedInJdbcBatches() {
+        Instant base = Instant.parse("2026-01-15T10:00:00Z");
+        List<EventRequest> events = new ArrayList<>();
+        for (int i = 0; i < BATCH_SIZE; i++) {
+            events.add(event("B-" + i, "M-00" + (i % 5), "LINE-1", base.plusSeconds(i), i % 3));
+        }
+
+        BatchResponse response = eventService.processBatch(events);
+
+        assertEquals(BATCH_SIZE, response.getAccepted());
+        assertEquals(BATCH_SIZE, statistics.getEntityInsertCount());
+
+        // One sequence call and one batched INSERT per 50 rows, plus the eventId
+        // lookup and the pool's first sequence call; row-by-row would need 1000+
+        long expected = 2L * (BATCH_SIZE / JDBC_BATCH_SIZE) + 5;
+        assertTrue(statistics.getPrepareStatementCount() <= expected,
+                "Expected at most " + expected + " statements, got " + statistics.getPrepareStatementCount());
+        assertEquals(BATCH_SIZE, eventRepository.count());
+    }
+}
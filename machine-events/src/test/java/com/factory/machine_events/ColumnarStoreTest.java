@@ -0,0 +1,123 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.ColumnarEventStore;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.columnar.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:columnardb"
+})
+class ColumnarStoreTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private ColumnarEventStore columnarStore;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        columnarStore.afterSingletonsInstantiated();
+    }
+
+    // Test 1: Stats come from the columns, with the rows in the database gone
+    @Test
+    void testStatsServedFromColumns() {
+        eventService.processBatch(List.of(
+                event("C-1", "M-C1", "LINE-1", BASE.minusSeconds(1), 4, BASE),          // Before start
+                event("C-2", "M-C1", "LINE-1", BASE, 2, BASE),
+                event("C-3", "M-C1", "LINE-1", BASE.plus(90, ChronoUnit.MINUTES), -1, BASE),
+                event("C-4", "M-C1", "LINE-1", BASE.plus(2, ChronoUnit.HOURS), 3, BASE)  // At end
+        ));
+        eventRepository.deleteAll();
+
+        StatsResponse stats = statsService.getStats("M-C1", BASE, BASE.plus(2, ChronoUnit.HOURS));
+
+        assertTrue(columnarStore.isServing());
+        assertEquals(2, stats.getEventsCount());
+        assertEquals(2, stats.getDefectsCount()); // -1 ignored
+    }
+
+    // Test 2: Top defect lines add up every machine of the factory
+    @Test
+    void testTopDefectLinesFromColumns() {
+        eventService.processBatch(List.of(
+                event("C-10", "M-C2", "LINE-1", BASE, 1, BASE),
+                event("C-11", "M-C3", "LINE-2", BASE.plusSeconds(60), 5, BASE),
+                event("C-12", "M-C4", "LINE-2", BASE.plusSeconds(120), 2, BASE)
+        ));
+
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines(
+                "F01", BASE, BASE.plus(1, ChronoUnit.HOURS), 1);
+
+        assertEquals(1, top.size());
+        assertEquals("LINE-2", top.get(0).getLineId());
+        assertEquals(7, top.get(0).getTotalDefects());
+        assertEquals(2, top.get(0).getEventCount());
+    }
+
+    // Test 3: An update retracts the previous version, including its line
+    @Test
+    void testUpdateRetractsOldRow() {
+        EventRequest original = event("C-20", "M-C5", "LINE-3", BASE.plusSeconds(10), 5, BASE);
+        original.setReceivedTime(BASE);
+        eventService.processBatch(List.of(original));
+
+        EventRequest moved = event("C-20", "M-C5", "LINE-4", BASE.plus(40, ChronoUnit.MINUTES), 7, BASE);
+        moved.setReceivedTime(BASE.plusSeconds(1));
+        assertEquals(1, eventService.processBatch(List.of(moved)).getUpdated());
+
+        StatsResponse first = statsService.getStats("M-C5", BASE, BASE.plus(30, ChronoUnit.MINUTES));
+        StatsResponse whole = statsService.getStats("M-C5", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines(
+                "F01", BASE, BASE.plus(1, ChronoUnit.HOURS), 10);
+
+        assertEquals(0, first.getEventsCount());
+        assertEquals(1, whole.getEventsCount());
+        assertEquals(7, whole.getDefectsCount());
+        assertEquals(1, top.size());
+        assertEquals("LINE-4", top.get(0).getLineId());
+    }
+
+    // Test 4: A rebuild from the table answers the same, and unknown ids answer zero
+    @Test
+    void testRebuildFromTable() {
+        eventService.processBatch(List.of(
+                event("C-30", "M-C6", "LINE-5", BASE, 3, BASE),
+                event("C-31", "M-C6", null, BASE.plusSeconds(30), 1, BASE)
+        ));
+        StatsResponse before = statsService.getStats("M-C6", BASE, BASE.plus(1, ChronoUnit.HOURS));
+
+        columnarStore.afterSingletonsInstantiated();
+
+        StatsResponse after = statsService.getStats("M-C6", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        assertEquals(before.getEventsCount(), after.getEventsCount());
+        assertEquals(before.getDefectsCount(), after.getDefectsCount());
+        assertEquals(2, after.getEventsCount());
+        assertEquals(1, statsService.getTopDefectLines("F01", BASE, BASE.plus(1, ChronoUnit.HOURS), 10).size());
+        assertEquals(0, statsService.getStats("M-NONE", BASE, BASE.plus(1, ChronoUnit.HOURS)).getEventsCount());
+    }
+}
@@ -0,0 +1,123 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.repository.DimensionDictionary;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "spring.datasource.url=jdbc:h2:mem:dimensiondb"
+})
+class DimensionDictionaryTest {
+
+    private static final Instant EVENT_TIME = BASE.plus(10, ChronoUnit.MINUTES);
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private DimensionDictionary dimensions;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    // Test 1: Rows hold int keys that map back to the ids that were sent
+    @Test
+    void testRowsStoreKeys() {
+        eventService.processBatch(List.of(event("D-1", "M-001", "LINE-1", EVENT_TIME, 1, BASE)));
+
+        assertEquals("INTEGER", jdbcTemplate.queryForObject(
+                "SELECT DATA_TYPE FROM INFORMATION_SCHEMA.COLUMNS " +
+                "WHERE TABLE_NAME = 'MACHINE_EVENTS' AND COLUMN_NAME = 'MACHINE_ID'", String.class));
+        Integer machineKey = jdbcTemplate.queryForObject(
+                "SELECT machine_id FROM machine_events WHERE event_id = 'D-1'", Integer.class);
+        assertEquals(dimensions.find("M-001"), machineKey);
+        assertEquals("M-001", dimensions.name(machineKey));
+        assertEquals("M-001", eventRepository.findByEventId("D-1").orElseThrow().getMachineId());
+    }
+
+    // Test 2: Stats and top defect lines still answer with the string ids
+    @Test
+    void testStatsReturnIds() {
+        eventService.processBatch(List.of(
+                event("D-10", "M-002", "LINE-1", EVENT_TIME, 1, BASE),
+                event("D-11", "M-002", "LINE-2", EVENT_TIME, 1, BASE),
+                event("D-12", "M-003", "LINE-2", EVENT_TIME, 1, BASE)
+        ));
+
+        StatsResponse stats = statsService.getStats("M-002", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        assertEquals("M-002", stats.getMachineId());
+        assertEquals(2, stats.getEventsCount());
+
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines(
+                "F01", BASE, BASE.plus(1, ChronoUnit.HOURS), 10);
+        assertEquals("LINE-2", top.get(0).getLineId());
+        assertEquals(2, top.get(0).getEventCount());
+    }
+
+    // Test 3: Querying an id that was never ingested registers nothing
+    @Test
+    void testUnknownIdIsNotRegistered() {
+        int known = dimensions.size();
+
+        StatsResponse stats = statsService.getStats("M-NEVER", BASE, BASE.plus(1, ChronoUnit.HOURS));
+
+        assertEquals(0, stats.getEventsCount());
+        assertFalse(dimensions.contains("M-NEVER"));
+        assertEquals(known, dimensions.size());
+        assertEquals(known, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM dimensions", Integer.class));
+    }
+
+    // Test 4: A reload from the table keeps every key as it was
+    @Test
+    void testReloadKeepsKeys() {
+        eventService.processBatch(List.of(event("D-20", "M-004", "LINE-3", EVENT_TIME, 1, BASE)));
+        Integer key = dimensions.find("M-004");
+
+        dimensions.afterSingletonsInstantiated();
+
+        assertEquals(key, dimensions.find("M-004"));
+        assertEquals("LINE-3", dimensions.name(dimensions.find("LINE-3")));
+    }
+
+    // Test 5: Ids sent only on rejected events are never registered
+    @Test
+    void testRejectedEventRegistersNothing() {
+        int known = dimensions.size();
+        EventRequest invalid = event("D-30", "M-REJECTED", "LINE-REJECTED", EVENT_TIME, 1, BASE);
+        invalid.setDurationMs(-1L);
+
+        assertEquals(1, eventService.processBatch(List.of(invalid)).getRejected());
+
+        assertFalse(dimensions.contains("M-REJECTED"));
+        assertFalse(dimensions.contains("LINE-REJECTED"));
+        assertEquals(known, dimensions.size());
+    }
+}
@@ -0,0 +1,90 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.codec.EventFrameCodec;
+import com.factory.machine_events.codec.EventFrameHttpMessageConverter;
+import com.factory.machine_events.repository.EventRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.webmvc.test.autoconfigure.AutoConfigureMockMvc;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+@SpringBootTest(properties = {
+        "events.gzip.max-inflated-size=4KB",
+        "spring.datasource.url=jdbc:h2:mem:controllerdb"
+})
+@AutoConfigureMockMvc
+class EventControllerTest {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    // Test 1: Frames sent as application/x-machine-events are ingested like JSON
+    @Test
+    void testFrameBatchIngested() throws Exception {
+        ByteArrayOutputStream frame = new ByteArrayOutputStream();
+        EventFrameCodec.write(List.of(event("C-1", 1, BASE), event("C-2", 2, BASE), event("C-1", 1, BASE)), frame);
+
+        mockMvc.perform(post("/events/batch")
+                        .contentType(EventFrameHttpMessageConverter.MEDIA_TYPE)
+                        .content(frame.toByteArray()))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.accepted").value(2))
+                .andExpect(jsonPath("$.deduped").value(1));
+
+        assertEquals(2, eventRepository.count());
+    }
+
+    // Test 2: A gzip body that inflates past the limit is answered with 413
+    @Test
+    void testOversizedGzipBodyRejected() throws Exception {
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 100; i++) {
+            json.append(i > 0 ? "," : "").append("{\"eventId\":\"C-").append(i)
+                    .append("\",\"eventTime\":\"2026-01-15T10:10:00Z\",\"machineId\":\"M-001\"")
+                    .append(",\"durationMs\":1000,\"defectCount\":1}");
+        }
+        byte[] body = gzip(json.append("]").toString());
+        assertTrue(body.length < 4096);
+
+        mockMvc.perform(post("/events/batch")
+                        .contentType(MediaType.APPLICATION_JSON)
+                        .header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                        .content(body))
+                .andExpect(status().isPayloadTooLarge());
+
+        assertEquals(0, eventRepository.count());
+    }
+
+    private static byte[] gzip(String text) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(text.getBytes(StandardCharsets.UTF_8));
+        }
+        return bytes.toByteArray();
+    }
+}
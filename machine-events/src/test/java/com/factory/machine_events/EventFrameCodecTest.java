@@ -0,0 +1,121 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.codec.EventFrameCodec;
+import com.factory.machine_events.codec.GzipRequestFilter;
+import com.factory.machine_events.dto.EventRequest;
+import jakarta.servlet.http.HttpServletRequest;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.unit.DataSize;
+import org.springframework.web.server.PayloadTooLargeException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+class EventFrameCodecTest {
+
+    private static final Instant BASE = Instant.parse("2026-01-15T10:00:00.123Z");
+
+    // Test 1: Every field survives a round trip, including nulls and non-ASCII ids
+    @Test
+    void testRoundTrip() throws IOException {
+        EventRequest full = event("E-1", "M-001", "LINE-1", BASE, 3, BASE.minusSeconds(1));
+        EventRequest sparse = event("E-é中", "M-001", "LINE-1", BASE, null, BASE.minusSeconds(1));
+        sparse.setReceivedTime(null);
+        sparse.setDurationMs(null);
+        sparse.setLineId(null);
+        sparse.setFactoryId(null);
+
+        List<EventRequest> decoded = EventFrameCodec.read(new ByteArrayInputStream(encode(List.of(full, sparse))));
+
+        assertEquals(2, decoded.size());
+        assertEquals("E-1", decoded.get(0).getEventId());
+        assertEquals(BASE, decoded.get(0).getEventTime());
+        assertEquals(BASE.minusSeconds(1), decoded.get(0).getReceivedTime());
+        assertEquals(1000L, decoded.get(0).getDurationMs());
+        assertEquals(3, decoded.get(0).getDefectCount());
+        assertEquals("LINE-1", decoded.get(0).getLineId());
+        assertEquals("F01", decoded.get(0).getFactoryId());
+
+        assertEquals("E-é中", decoded.get(1).getEventId());
+        assertNull(decoded.get(1).getReceivedTime());
+        assertNull(decoded.get(1).getDurationMs());
+        assertNull(decoded.get(1).getDefectCount());
+        assertNull(decoded.get(1).getLineId());
+        assertNull(decoded.get(1).getFactoryId());
+    }
+
+    // Test 2: Wrong magic and truncated frames are refused
+    @Test
+    void testMalformedFrames() throws IOException {
+        byte[] frame = encode(List.of(event("E-2", "M-001", "LINE-1", BASE, 1, BASE.minusSeconds(1))));
+
+        byte[] wrongMagic = frame.clone();
+        wrongMagic[0] = '{';
+        assertThrows(EventFrameCodec.MalformedFrameException.class,
+                () -> EventFrameCodec.read(new ByteArrayInputStream(wrongMagic)));
+
+        byte[] truncated = Arrays.copyOf(frame, frame.length - 3);
+        assertThrows(IOException.class, () -> EventFrameCodec.read(new ByteArrayInputStream(truncated)));
+    }
+
+    // Test 3: Gzip bodies reach the handler inflated and without the encoding headers
+    @Test
+    void testGzipRequestInflated() throws Exception {
+        byte[] frame = encode(List.of(event("E-3", "M-001", "LINE-1", BASE, 2, BASE.minusSeconds(1))));
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(frame);
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/events/batch");
+        request.addHeader("Content-Encoding", "gzip");
+        request.setContent(compressed.toByteArray());
+        MockFilterChain chain = new MockFilterChain();
+
+        new GzipRequestFilter(DataSize.ofMegabytes(1)).doFilter(request, new MockHttpServletResponse(), chain);
+
+        HttpServletRequest forwarded = (HttpServletRequest) chain.getRequest();
+        assertNull(forwarded.getHeader("Content-Encoding"));
+        assertEquals(-1, forwarded.getContentLength());
+        assertEquals("E-3", EventFrameCodec.read(forwarded.getInputStream()).get(0).getEventId());
+    }
+
+    // Test 4: A body that inflates past the limit fails the read with 413
+    @Test
+    void testGzipInflatedSizeLimited() throws Exception {
+        ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(compressed)) {
+            gzip.write(new byte[64 * 1024]);
+        }
+
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/events/stream");
+        request.addHeader("Content-Encoding", "gzip");
+        request.setContent(compressed.toByteArray());
+        MockFilterChain chain = new MockFilterChain();
+
+        new GzipRequestFilter(DataSize.ofKilobytes(32)).doFilter(request, new MockHttpServletResponse(), chain);
+
+        InputStream body = chain.getRequest().getInputStream();
+        PayloadTooLargeException tooLarge = assertThrows(PayloadTooLargeException.class, body::readAllBytes);
+        assertEquals(HttpStatus.PAYLOAD_TOO_LARGE, tooLarge.getStatusCode());
+    }
+
+    private static byte[] encode(List<EventRequest> events) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        EventFrameCodec.write(events, out);
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,114 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.repository.DimensionDictionary;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventIdFilter;
+import com.factory.machine_events.service.EventService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.id-filter.enabled=true",
+        "events.id-filter.expected-ids=100",
+        "events.id-filter.fpp=0.01",
+        "spring.datasource.url=jdbc:h2:mem:idfilterdb"
+})
+class EventIdFilterTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventIdFilter eventIdFilter;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private DimensionDictionary dimensions;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    // Test 1: New ids skip the lookup, repeats are still found and deduped or updated
+    @Test
+    void testNewIdsSkipLookup() {
+        long saved = eventIdFilter.skipped();
+
+        BatchResponse first = eventService.processBatch(List.of(
+                event("F-1", 1, BASE),
+                event("F-2", 2, BASE)
+        ));
+        assertEquals(2, first.getAccepted());
+        assertEquals(saved + 2, eventIdFilter.skipped());
+
+        BatchResponse second = eventService.processBatch(List.of(
+                event("F-1", 1, BASE),                        // Duplicate
+                event("F-2", 5, BASE.plusSeconds(1))          // Newer payload
+        ));
+        assertEquals(1, second.getDeduped());
+        assertEquals(1, second.getUpdated());
+        assertEquals(0, second.getAccepted());
+        assertEquals(2, eventRepository.count());
+    }
+
+    // Test 2: The filter grows past expected-ids without losing ids or its error bound
+    @Test
+    void testGrowsWithoutFalseNegatives() {
+        List<EventRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            batch.add(event("G-" + i, 1, BASE));
+        }
+        assertEquals(2000, eventService.processBatch(batch).getAccepted());
+        assertTrue(eventIdFilter.layers() > 1);
+
+        BatchResponse repeat = eventService.processBatch(batch);
+        assertEquals(2000, repeat.getDeduped());
+        assertEquals(0, repeat.getAccepted());
+
+        long falsePositives = eventIdFilter.falsePositives();
+        long saved = eventIdFilter.skipped();
+        List<EventRequest> fresh = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            fresh.add(event("H-" + i, 1, BASE));
+        }
+        assertEquals(2000, eventService.processBatch(fresh).getAccepted());
+        long misses = eventIdFilter.falsePositives() - falsePositives;
+        assertEquals(2000, misses + eventIdFilter.skipped() - saved);
+        assertTrue(misses < 2000 * 0.01 * 2, "false positives: " + misses);
+    }
+
+    // Test 3: A rebuild loads the ids already stored in the table
+    @Test
+    void testRebuildLoadsStoredIds() {
+        jdbcTemplate.update("INSERT INTO machine_events (id, event_id, event_time, received_time, machine_id, " +
+                "duration_ms, defect_count, line_id, factory_id, version) " +
+                "VALUES (NEXT VALUE FOR machine_events_seq, 'R-1', ?, ?, ?, 1000, 1, ?, ?, 0)",
+                BASE.atOffset(ZoneOffset.UTC), BASE.atOffset(ZoneOffset.UTC),
+                dimensions.key("M-001"), dimensions.key("LINE-1"), dimensions.key("F01"));
+        eventIdFilter.rebuild();
+
+        BatchResponse response = eventService.processBatch(List.of(event("R-1", 1, BASE)));
+
+        assertEquals(1, response.getDeduped());
+        assertEquals(0, response.getAccepted());
+    }
+}
@@ -0,0 +1,121 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventIdFilter;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.RecentEventCache;
+import com.factory.machine_events.service.StatsCache;
+import com.factory.machine_events.service.StatsService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.id-filter.enabled=true",
+        "events.recent-cache.enabled=true",
+        "events.stats-cache.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:metricsdb"
+})
+class EventMetricsTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private EventIdFilter eventIdFilter;
+
+    @Autowired
+    private RecentEventCache recentEventCache;
+
+    @Autowired
+    private StatsCache statsCache;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    // Test 1: Outcomes and rejection reasons are counted per batch
+    @Test
+    void testOutcomesAndRejectionsCounted() {
+        double accepted = count("events.ingest.events", "outcome", "accepted");
+        double deduped = count("events.ingest.events", "outcome", "deduped");
+        double invalidDuration = count("events.ingest.rejections", "reason", "INVALID_DURATION");
+        long batches = meterRegistry.get("events.ingest.batch.size").summary().count();
+
+        EventRequest invalid = event("E-MET-1", 1, BASE);
+        invalid.setDurationMs(-1L);
+        eventService.processBatch(List.of(event("E-MET-1", 1, BASE), event("E-MET-1", 1, BASE), invalid));
+
+        assertEquals(accepted + 1, count("events.ingest.events", "outcome", "accepted"));
+        assertEquals(deduped + 1, count("events.ingest.events", "outcome", "deduped"));
+        assertEquals(invalidDuration + 1, count("events.ingest.rejections", "reason", "INVALID_DURATION"));
+        assertEquals(batches + 1, meterRegistry.get("events.ingest.batch.size").summary().count());
+
+        // Coalesced batches are sized one by one but timed as the one call they share
+        long calls = meterRegistry.get("events.ingest.batch").timer().count();
+        eventService.processBatches(List.of(List.of(event("E-MET-3", 1, BASE)), List.of(event("E-MET-4", 1, BASE))));
+        assertEquals(batches + 3, meterRegistry.get("events.ingest.batch.size").summary().count());
+        assertEquals(calls + 1, meterRegistry.get("events.ingest.batch").timer().count());
+    }
+
+    // Test 2: Every processBatch stage and stats query is timed
+    @Test
+    void testStagesAndQueriesTimed() {
+        eventService.processBatch(List.of(event("E-MET-2", 1, BASE)));
+        statsService.getStats("M-001", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        statsService.getTopDefectLines("F01", BASE, BASE.plus(1, ChronoUnit.HOURS), 5);
+
+        for (String stage : List.of("validate", "lookup", "diff", "save")) {
+            assertTrue(meterRegistry.get("events.ingest.stage").tag("stage", stage).timer().count() > 0, stage);
+        }
+        assertTrue(meterRegistry.get("events.ingest.batch").timer().count() > 0);
+        assertTrue(meterRegistry.get("events.stats.query").tag("query", "stats").timer().count() > 0);
+        assertTrue(meterRegistry.get("events.stats.query").tag("query", "top-defect-lines").timer().count() > 0);
+    }
+
+    // Test 3: Id filter and cache counters are exposed as meters that read the beans' own counts
+    @Test
+    void testFilterAndCacheCountersRegistered() {
+        eventService.processBatch(List.of(event("E-MET-5", 1, BASE)));
+        statsService.getStats("M-001", BASE, BASE.plus(1, ChronoUnit.HOURS));
+
+        assertTrue(eventIdFilter.checked() > 0);
+        assertEquals(eventIdFilter.checked(), meterRegistry.get("events.id.filter.checked").functionCounter().count());
+        assertEquals(eventIdFilter.skipped(), meterRegistry.get("events.id.filter.skipped").functionCounter().count());
+        assertEquals(eventIdFilter.falsePositives(),
+                meterRegistry.get("events.id.filter.false.positives").functionCounter().count());
+        assertEquals(recentEventCache.misses(), meterRegistry.get("events.cache.gets")
+                .tags("cache", "recent-events", "result", "miss").functionCounter().count());
+        assertEquals(statsCache.hits(), meterRegistry.get("events.cache.gets")
+                .tags("cache", "stats", "result", "hit").functionCounter().count());
+        assertEquals(statsCache.invalidations(), meterRegistry.get("events.cache.invalidations")
+                .tag("cache", "stats").functionCounter().count());
+        assertEquals(statsCache.size(), meterRegistry.get("events.cache.size").tag("cache", "stats").gauge().value());
+    }
+
+    private double count(String name, String tag, String value) {
+        Counter counter = meterRegistry.find(name).tag(tag, value).counter();
+        return counter != null ? counter.count() : 0;
+    }
+}
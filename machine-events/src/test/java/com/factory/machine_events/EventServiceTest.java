@@ -3,6 +3,7 @@ package com.factory.machine_events;
 import com.factory.machine_events.dto.BatchResponse;
 import com.factory.machine_events.dto.EventRequest;
 import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
 import com.factory.machine_events.model.MachineEvent;
 import com.factory.machine_events.repository.EventRepository;
 import com.factory.machine_events.service.EventService;
@@ -11,6 +12,7 @@ import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
 
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -35,6 +37,9 @@ class EventServiceTest {
     @Autowired
     private EventRepository eventRepository;
 
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
     @BeforeEach
     void setUp() {
         eventRepository.deleteAll();
@@ -302,6 +307,59 @@ class EventServiceTest {
         assertEquals(1, sharedEventCount, "Should have exactly one E-SHARED event");
     }
 
+    // Test 9: Top defect lines are ranked by defects and limited by the query
+    @Test
+    void testTopDefectLinesRankedAndLimited() {
+        Instant base = Instant.parse("2026-01-15T10:00:00Z");
+
+        List<EventRequest> events = new ArrayList<>();
+        String[] lines = {"LINE-1", "LINE-2", "LINE-3"};
+        int[] defects = {2, 7, 4};
+        for (int i = 0; i < lines.length; i++) {
+            EventRequest event = createEvent("E-TOP-" + i, base.plusSeconds(i), "M-001", 1000L, defects[i]);
+            event.setLineId(lines[i]);
+            events.add(event);
+        }
+        EventRequest unknown = createEvent("E-TOP-3", base.plusSeconds(3), "M-001", 1000L, -1);
+        unknown.setLineId("LINE-1");
+        events.add(unknown);
+
+        eventService.processBatch(events);
+
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines("F01",
+                base, base.plus(1, ChronoUnit.HOURS), 2);
+
+        assertEquals(2, top.size());
+        assertEquals("LINE-2", top.get(0).getLineId());
+        assertEquals(7, top.get(0).getTotalDefects());
+        assertEquals("LINE-3", top.get(1).getLineId());
+        assertEquals(1, top.get(1).getEventCount());
+    }
+
+    // Test 10: Payload hash is stored, and a colliding hash is caught by the field comparison
+    @Test
+    void testPayloadHashCollisionFallsBackToFields() {
+        Instant base = Instant.parse("2026-01-15T10:00:00Z");
+        EventRequest original = createEvent("E-HASH", base, "M-001", 1000L, 1);
+        original.setReceivedTime(base);
+        eventService.processBatch(List.of(original));
+
+        MachineEvent stored = eventRepository.findByEventIdIn(List.of("E-HASH")).get(0);
+        assertEquals(MachineEvent.payloadHash(base, "M-001", 1000L, 1, "LINE-1", "F01"), stored.getPayloadHash());
+
+        // Pretend the stored payload hashes like the update below
+        long changedHash = MachineEvent.payloadHash(base, "M-001", 1000L, 5, "LINE-1", "F01");
+        jdbcTemplate.update("UPDATE machine_events SET payload_hash = ? WHERE event_id = 'E-HASH'", changedHash);
+
+        EventRequest changed = createEvent("E-HASH", base, "M-001", 1000L, 5);
+        changed.setReceivedTime(base.plusSeconds(1));
+        BatchResponse response = eventService.processBatch(List.of(changed));
+
+        assertEquals(1, response.getUpdated());
+        assertEquals(0, response.getDeduped());
+        assertEquals(5, eventRepository.findByEventIdIn(List.of("E-HASH")).get(0).getDefectCount());
+    }
+
     // Helper method to create event request
     private EventRequest createEvent(String eventId, Instant eventTime,
                                      String machineId, Long duration, Integer defects) {
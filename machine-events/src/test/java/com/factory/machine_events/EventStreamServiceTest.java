@@ -0,0 +1,94 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.EventStreamService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.util.unit.DataSize;
+import tools.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest
+class EventStreamServiceTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    private EventStreamService streamService;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        // Small chunks so a short stream spans several transactions
+        streamService = new EventStreamService(eventService, objectMapper, 2, DataSize.ofBytes(512));
+    }
+
+    // Test 1: Counters across chunks match what one batch would report
+    @Test
+    void testStreamCountersAcrossChunks() {
+        String body = line("S-1", 1000) + line("S-2", 1000) + line("S-1", 1000)
+                + line("S-3", -5) + line("S-4", 1000);
+
+        BatchResponse response = streamService.processStream(stream(body));
+
+        assertEquals(3, response.getAccepted());
+        assertEquals(1, response.getDeduped());
+        assertEquals(0, response.getUpdated());
+        assertEquals(1, response.getRejected());
+        assertEquals("INVALID_DURATION", response.getRejections().get(0).getReason());
+        assertEquals(3, eventRepository.count());
+    }
+
+    // Test 2: A malformed line is rejected on its own and the lines after it are still read
+    @Test
+    void testMalformedLineRejectedAndStreamContinues() {
+        String body = line("S-10", 1000) + line("S-11", 1000) + "{\"eventId\": \n"
+                + "\n" + line("S-12", 1000) + "null\n" + line("S-13", 1000);
+
+        BatchResponse response = streamService.processStream(stream(body));
+
+        assertEquals(4, response.getAccepted());
+        assertEquals(2, response.getRejected());
+        assertEquals("MALFORMED_EVENT", response.getRejections().get(0).getReason());
+        assertEquals("MALFORMED_EVENT", response.getRejections().get(1).getReason());
+        assertEquals(4, eventRepository.count());
+    }
+
+    // Test 3: A line over the length limit is rejected without being buffered, CRLF lines still parse
+    @Test
+    void testOversizedLineRejected() {
+        String oversized = line("S-20", 1000).replace("\"lineId\"", "\"padding\":\"" + "x".repeat(1000) + "\",\"lineId\"");
+        String body = line("S-21", 1000).replace("\n", "\r\n") + oversized + line("S-22", 1000);
+
+        BatchResponse response = streamService.processStream(stream(body));
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(1, response.getRejected());
+        assertEquals("EVENT_TOO_LARGE", response.getRejections().get(0).getReason());
+        assertEquals(2, eventRepository.count());
+    }
+
+    private String line(String eventId, long durationMs) {
+        return "{\"eventId\":\"" + eventId + "\",\"eventTime\":\"2026-01-15T10:00:00.000Z\","
+                + "\"machineId\":\"M-001\",\"durationMs\":" + durationMs + ",\"defectCount\":1,"
+                + "\"lineId\":\"LINE-1\",\"factoryId\":\"F01\"}\n";
+    }
+
+    private ByteArrayInputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+}
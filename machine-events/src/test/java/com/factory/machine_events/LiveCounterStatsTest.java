@@ -0,0 +1,95 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.live.enabled=true",
+        "events.live.horizon-minutes=120",
+        "spring.datasource.url=jdbc:h2:mem:livedb"
+})
+class LiveCounterStatsTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    // Counters live as long as the context, so each test uses its own machine
+    private Instant base;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        base = Instant.now().truncatedTo(ChronoUnit.MINUTES).minus(1, ChronoUnit.HOURS);
+    }
+
+    // Test 1: Whole minutes come from memory, edges and old windows from the database
+    @Test
+    void testStatsServedFromCountersInsideHorizon() {
+        eventService.processBatch(List.of(
+                event("L-1", "M-L1", "LINE-1", base.minusSeconds(40), 1),                 // Before start
+                event("L-2", "M-L1", "LINE-1", base.minusSeconds(10), 2),                 // Leading edge
+                event("L-3", "M-L1", "LINE-1", base.plus(5, ChronoUnit.MINUTES), 3),      // Whole minute
+                event("L-4", "M-L1", "LINE-1", base.plus(20, ChronoUnit.MINUTES), -1)     // Whole minute
+        ));
+
+        Instant start = base.minusSeconds(20);
+        Instant end = base.plus(30, ChronoUnit.MINUTES);
+
+        StatsResponse stats = statsService.getStats("M-L1", start, end);
+        assertEquals(3, stats.getEventsCount());
+        assertEquals(5, stats.getDefectsCount()); // 2 + 3, -1 ignored
+
+        // With the rows gone only the in-memory minutes remain
+        eventRepository.deleteAll();
+
+        StatsResponse live = statsService.getStats("M-L1", start, end);
+        assertEquals(2, live.getEventsCount());
+        assertEquals(3, live.getDefectsCount());
+
+        StatsResponse beyondHorizon = statsService.getStats("M-L1", base.minus(3, ChronoUnit.HOURS), end);
+        assertEquals(0, beyondHorizon.getEventsCount());
+    }
+
+    // Test 2: An update moving an event to another minute moves its counts
+    @Test
+    void testUpdateMovesCounters() {
+        EventRequest original = event("L-10", "M-L2", "LINE-1", base.plus(10, ChronoUnit.MINUTES), 5);
+        original.setReceivedTime(base);
+        eventService.processBatch(List.of(original));
+
+        EventRequest moved = event("L-10", "M-L2", "LINE-1", base.plus(40, ChronoUnit.MINUTES), 7);
+        moved.setReceivedTime(base.plusSeconds(1));
+        assertEquals(1, eventService.processBatch(List.of(moved)).getUpdated());
+
+        eventRepository.deleteAll();
+
+        StatsResponse first = statsService.getStats("M-L2", base, base.plus(30, ChronoUnit.MINUTES));
+        StatsResponse second = statsService.getStats("M-L2",
+                base.plus(30, ChronoUnit.MINUTES), base.plus(60, ChronoUnit.MINUTES));
+
+        assertEquals(0, first.getEventsCount());
+        assertEquals(0, first.getDefectsCount());
+        assertEquals(1, second.getEventsCount());
+        assertEquals(7, second.getDefectsCount());
+    }
+}
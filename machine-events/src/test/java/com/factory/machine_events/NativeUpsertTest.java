@@ -0,0 +1,138 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.LineRollupRepository;
+import com.factory.machine_events.repository.MachineRollupRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.persistence.mode=native",
+        "events.rollup.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:nativedb"
+})
+class NativeUpsertTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MachineRollupRepository machineRollupRepository;
+
+    @Autowired
+    private LineRollupRepository lineRollupRepository;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        machineRollupRepository.deleteAll();
+        lineRollupRepository.deleteAll();
+    }
+
+    // Test 1: Accepted, deduped, updated and rejected counts match the entity path
+    @Test
+    void testCountsMatchEntityPath() {
+        eventService.processBatch(List.of(
+                event("N-1", "M-001", "LINE-1", BASE, 1, BASE),
+                event("N-2", "M-001", "LINE-1", BASE, 2, BASE),
+                event("N-3", "M-001", "LINE-1", BASE, 3, BASE)
+        ));
+
+        EventRequest invalid = event("N-5", "M-001", "LINE-1", BASE, 0, BASE);
+        invalid.setDurationMs(-1L);
+
+        BatchResponse response = eventService.processBatch(List.of(
+                event("N-1", "M-001", "LINE-1", BASE, 1, BASE.plusSeconds(5)),       // Identical payload
+                event("N-2", "M-001", "LINE-1", BASE, 9, BASE.plusSeconds(5)),       // Newer receivedTime
+                event("N-3", "M-001", "LINE-1", BASE, 9, BASE.minusSeconds(5)),      // Older receivedTime
+                event("N-4", "M-001", "LINE-1", BASE, 4, BASE),                      // New
+                invalid
+        ));
+
+        assertEquals(1, response.getAccepted());
+        assertEquals(2, response.getDeduped());
+        assertEquals(1, response.getUpdated());
+        assertEquals(1, response.getRejected());
+
+        MachineEvent updated = eventRepository.findByEventIdIn(List.of("N-2")).get(0);
+        assertEquals(9, updated.getDefectCount());
+        assertEquals(1L, updated.getVersion());
+        assertEquals(3, eventRepository.findByEventIdIn(List.of("N-3")).get(0).getDefectCount());
+        assertEquals(4, eventRepository.count());
+    }
+
+    // Test 2: Repeats within one batch are applied in order
+    @Test
+    void testRepeatedEventIdWithinBatch() {
+        BatchResponse response = eventService.processBatch(List.of(
+                event("N-10", "M-001", "LINE-1", BASE, 1, BASE),
+                event("N-10", "M-001", "LINE-1", BASE, 1, BASE),                     // Duplicate of the first
+                event("N-10", "M-001", "LINE-1", BASE, 6, BASE.plusSeconds(1))       // Newer payload
+        ));
+
+        assertEquals(1, response.getAccepted());
+        assertEquals(1, response.getDeduped());
+        assertEquals(1, response.getUpdated());
+        assertEquals(1, eventRepository.count());
+        assertEquals(6, eventRepository.findByEventIdIn(List.of("N-10")).get(0).getDefectCount());
+    }
+
+    // Test 3: Updates move rollup contributions like the entity path
+    @Test
+    void testUpdateMovesRollupContribution() {
+        eventService.processBatch(List.of(event("N-20", "M-001", "LINE-1", BASE.plus(10, ChronoUnit.MINUTES), 5, BASE)));
+        eventService.processBatch(List.of(
+                event("N-20", "M-001", "LINE-1", BASE.plus(70, ChronoUnit.MINUTES), 7, BASE.plusSeconds(1))));
+
+        StatsResponse firstHour = statsService.getStats("M-001", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        StatsResponse secondHour = statsService.getStats("M-001",
+                BASE.plus(1, ChronoUnit.HOURS), BASE.plus(2, ChronoUnit.HOURS));
+
+        assertEquals(0, firstHour.getEventsCount());
+        assertEquals(1, secondHour.getEventsCount());
+        assertEquals(7, secondHour.getDefectsCount());
+    }
+
+    // Test 4: Hashes are written by the MERGE, and a colliding hash still updates
+    @Test
+    void testPayloadHashCollisionFallsBackToColumns() {
+        eventService.processBatch(List.of(event("N-30", "M-001", "LINE-1", BASE, 1, BASE)));
+        assertEquals(MachineEvent.payloadHash(BASE, "M-001", 1000L, 1, "LINE-1", "F01"),
+                eventRepository.findByEventIdIn(List.of("N-30")).get(0).getPayloadHash());
+
+        jdbcTemplate.update("UPDATE machine_events SET payload_hash = ? WHERE event_id = 'N-30'",
+                MachineEvent.payloadHash(BASE, "M-001", 1000L, 8, "LINE-1", "F01"));
+
+        BatchResponse response = eventService.processBatch(List.of(event("N-30", "M-001", "LINE-1", BASE, 8, BASE.plusSeconds(1))));
+
+        assertEquals(1, response.getUpdated());
+        MachineEvent updated = eventRepository.findByEventIdIn(List.of("N-30")).get(0);
+        assertEquals(8, updated.getDefectCount());
+        assertEquals(MachineEvent.payloadHash(BASE, "M-001", 1000L, 8, "LINE-1", "F01"), updated.getPayloadHash());
+    }
+}
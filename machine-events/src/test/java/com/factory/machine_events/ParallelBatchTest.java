@@ -0,0 +1,101 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.RejectionDetail;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.LineRollupRepository;
+import com.factory.machine_events.repository.MachineRollupRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.parallel.threshold=10",
+        "events.parallel.partitions=4",
+        "events.rollup.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:paralleldb"
+})
+class ParallelBatchTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MachineRollupRepository machineRollupRepository;
+
+    @Autowired
+    private LineRollupRepository lineRollupRepository;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        machineRollupRepository.deleteAll();
+        lineRollupRepository.deleteAll();
+    }
+
+    // Test 1: Repeats within a partitioned batch are applied in batch order
+    @Test
+    void testRepeatedEventIdsKeepBatchOrder() {
+        List<EventRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            batch.add(event("P-" + i, 1, BASE));
+        }
+        for (int i = 0; i < 50; i++) {
+            batch.add(event("P-" + i, 1, BASE));                          // Duplicate
+            batch.add(event("P-" + i, 7, BASE.plusSeconds(2)));           // Newer payload
+            batch.add(event("P-" + i, 9, BASE.plusSeconds(1)));           // Older than the update
+        }
+
+        BatchResponse response = eventService.processBatch(batch);
+
+        assertEquals(50, response.getAccepted());
+        assertEquals(100, response.getDeduped());
+        assertEquals(50, response.getUpdated());
+        assertEquals(50, eventRepository.count());
+        assertEquals(7, eventRepository.findByEventIdIn(List.of("P-17")).get(0).getDefectCount());
+
+        StatsResponse stats = statsService.getStats("M-001", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        assertEquals(50, stats.getEventsCount());
+        assertEquals(350, stats.getDefectsCount());
+    }
+
+    // Test 2: Rejections come back in request order across partitions
+    @Test
+    void testRejectionsInRequestOrder() {
+        List<EventRequest> batch = new ArrayList<>();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            EventRequest event = event("R-" + i, 1, BASE);
+            if (i % 3 == 0) {
+                event.setDurationMs(-1L);
+                expected.add(event.getEventId());
+            }
+            batch.add(event);
+        }
+
+        BatchResponse response = eventService.processBatch(batch);
+
+        assertEquals(expected.size(), response.getRejected());
+        assertEquals(40 - expected.size(), response.getAccepted());
+        assertEquals(expected, response.getRejections().stream().map(RejectionDetail::getEventId).toList());
+    }
+}
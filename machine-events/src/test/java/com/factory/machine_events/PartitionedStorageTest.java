@@ -0,0 +1,167 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.repository.LineRollupRepository;
+import com.factory.machine_events.repository.MachineRollupRepository;
+import com.factory.machine_events.repository.PartitionedEventStore;
+import com.factory.machine_events.service.EventRetentionService;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.RollupService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.persistence.mode=partitioned",
+        "events.partitions.span-hours=24",
+        "events.partitions.retention-hours=48",
+        "events.rollup.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:partitiondb"
+})
+class PartitionedStorageTest {
+
+    private static final Instant DAY0 = Instant.parse("2026-01-15T00:00:00Z");
+    private static final Instant DAY1 = DAY0.plus(1, ChronoUnit.DAYS);
+    private static final Instant DAY2 = DAY0.plus(2, ChronoUnit.DAYS);
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRetentionService eventRetentionService;
+
+    @Autowired
+    private PartitionedEventStore partitionedEventStore;
+
+    @Autowired
+    private MachineRollupRepository machineRollupRepository;
+
+    @Autowired
+    private LineRollupRepository lineRollupRepository;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+
+    @BeforeEach
+    void setUp() {
+        partitionedEventStore.dropPartitionsBefore(Instant.parse("2100-01-01T00:00:00Z"));
+        machineRollupRepository.deleteAll();
+        lineRollupRepository.deleteAll();
+    }
+
+    // Test 1: Each day lands in its own partition and stats read only the days they cover
+    @Test
+    void testEventsSplitByDay() {
+        BatchResponse response = eventService.processBatch(List.of(
+                event("P-1", "M-001", "LINE-1", DAY0.plus(2, ChronoUnit.HOURS), 1, DAY2),
+                event("P-2", "M-001", "LINE-1", DAY1.plus(2, ChronoUnit.HOURS), 2, DAY2),
+                event("P-3", "M-001", "LINE-2", DAY1.plus(3, ChronoUnit.HOURS), 5, DAY2),
+                event("P-4", "M-001", "LINE-2", DAY2.plus(2, ChronoUnit.HOURS), 4, DAY2),
+                event("P-2", "M-001", "LINE-1", DAY1.plus(2, ChronoUnit.HOURS), 2, DAY2)   // Duplicate
+        ));
+
+        assertEquals(4, response.getAccepted());
+        assertEquals(1, response.getDeduped());
+        assertEquals(3, partitionedEventStore.partitions().size());
+
+        assertEquals(7, statsService.getStats("M-001", DAY1, DAY2).getDefectsCount());
+        assertEquals(2, statsService.getStats("M-001", DAY1, DAY2).getEventsCount());
+        assertEquals(12, statsService.getStats("M-001", DAY0, DAY2.plus(1, ChronoUnit.DAYS)).getDefectsCount());
+
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines("F01", DAY1, DAY2, 1);
+        assertEquals(1, top.size());
+        assertEquals("LINE-2", top.get(0).getLineId());
+        assertEquals(5, top.get(0).getTotalDefects());
+    }
+
+    // Test 2: An update that changes the eventTime day moves the row to the new partition
+    @Test
+    void testUpdateMovesAcrossPartitions() {
+        eventService.processBatch(List.of(event("P-10", "M-001", "LINE-1", DAY0.plus(5, ChronoUnit.HOURS), 3, DAY2)));
+
+        BatchResponse response = eventService.processBatch(List.of(
+                event("P-10", "M-001", "LINE-1", DAY2.plus(5, ChronoUnit.HOURS), 6, DAY2.plusSeconds(1))));
+
+        assertEquals(1, response.getUpdated());
+        assertEquals(0, statsService.getStats("M-001", DAY0, DAY1).getEventsCount());
+        assertEquals(6, statsService.getStats("M-001", DAY2, DAY2.plus(1, ChronoUnit.DAYS)).getDefectsCount());
+
+        // Still one event, so a repeat of the update is a duplicate
+        BatchResponse repeat = eventService.processBatch(List.of(
+                event("P-10", "M-001", "LINE-1", DAY2.plus(5, ChronoUnit.HOURS), 6, DAY2.plusSeconds(1))));
+        assertEquals(1, repeat.getDeduped());
+        assertEquals(1, statsService.getStats("M-001", DAY0, DAY2.plus(1, ChronoUnit.DAYS)).getEventsCount());
+    }
+
+    // Test 3: Retention drops whole expired partitions along with their rollup hours
+    @Test
+    void testRetentionDropsExpiredPartitions() {
+        eventService.processBatch(List.of(
+                event("P-20", "M-001", "LINE-1", DAY0.plus(2, ChronoUnit.HOURS), 3, DAY2),
+                event("P-21", "M-001", "LINE-1", DAY2.plus(2, ChronoUnit.HOURS), 4, DAY2)
+        ));
+        assertEquals(3, statsService.getStats("M-001", DAY0, DAY1).getDefectsCount());
+
+        // Cutoff falls inside DAY1, so only DAY0 has fully expired
+        assertEquals(1, eventRetentionService.dropExpired(DAY1.plus(60, ChronoUnit.HOURS)));
+
+        assertEquals(List.of(partitionedEventStore.partitionOf(DAY2)), List.copyOf(partitionedEventStore.partitions()));
+        assertEquals(0, statsService.getStats("M-001", DAY0, DAY1).getEventsCount());
+        assertTrue(machineRollupRepository.findAll().stream()
+                .allMatch(rollup -> rollup.getEpochHour() >= RollupService.epochHour(DAY1)));
+        assertEquals(4, statsService.getStats("M-001", DAY0, DAY2.plus(1, ChronoUnit.DAYS)).getDefectsCount());
+        assertEquals(List.of("P-21"), partitionedEventStore.storedEventIds(List.of("P-20", "P-21")));
+    }
+
+    // Test 4: Two writers placing one eventId in different windows never leave two rows
+    @Test
+    void testConcurrentWritersKeepEventIdUnique() throws Exception {
+        CountDownLatch written = new CountDownLatch(1);
+        CountDownLatch commit = new CountDownLatch(1);
+        Thread first = new Thread(() -> transactionTemplate.executeWithoutResult(status -> {
+            eventService.processBatch(List.of(event("P-30", "M-001", "LINE-1", DAY0.plus(2, ChronoUnit.HOURS), 1, DAY2)));
+            written.countDown();
+            try {
+                commit.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }));
+        first.start();
+        written.await();
+
+        // Sees nothing committed, so it writes P-30 to DAY1 and waits on the first writer
+        CompletableFuture<BatchResponse> second = CompletableFuture.supplyAsync(() -> eventService.processBatch(
+                List.of(event("P-30", "M-001", "LINE-1", DAY1.plus(2, ChronoUnit.HOURS), 2, DAY2))));
+        Thread.sleep(200);
+        commit.countDown();
+        first.join();
+
+        CompletionException failure = assertThrows(CompletionException.class, second::join);
+        assertInstanceOf(DataIntegrityViolationException.class, failure.getCause());
+        assertEquals(1, jdbcTemplate.queryForObject("SELECT COUNT(*) FROM " + partitionedEventStore.allEvents() +
+                " WHERE event_id = ?", Integer.class, "P-30"));
+    }
+}
@@ -0,0 +1,102 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.RecentEventCache;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.recent-cache.enabled=true",
+        "events.recent-cache.memory-budget-mb=1",
+        "spring.datasource.url=jdbc:h2:mem:recentcachedb"
+})
+class RecentEventCacheTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private RecentEventCache recentEventCache;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recentEventCache.clear();
+    }
+
+    // Test 1: Retries are settled from the cache, newer payloads still update
+    @Test
+    void testRetriesSettledFromCache() {
+        eventService.processBatch(List.of(event("C-1", 1, BASE), event("C-2", 2, BASE)));
+        long hits = recentEventCache.hits();
+
+        BatchResponse retry = eventService.processBatch(List.of(
+                event("C-1", 1, BASE.plusSeconds(1)),         // Same payload
+                event("C-2", 7, BASE.minusSeconds(1))         // Older receivedTime
+        ));
+        assertEquals(2, retry.getDeduped());
+        assertEquals(hits + 2, recentEventCache.hits());
+
+        BatchResponse update = eventService.processBatch(List.of(event("C-2", 7, BASE.plusSeconds(2))));
+        assertEquals(1, update.getUpdated());
+        assertEquals(7, eventRepository.findByEventIdIn(List.of("C-2")).get(0).getDefectCount());
+
+        // The cache now holds the updated payload, not the original one
+        BatchResponse stale = eventService.processBatch(List.of(event("C-2", 2, BASE.plusSeconds(1))));
+        assertEquals(1, stale.getDeduped());
+        assertEquals(7, eventRepository.findByEventIdIn(List.of("C-2")).get(0).getDefectCount());
+    }
+
+    // Test 2: A rolled-back batch leaves nothing in the cache
+    @Test
+    void testRollbackNotCached() {
+        TransactionTemplate transaction = new TransactionTemplate(transactionManager);
+        transaction.executeWithoutResult(status -> {
+            eventService.processBatch(List.of(event("C-10", 1, BASE)));
+            status.setRollbackOnly();
+        });
+
+        BatchResponse response = eventService.processBatch(List.of(event("C-10", 1, BASE)));
+
+        assertEquals(1, response.getAccepted());
+        assertEquals(0, response.getDeduped());
+        assertEquals(1, eventRepository.count());
+    }
+
+    // Test 3: Past the memory budget the oldest entries go and their retries hit the database
+    @Test
+    void testEvictionFallsBackToDatabase() {
+        long evictions = recentEventCache.evictions();
+        List<EventRequest> batch = new ArrayList<>();
+        for (int i = 0; i < 12000; i++) {
+            batch.add(event("E-" + i, 1, BASE));
+        }
+        assertEquals(12000, eventService.processBatch(batch).getAccepted());
+        assertTrue(recentEventCache.evictions() > evictions);
+        assertTrue(recentEventCache.size() < 12000);
+
+        BatchResponse retry = eventService.processBatch(batch);
+        assertEquals(12000, retry.getDeduped());
+        assertEquals(0, retry.getAccepted());
+    }
+}
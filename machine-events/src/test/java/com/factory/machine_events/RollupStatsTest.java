@@ -0,0 +1,139 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.LineRollupRepository;
+import com.factory.machine_events.repository.MachineRollupRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.rollup.enabled=true",
+        "spring.datasource.url=jdbc:h2:mem:rollupdb"
+})
+class RollupStatsTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MachineRollupRepository machineRollupRepository;
+
+    @Autowired
+    private LineRollupRepository lineRollupRepository;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        machineRollupRepository.deleteAll();
+        lineRollupRepository.deleteAll();
+    }
+
+    // Test 1: Whole hours from rollups plus partial edge hours from raw rows
+    @Test
+    void testStatsCombineRollupsAndEdgeHours() {
+        eventService.processBatch(List.of(
+                event("R-1", "M-001", "LINE-1", BASE.minus(20, ChronoUnit.MINUTES), 1), // Before start
+                event("R-2", "M-001", "LINE-1", BASE.minus(10, ChronoUnit.MINUTES), 2), // Leading edge
+                event("R-3", "M-001", "LINE-1", BASE.plus(30, ChronoUnit.MINUTES), 3),  // Whole hour
+                event("R-4", "M-001", "LINE-2", BASE.plus(90, ChronoUnit.MINUTES), -1), // Whole hour
+                event("R-5", "M-001", "LINE-2", BASE.plus(125, ChronoUnit.MINUTES), 4), // Trailing edge
+                event("R-6", "M-001", "LINE-2", BASE.plus(135, ChronoUnit.MINUTES), 5)  // After end
+        ));
+
+        StatsResponse stats = statsService.getStats("M-001",
+                BASE.minus(15, ChronoUnit.MINUTES), BASE.plus(130, ChronoUnit.MINUTES));
+
+        assertEquals(4, stats.getEventsCount());
+        assertEquals(9, stats.getDefectsCount()); // 2 + 3 + 4, -1 ignored
+    }
+
+    // Test 2: An update moving an event to another hour moves its rollup contribution
+    @Test
+    void testUpdateMovesRollupContribution() {
+        EventRequest original = event("R-10", "M-001", "LINE-1", BASE.plus(10, ChronoUnit.MINUTES), 5);
+        original.setReceivedTime(BASE);
+        eventService.processBatch(List.of(original));
+
+        EventRequest moved = event("R-10", "M-001", "LINE-1", BASE.plus(70, ChronoUnit.MINUTES), 7);
+        moved.setReceivedTime(BASE.plusSeconds(1));
+        assertEquals(1, eventService.processBatch(List.of(moved)).getUpdated());
+
+        StatsResponse firstHour = statsService.getStats("M-001", BASE, BASE.plus(1, ChronoUnit.HOURS));
+        StatsResponse secondHour = statsService.getStats("M-001",
+                BASE.plus(1, ChronoUnit.HOURS), BASE.plus(2, ChronoUnit.HOURS));
+
+        assertEquals(0, firstHour.getEventsCount());
+        assertEquals(0, firstHour.getDefectsCount());
+        assertEquals(1, secondHour.getEventsCount());
+        assertEquals(7, secondHour.getDefectsCount());
+    }
+
+    // Test 3: Top defect lines merge rollup hours with edge scans before applying the limit
+    @Test
+    void testTopDefectLinesMergeRollupsAndEdges() {
+        eventService.processBatch(List.of(
+                event("R-20", "M-001", "LINE-1", BASE.plus(30, ChronoUnit.MINUTES), 4),
+                event("R-21", "M-001", "LINE-2", BASE.plus(65, ChronoUnit.MINUTES), 3), // Trailing edge
+                event("R-22", "M-001", "LINE-2", BASE.plus(66, ChronoUnit.MINUTES), 3), // Trailing edge
+                event("R-23", "M-001", "LINE-3", BASE.plus(20, ChronoUnit.MINUTES), 1)
+        ));
+
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines("F01",
+                BASE, BASE.plus(70, ChronoUnit.MINUTES), 2);
+
+        assertEquals(2, top.size());
+        assertEquals("LINE-2", top.get(0).getLineId());
+        assertEquals(6, top.get(0).getTotalDefects());
+        assertEquals(2, top.get(0).getEventCount());
+        assertEquals("LINE-1", top.get(1).getLineId());
+    }
+
+    // Test 4: A line whose only event moved to another line drops out of the rollup
+    // answer, which matches a raw scan of the same events
+    @Test
+    void testTopDefectLinesDropLinesEmptiedByUpdates() {
+        EventRequest original = event("R-30", "M-001", "LINE-1", BASE.plus(10, ChronoUnit.MINUTES), 5);
+        original.setReceivedTime(BASE);
+        eventService.processBatch(List.of(
+                original,
+                event("R-31", "M-001", "LINE-2", BASE.plus(20, ChronoUnit.MINUTES), 2)
+        ));
+
+        EventRequest moved = event("R-30", "M-001", "LINE-2", BASE.plus(10, ChronoUnit.MINUTES), 5);
+        moved.setReceivedTime(BASE.plusSeconds(1));
+        assertEquals(1, eventService.processBatch(List.of(moved)).getUpdated());
+
+        // A whole hour is answered from rollups, a shorter window by scanning raw rows
+        List<TopDefectLineResponse> fromRollups = statsService.getTopDefectLines("F01",
+                BASE, BASE.plus(1, ChronoUnit.HOURS), 10);
+        List<TopDefectLineResponse> fromRows = statsService.getTopDefectLines("F01",
+                BASE, BASE.plus(59, ChronoUnit.MINUTES), 10);
+
+        assertEquals(1, fromRollups.size());
+        assertEquals(fromRows.size(), fromRollups.size());
+        assertEquals("LINE-2", fromRollups.get(0).getLineId());
+        assertEquals(fromRows.get(0).getLineId(), fromRollups.get(0).getLineId());
+        assertEquals(fromRows.get(0).getTotalDefects(), fromRollups.get(0).getTotalDefects());
+        assertEquals(fromRows.get(0).getEventCount(), fromRollups.get(0).getEventCount());
+    }
+}
@@ -0,0 +1,74 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.shards.urls=jdbc:h2:mem:nativeshard0,jdbc:h2:mem:nativeshard1",
+        "events.shards.routing=machine",
+        "events.persistence.mode=native",
+        "events.id-filter.enabled=true"
+})
+class ShardedNativeUpsertTest {
+
+    private static final Instant EVENT_TIME = BASE.plus(10, ChronoUnit.MINUTES);
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    @BeforeEach
+    void setUp() {
+        shardRouter.onShards(shardRouter.allShards(), shard -> {
+            eventRepository.deleteAll();
+            return null;
+        });
+    }
+
+    // Test 1: Ids written by native upserts reach the id filter, so an update that would
+    // move one of them to another shard is still rejected
+    @Test
+    void testShardKeyChangeRejectedWithFilter() {
+        String machineOnShard0 = machineOnShard(0);
+        String machineOnShard1 = machineOnShard(1);
+        eventService.processBatch(List.of(event("N-1", machineOnShard0, "LINE-1", EVENT_TIME, 1, BASE)));
+
+        BatchResponse response = eventService.processBatch(List.of(
+                event("N-1", machineOnShard1, "LINE-1", EVENT_TIME, 5, BASE.plusSeconds(1))));
+
+        assertEquals(0, response.getAccepted());
+        assertEquals(0, response.getUpdated());
+        assertEquals(1, response.getRejected());
+        assertEquals("SHARD_KEY_CHANGED", response.getRejections().get(0).getReason());
+        assertEquals(1L, shardRouter.<Long>onShard(0, eventRepository::count));
+        assertEquals(0L, shardRouter.<Long>onShard(1, eventRepository::count));
+    }
+
+    private String machineOnShard(int shard) {
+        for (int i = 0; ; i++) {
+            String machineId = "M-" + i;
+            if (shardRouter.shardsForMachine(machineId).get(0) == shard) {
+                return machineId;
+            }
+        }
+    }
+}
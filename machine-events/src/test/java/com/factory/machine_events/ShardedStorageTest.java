@@ -0,0 +1,162 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.model.MachineEvent;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.repository.LineRollupRepository;
+import com.factory.machine_events.repository.MachineRollupRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsService;
+import com.factory.machine_events.shard.ShardRouter;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.shards.urls=jdbc:h2:mem:shard0,jdbc:h2:mem:shard1",
+        "events.shards.routing=machine",
+        "events.rollup.enabled=true"
+})
+class ShardedStorageTest {
+
+    private static final Instant EVENT_TIME = BASE.plus(10, ChronoUnit.MINUTES);
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private MachineRollupRepository machineRollupRepository;
+
+    @Autowired
+    private LineRollupRepository lineRollupRepository;
+
+    @Autowired
+    private ShardRouter shardRouter;
+
+    private String machineOnShard0;
+    private String machineOnShard1;
+
+    @BeforeEach
+    void setUp() {
+        shardRouter.onShards(shardRouter.allShards(), shard -> {
+            eventRepository.deleteAll();
+            machineRollupRepository.deleteAll();
+            lineRollupRepository.deleteAll();
+            return null;
+        });
+        machineOnShard0 = machineOnShard(0);
+        machineOnShard1 = machineOnShard(1);
+    }
+
+    // Test 1: Events are written to their machine's shard and deduped there
+    @Test
+    void testWritesRoutedByMachine() {
+        EventRequest invalid = event("S-3", machineOnShard0, "LINE-1", EVENT_TIME, 1, BASE);
+        invalid.setDurationMs(-1L);
+
+        BatchResponse response = eventService.processBatch(List.of(
+                event("S-1", machineOnShard0, "LINE-1", EVENT_TIME, 2, BASE),
+                invalid,
+                event("S-2", machineOnShard1, "LINE-1", EVENT_TIME, 3, BASE),
+                event("S-1", machineOnShard0, "LINE-1", EVENT_TIME, 2, BASE)     // Duplicate
+        ));
+
+        assertEquals(2, response.getAccepted());
+        assertEquals(1, response.getDeduped());
+        assertEquals(1, response.getRejected());
+        assertEquals("S-3", response.getRejections().get(0).getEventId());
+        assertEquals(1L, shardRouter.<Long>onShard(0, eventRepository::count));
+        assertEquals(1L, shardRouter.<Long>onShard(1, eventRepository::count));
+
+        Instant end = BASE.plus(2, ChronoUnit.HOURS);
+        assertEquals(2, statsService.getStats(machineOnShard0, BASE, end).getDefectsCount());
+        assertEquals(3, statsService.getStats(machineOnShard1, BASE, end).getDefectsCount());
+    }
+
+    // Test 2: Top defect lines are merged across shards before ranking and limiting
+    @Test
+    void testTopDefectLinesMergedAcrossShards() {
+        eventService.processBatch(List.of(
+                event("S-10", machineOnShard0, "LINE-1", EVENT_TIME, 4, BASE),
+                event("S-11", machineOnShard1, "LINE-1", EVENT_TIME, 4, BASE),
+                event("S-12", machineOnShard0, "LINE-2", EVENT_TIME, 6, BASE),
+                event("S-13", machineOnShard1, "LINE-3", EVENT_TIME, 1, BASE)
+        ));
+
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines(
+                "F01", BASE, BASE.plus(2, ChronoUnit.HOURS), 1);
+
+        assertEquals(1, top.size());
+        assertEquals("LINE-1", top.get(0).getLineId());
+        assertEquals(8, top.get(0).getTotalDefects());
+        assertEquals(2, top.get(0).getEventCount());
+    }
+
+    // Test 3: Each shard's entity inserts take ids from their own shard's sequence
+    @Test
+    void testIdsGeneratedPerShard() {
+        for (int b = 0; b < 3; b++) {
+            List<EventRequest> batch = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                batch.add(event("S-" + b + "-" + i + "-0", machineOnShard0, "LINE-1", EVENT_TIME, 1, BASE));
+                batch.add(event("S-" + b + "-" + i + "-1", machineOnShard1, "LINE-1", EVENT_TIME, 1, BASE));
+            }
+            assertEquals(200, eventService.processBatch(batch).getAccepted());
+        }
+
+        for (int shard : shardRouter.allShards()) {
+            List<Long> ids = shardRouter.onShard(shard, () -> eventRepository.findAll().stream()
+                    .map(MachineEvent::getId).toList());
+            assertEquals(300, ids.size());
+            assertEquals(300, new HashSet<>(ids).size());
+        }
+    }
+
+    // Test 4: An update that would move an event to another shard is rejected
+    @Test
+    void testShardKeyChangeRejected() {
+        eventService.processBatch(List.of(event("S-20", machineOnShard0, "LINE-1", EVENT_TIME, 1, BASE)));
+
+        BatchResponse response = eventService.processBatch(List.of(
+                event("S-20", machineOnShard1, "LINE-1", EVENT_TIME, 5, BASE.plusSeconds(1)),
+                event("S-21", machineOnShard0, "LINE-1", EVENT_TIME, 1, BASE),
+                event("S-21", machineOnShard1, "LINE-1", EVENT_TIME, 2, BASE.plusSeconds(1))
+        ));
+
+        assertEquals(1, response.getAccepted());
+        assertEquals(0, response.getUpdated());
+        assertEquals(2, response.getRejected());
+        assertEquals("SHARD_KEY_CHANGED", response.getRejections().get(0).getReason());
+        assertEquals("SHARD_KEY_CHANGED", response.getRejections().get(1).getReason());
+        assertEquals(2L, shardRouter.<Long>onShard(0, eventRepository::count));
+        assertEquals(0L, shardRouter.<Long>onShard(1, eventRepository::count));
+    }
+
+    private String machineOnShard(int shard) {
+        for (int i = 0; ; i++) {
+            String machineId = "M-" + i;
+            if (shardRouter.shardsForMachine(machineId).get(0) == shard) {
+                return machineId;
+            }
+        }
+    }
+}
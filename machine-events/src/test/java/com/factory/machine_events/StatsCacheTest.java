@@ -0,0 +1,93 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsCache;
+import com.factory.machine_events.service.StatsService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.stats-cache.enabled=true",
+        "events.stats-cache.max-entries=2",
+        "spring.datasource.url=jdbc:h2:mem:cachedb"
+})
+class StatsCacheTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private StatsService statsService;
+
+    @Autowired
+    private StatsCache statsCache;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    // Test 1: Repeated queries hit, and a batch only invalidates what it touched
+    @Test
+    void testIngestInvalidatesOnlyTouchedEntries() {
+        eventService.processBatch(List.of(event("C-1", "M-C1", "LINE-1", BASE.plus(10, ChronoUnit.MINUTES), 2)));
+
+        Instant end = BASE.plus(1, ChronoUnit.HOURS);
+        assertEquals(1, statsService.getStats("M-C1", BASE, end).getEventsCount());
+        long hits = statsCache.hits();
+        assertEquals(1, statsService.getStats("M-C1", BASE, end).getEventsCount());
+        assertEquals(hits + 1, statsCache.hits());
+
+        // Another machine, and the same machine in a later hour, leave the entry alone
+        long invalidations = statsCache.invalidations();
+        eventService.processBatch(List.of(
+                event("C-2", "M-C2", "LINE-1", BASE.plus(20, ChronoUnit.MINUTES), 1),
+                event("C-3", "M-C1", "LINE-1", BASE.plus(3, ChronoUnit.HOURS), 1)
+        ));
+        assertEquals(invalidations, statsCache.invalidations());
+
+        // A new event inside the cached window drops it, so the next read is fresh
+        eventService.processBatch(List.of(event("C-4", "M-C1", "LINE-1", BASE.plus(30, ChronoUnit.MINUTES), 3)));
+        assertEquals(invalidations + 1, statsCache.invalidations());
+
+        StatsResponse fresh = statsService.getStats("M-C1", BASE, end);
+        assertEquals(2, fresh.getEventsCount());
+        assertEquals(5, fresh.getDefectsCount());
+    }
+
+    // Test 2: Top defect lines are invalidated by factory, and the size bound evicts
+    @Test
+    void testTopDefectLinesInvalidationAndEviction() {
+        eventService.processBatch(List.of(event("C-10", "M-C3", "LINE-1", BASE.plus(5, ChronoUnit.MINUTES), 4)));
+
+        Instant end = BASE.plus(1, ChronoUnit.HOURS);
+        List<TopDefectLineResponse> top = statsService.getTopDefectLines("F01", BASE, end, 5);
+        assertEquals(4, top.get(0).getTotalDefects());
+
+        eventService.processBatch(List.of(event("C-11", "M-C4", "LINE-1", BASE.plus(6, ChronoUnit.MINUTES), 6)));
+        top = statsService.getTopDefectLines("F01", BASE, end, 5);
+        assertEquals(10, top.get(0).getTotalDefects());
+
+        long evictions = statsCache.evictions();
+        statsService.getStats("M-C3", BASE, end);
+        statsService.getStats("M-C4", BASE, end);
+        assertEquals(2, statsCache.size());
+        assertTrue(statsCache.evictions() > evictions);
+    }
+}
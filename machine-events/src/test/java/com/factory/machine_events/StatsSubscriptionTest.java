@@ -0,0 +1,172 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.dto.StatsResponse;
+import com.factory.machine_events.dto.TopDefectLineResponse;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.StatsSubscriptionService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Predicate;
+
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(properties = {
+        "events.subscriptions.max-pushes-per-second=2",
+        "events.subscriptions.max-subscribers=20",
+        "spring.datasource.url=jdbc:h2:mem:subscriptiondb"
+})
+class StatsSubscriptionTest {
+
+    private static final Duration WINDOW = Duration.ofHours(1);
+    private static final long PUSH_INTERVAL_MILLIS = 500;
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private StatsSubscriptionService subscriptions;
+
+    private Instant recent;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+        recent = Instant.now().minus(5, ChronoUnit.MINUTES);
+    }
+
+    // Test 1: One push on subscribe, one when the machine changes, none for others
+    @Test
+    void testPushedOnlyWhenMachineChanges() throws InterruptedException {
+        CapturingEmitter emitter = new CapturingEmitter();
+        assertTrue(subscriptions.subscribeMachine("M-S1", WINDOW, emitter));
+        assertEquals(0, emitter.<StatsResponse>await(pushes -> pushes.size() == 1).getEventsCount());
+
+        eventService.processBatch(List.of(event("S-1", "M-S1", "LINE-1", recent, 1)));
+        StatsResponse changed = emitter.await(pushes -> pushes.size() == 2);
+        assertEquals("M-S1", changed.getMachineId());
+        assertEquals(1, changed.getEventsCount());
+
+        eventService.processBatch(List.of(event("S-2", "M-S2", "LINE-1", recent, 1)));
+        Thread.sleep(2 * PUSH_INTERVAL_MILLIS);
+        assertEquals(2, emitter.pushes.size());
+        emitter.complete();
+    }
+
+    // Test 2: A burst of batches is coalesced to the subscriber's push rate
+    @Test
+    void testBurstCoalesced() throws InterruptedException {
+        CapturingEmitter emitter = new CapturingEmitter();
+        assertTrue(subscriptions.subscribeMachine("M-S3", WINDOW, emitter));
+        emitter.await(pushes -> pushes.size() == 1);
+
+        long burstStart = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            eventService.processBatch(List.of(event("S-3" + i, "M-S3", "LINE-1", recent, 1)));
+        }
+        long burstMillis = System.currentTimeMillis() - burstStart;
+
+        StatsResponse last = emitter.await(pushes ->
+                ((StatsResponse) pushes.get(pushes.size() - 1)).getEventsCount() == 10);
+        assertEquals(10, last.getEventsCount());
+        int burstPushes = emitter.pushes.size() - 1;
+        assertTrue(burstPushes <= burstMillis / PUSH_INTERVAL_MILLIS + 2,
+                burstPushes + " pushes for a " + burstMillis + "ms burst");
+        emitter.complete();
+    }
+
+    // Test 3: Factory subscribers get top defect lines, only for events with a line
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFactorySubscription() throws InterruptedException {
+        CapturingEmitter emitter = new CapturingEmitter();
+        assertTrue(subscriptions.subscribeFactory("F-S1", WINDOW, 5, emitter));
+        emitter.await(pushes -> pushes.size() == 1);
+
+        EventRequest lined = event("S-40", "M-S4", "LINE-7", recent, 1);
+        lined.setFactoryId("F-S1");
+        eventService.processBatch(List.of(lined));
+        emitter.await(pushes -> pushes.size() == 2);
+        List<TopDefectLineResponse> top = (List<TopDefectLineResponse>) emitter.pushes.get(1);
+        assertEquals("LINE-7", top.get(0).getLineId());
+
+        EventRequest unlined = event("S-41", "M-S4", null, recent, 1);
+        unlined.setFactoryId("F-S1");
+        eventService.processBatch(List.of(unlined));
+        Thread.sleep(2 * PUSH_INTERVAL_MILLIS);
+        assertEquals(2, emitter.pushes.size());
+        emitter.complete();
+    }
+
+    // Test 4: Subscribers beyond the limit are turned away until others leave
+    @Test
+    void testSubscriberLimit() {
+        List<CapturingEmitter> emitters = new ArrayList<>();
+        while (subscriptions.subscriberCount() < 20) {
+            CapturingEmitter emitter = new CapturingEmitter();
+            assertTrue(subscriptions.subscribeMachine("M-S5", WINDOW, emitter));
+            emitters.add(emitter);
+        }
+        assertFalse(subscriptions.subscribeMachine("M-S5", WINDOW, new CapturingEmitter()));
+
+        emitters.remove(0).complete();
+        CapturingEmitter replacement = new CapturingEmitter();
+        assertTrue(subscriptions.subscribeMachine("M-S5", WINDOW, replacement));
+        emitters.add(replacement);
+        emitters.forEach(ResponseBodyEmitter::complete);
+    }
+
+    // Records the payload of every event sent and, standing in for the servlet
+    // container, runs the completion callback when completed
+    private static class CapturingEmitter extends SseEmitter {
+
+        final List<Object> pushes = new CopyOnWriteArrayList<>();
+        private Runnable onCompletion = () -> {};
+
+        @Override
+        public void send(SseEventBuilder builder) {
+            for (ResponseBodyEmitter.DataWithMediaType part : builder.build()) {
+                if (!(part.getData() instanceof String)) {
+                    pushes.add(part.getData());
+                }
+            }
+        }
+
+        @Override
+        public void onCompletion(Runnable callback) {
+            onCompletion = callback;
+        }
+
+        @Override
+        public void complete() {
+            onCompletion.run();
+        }
+
+        @SuppressWarnings("unchecked")
+        <T> T await(Predicate<List<Object>> condition) throws InterruptedException {
+            for (int attempt = 0; attempt < 200; attempt++) {
+                if (!pushes.isEmpty() && condition.test(pushes)) {
+                    return (T) pushes.get(pushes.size() - 1);
+                }
+                Thread.sleep(25);
+            }
+            return fail("Expected push not received: " + pushes);
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.EventRequest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+
+// Event requests for the tests. Whatever a test does not pass is the same everywhere:
+// 1000ms long, factory F01, and for the short form machine M-001 on LINE-1 ten
+// minutes after BASE. Tests change anything else through the setters.
+final class TestEvents {
+
+    static final Instant BASE = Instant.parse("2026-01-15T10:00:00Z");
+
+    private TestEvents() {
+    }
+
+    static EventRequest event(String eventId, Integer defects, Instant receivedTime) {
+        return event(eventId, "M-001", "LINE-1", BASE.plus(10, ChronoUnit.MINUTES), defects, receivedTime);
+    }
+
+    // Received now, on LINE-1
+    static EventRequest event(String eventId, Instant eventTime, String machineId, Long durationMs, Integer defects) {
+        EventRequest event = event(eventId, machineId, "LINE-1", eventTime, defects);
+        event.setDurationMs(durationMs);
+        return event;
+    }
+
+    // Received now
+    static EventRequest event(String eventId, String machineId, String lineId, Instant eventTime, Integer defects) {
+        return event(eventId, machineId, lineId, eventTime, defects, Instant.now());
+    }
+
+    static EventRequest event(String eventId, String machineId, String lineId, Instant eventTime, Integer defects,
+                              Instant receivedTime) {
+        EventRequest event = new EventRequest();
+        event.setEventId(eventId);
+        event.setEventTime(eventTime);
+        event.setReceivedTime(receivedTime);
+        event.setMachineId(machineId);
+        event.setDurationMs(1000L);
+        event.setDefectCount(defects);
+        event.setLineId(lineId);
+        event.setFactoryId("F01");
+        return event;
+    }
+}
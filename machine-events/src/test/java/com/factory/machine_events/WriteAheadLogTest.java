@@ -0,0 +1,184 @@
+package com.factory.machine_events;
+
+import com.factory.machine_events.dto.BatchResponse;
+import com.factory.machine_events.dto.EventRequest;
+import com.factory.machine_events.repository.EventRepository;
+import com.factory.machine_events.service.AsyncIngestService;
+import com.factory.machine_events.service.EventService;
+import com.factory.machine_events.service.WriteAheadLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.factory.machine_events.TestEvents.BASE;
+import static com.factory.machine_events.TestEvents.event;
+import static org.junit.jupiter.api.Assertions.*;
+
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "spring.datasource.url=jdbc:h2:mem:waldb"
+})
+class WriteAheadLogTest {
+
+    @Autowired
+    private EventService eventService;
+
+    @Autowired
+    private EventRepository eventRepository;
+
+    @Autowired
+    private AsyncIngestService contextAsyncIngestService;
+
+    @Autowired
+    private ApplicationContext context;
+
+    @TempDir
+    private Path directory;
+
+    private AsyncIngestService asyncIngestService;
+
+    @BeforeEach
+    void setUp() {
+        eventRepository.deleteAll();
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (asyncIngestService != null) {
+            asyncIngestService.stop();
+        }
+    }
+
+    // Test 1: A logged batch is applied and the checkpoint moves past it
+    @Test
+    void testLoggedBatchIsApplied() throws InterruptedException {
+        WriteAheadLog writeAheadLog = newLog(DataSize.ofMegabytes(1));
+        asyncIngestService = new AsyncIngestService(eventService, writeAheadLog, false, 8, 1, 5000, 100, 5, false);
+        assertTrue(asyncIngestService.isEnabled());
+        assertNull(asyncIngestService.submit(List.of(event("W-0", 1, BASE))));  // Log not open yet
+
+        asyncIngestService.start();
+        String ticketId = asyncIngestService.submit(List.of(event("W-1", 1, BASE), event("W-2", 2, BASE)));
+
+        assertEquals(2, await(ticketId).getAccepted());
+        assertEquals(2, eventRepository.count());
+        assertEquals(0, writeAheadLog.unappliedCount());
+    }
+
+    // Test 2: Records never applied are replayed at start; repeats settle as duplicates
+    @Test
+    void testUnappliedRecordsReplayedAtStart() throws InterruptedException {
+        WriteAheadLog previous = newLog(DataSize.ofMegabytes(1));
+        assertTrue(previous.open().isEmpty());
+        previous.append(List.of(event("W-10", 1, BASE), event("W-11", 3, BASE)));
+        previous.append(List.of(event("W-10", 1, BASE)));
+        previous.close();
+
+        WriteAheadLog writeAheadLog = newLog(DataSize.ofMegabytes(1));
+        asyncIngestService = new AsyncIngestService(eventService, writeAheadLog, false, 8, 1, 5000, 100, 5, false);
+        asyncIngestService.start();
+
+        assertEquals(2, eventRepository.count());
+        assertEquals(0, writeAheadLog.unappliedCount());
+
+        // Batches submitted after the replay still go through the log
+        String ticketId = asyncIngestService.submit(List.of(event("W-11", 3, BASE)));
+        assertEquals(1, await(ticketId).getDeduped());
+    }
+
+    // Test 3: Full segments rotate, applied ones are deleted, the rest survive a reopen
+    @Test
+    void testSegmentsRotateAndApplied() {
+        WriteAheadLog writeAheadLog = newLog(DataSize.ofKilobytes(1));
+        writeAheadLog.open();
+        List<Long> positions = new ArrayList<>();
+        for (int b = 0; b < 5; b++) {
+            List<EventRequest> batch = new ArrayList<>();
+            for (int i = 0; i < 10; i++) {
+                batch.add(event("W-" + b + "-" + i, i, BASE));
+            }
+            positions.add(writeAheadLog.append(batch));
+        }
+        assertEquals(5, writeAheadLog.segmentCount());
+
+        for (int b = 0; b < 3; b++) {
+            writeAheadLog.markApplied(positions.get(b));
+        }
+        assertEquals(2, writeAheadLog.segmentCount());
+        writeAheadLog.close();
+
+        List<WriteAheadLog.Record> replay = newLog(DataSize.ofKilobytes(1)).open();
+        assertEquals(2, replay.size());
+        assertEquals("W-3-0", replay.get(0).events().get(0).getEventId());
+        assertEquals(10, replay.get(1).events().size());
+    }
+
+    // Test 4: A batch that keeps failing is dead-lettered instead of pinning the checkpoint
+    @Test
+    void testFailedBatchDeadLettered() throws InterruptedException {
+        WriteAheadLog writeAheadLog = newLog(DataSize.ofMegabytes(1));
+        asyncIngestService = new AsyncIngestService(eventService, writeAheadLog, false, 8, 1, 5000, 100, 2, false);
+        asyncIngestService.start();
+
+        // Longer than the eventId column, so every attempt fails in the database
+        String failing = asyncIngestService.submit(List.of(event("W-" + "x".repeat(100), 1, BASE)));
+        String ticketId = asyncIngestService.submit(List.of(event("W-20", 1, BASE)));
+
+        assertEquals(1, await(ticketId).getAccepted());
+        AsyncIngestService.Status status = AsyncIngestService.Status.QUEUED;
+        for (int attempt = 0; attempt < 200 && status == AsyncIngestService.Status.QUEUED; attempt++) {
+            Thread.sleep(25);
+            status = asyncIngestService.ticket(failing).status();
+        }
+        assertEquals(AsyncIngestService.Status.FAILED, status);
+        assertEquals(0, writeAheadLog.unappliedCount());
+        List<List<EventRequest>> deadLetters = writeAheadLog.deadLetters();
+        assertEquals(1, deadLetters.size());
+        assertEquals("W-" + "x".repeat(100), deadLetters.get(0).get(0).getEventId());
+    }
+
+    // Test 5: A full queue turns a batch away before it is logged
+    @Test
+    void testFullQueueRejectsBeforeLogging() {
+        WriteAheadLog writeAheadLog = newLog(DataSize.ofMegabytes(1));
+        asyncIngestService = new AsyncIngestService(eventService, writeAheadLog, false, 1, 1, 5000, 100, 5, false);
+        writeAheadLog.open();  // Writers are not started, so the queue stays full
+
+        assertNotNull(asyncIngestService.submit(List.of(event("W-30", 1, BASE))));
+        assertNull(asyncIngestService.submit(List.of(event("W-31", 1, BASE))));
+        assertEquals(1, writeAheadLog.unappliedCount());
+        writeAheadLog.close();
+    }
+
+    // Test 6: The log is replayed before the web server takes requests, and drained after it stops
+    @Test
+    void testReplayedBeforeWebServerStarts() {
+        SmartLifecycle webServer = context.getBean("webServerStartStop", SmartLifecycle.class);
+        assertTrue(contextAsyncIngestService.getPhase() < webServer.getPhase());
+    }
+
+    private WriteAheadLog newLog(DataSize segmentSize) {
+        return new WriteAheadLog(true, directory.toString(), segmentSize);
+    }
+
+    private BatchResponse await(String ticketId) throws InterruptedException {
+        for (int attempt = 0; attempt < 200; attempt++) {
+            AsyncIngestService.Ticket ticket = asyncIngestService.ticket(ticketId);
+            if (ticket.status() == AsyncIngestService.Status.DONE) {
+                return ticket.response();
+            }
+            assertNotEquals(AsyncIngestService.Status.FAILED, ticket.status(), ticket.error());
+            Thread.sleep(25);
+        }
+        return fail("Ticket " + ticketId + " did not complete");
+    }
+}